@@ -35,6 +35,9 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -59,6 +62,10 @@ class AllAppsList {
     public ArrayList<ApplicationInfo> data = new ArrayList<ApplicationInfo>(
             DEFAULT_APPLICATIONS_NUMBER);
 
+    /** The apps in data by component, kept in step with data by every method that changes it. */
+    private final HashMap<ComponentName, ApplicationInfo> mDataIndex =
+            new HashMap<ComponentName, ApplicationInfo>(DEFAULT_APPLICATIONS_NUMBER);
+
     /** The list of apps that have been added since the last notify() call. */
     public ArrayList<ApplicationInfo> added = new ArrayList<ApplicationInfo>(
             DEFAULT_APPLICATIONS_NUMBER);
@@ -77,6 +84,8 @@ class AllAppsList {
 
     /// M: add for top packages.
     static ArrayList<TopPackage> sTopPackages = null;
+    /// Position of each component in the ordered sTopPackages, built by ensureTopPackageOrdered().
+    private static HashMap<ComponentName, Integer> sTopPackageIndex = null;
 
     static class TopPackage {
         public TopPackage(String pkgName, String clsName, int index) {
@@ -109,10 +118,11 @@ class AllAppsList {
                     + ", title = " + info.title);
         }
 
-        if (findActivity(data, info.componentName)) {
+        if (mDataIndex.containsKey(info.componentName)) {
             return;
         }
         data.add(info);
+        mDataIndex.put(info.componentName, info);
         added.add(info);
     }
 
@@ -122,6 +132,7 @@ class AllAppsList {
         }
 
         data.clear();
+        mDataIndex.clear();
         // TODO: do we clear these too?
         added.clear();
         removed.clear();
@@ -180,6 +191,7 @@ class AllAppsList {
             if (packageName.equals(component.getPackageName())) {
                 removed.add(info);
                 data.remove(i);
+                mDataIndex.remove(info.componentName);
             }
         }
         // This is more aggressive than it needs to be.
@@ -210,6 +222,7 @@ class AllAppsList {
                         removed.add(applicationInfo);
                         mIconCache.remove(component);
                         data.remove(i);
+                        mDataIndex.remove(applicationInfo.componentName);
                     }
                 }
             }
@@ -261,6 +274,7 @@ class AllAppsList {
                     removed.add(applicationInfo);
                     mIconCache.remove(component);
                     data.remove(i);
+                    mDataIndex.remove(applicationInfo.componentName);
                 }
                 /// M: only appWidget, if removed ,place in appWidgetRemoved.
                 if (removed.size() == 0) {
@@ -299,31 +313,17 @@ class AllAppsList {
     }
 
     /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
+     * Find an ApplicationInfo object for the given packageName and className.
      */
-    private static boolean findActivity(ArrayList<ApplicationInfo> apps, ComponentName component) {
-        final int N = apps.size();
-        for (int i = 0; i < N; i++) {
-            final ApplicationInfo info = apps.get(i);
-            if (info.componentName.equals(component)) {
-                return true;
-            }
-        }
-        return false;
+    private ApplicationInfo findApplicationInfoLocked(String packageName, String className) {
+        return mDataIndex.get(new ComponentName(packageName, className));
     }
 
     /**
-     * Find an ApplicationInfo object for the given packageName and className.
+     * Returns the ApplicationInfo in data for the given component, or null.
      */
-    private ApplicationInfo findApplicationInfoLocked(String packageName, String className) {
-        for (ApplicationInfo info : data) {
-            final ComponentName component = info.intent.getComponent();
-            if (packageName.equals(component.getPackageName())
-                    && className.equals(component.getClassName())) {
-                return info;
-            }
-        }
-        return null;
+    ApplicationInfo findApplicationInfo(ComponentName component) {
+        return mDataIndex.get(component);
     }
 
     /**
@@ -402,6 +402,11 @@ class AllAppsList {
 
     /**
      * M: Reorder all apps index according to TopPackages.
+     *
+     * The top package apps found in added are taken out of data and put back at their
+     * configured order, in TopPackage order, exactly as if each one had been inserted with
+     * data.add(order, ai) in turn.  The final positions are worked out on the handful of
+     * top packages first, so data itself is only rebuilt once.
      */
     void reorderApplist() {
         final long sortTime = DEBUG_LOADERS_REORDER ? SystemClock.uptimeMillis() : 0;
@@ -409,61 +414,82 @@ class AllAppsList {
         if (sTopPackages == null || sTopPackages.isEmpty()) {
             return;
         }
-        ensureTopPackageOrdered();
-
-        final ArrayList<ApplicationInfo> dataReorder = new ArrayList<ApplicationInfo>(
-                DEFAULT_APPLICATIONS_NUMBER);
+        if (sTopPackageIndex == null) {
+            ensureTopPackageOrdered();
+        }
 
-        for (TopPackage tp : sTopPackages) {
-            int loop = 0;
-            for (ApplicationInfo ai : added) {
-                if (DEBUG_LOADERS_REORDER) {
-                    LauncherLog.d(TAG, "reorderApplist: remove loop = " + loop);
-                }
+        // Pick the first app in added for every top package, in TopPackage order.
+        final int topCount = sTopPackages.size();
+        final ApplicationInfo[] matches = new ApplicationInfo[topCount];
+        int matchCount = 0;
+        for (ApplicationInfo ai : added) {
+            final Integer tpIndex = sTopPackageIndex.get(ai.componentName);
+            if (tpIndex != null && matches[tpIndex] == null) {
+                matches[tpIndex] = ai;
+                matchCount++;
+            }
+        }
+        if (matchCount == 0) {
+            return;
+        }
 
-                if (ai.componentName.getPackageName().equals(tp.packageName)
-                        && ai.componentName.getClassName().equals(tp.className)) {
-                    if (DEBUG_LOADERS_REORDER) {
-                        LauncherLog.d(TAG, "reorderApplist: remove packageName = "
-                                + ai.componentName.getPackageName());
-                    }
-                    data.remove(ai);
-                    dataReorder.add(ai);
-                    dumpData();
-                    break;
-                }
-                loop++;
+        final HashSet<ApplicationInfo> moved = new HashSet<ApplicationInfo>(matchCount);
+        for (ApplicationInfo ai : matches) {
+            if (ai != null) {
+                moved.add(ai);
+            }
+        }
+        final ArrayList<ApplicationInfo> remaining = new ArrayList<ApplicationInfo>(data.size());
+        for (ApplicationInfo ai : data) {
+            if (!moved.contains(ai)) {
+                remaining.add(ai);
             }
         }
 
-        for (TopPackage tp : sTopPackages) {
-            int loop = 0;
-            int newIndex = 0;
-            for (ApplicationInfo ai : dataReorder) {
-                if (DEBUG_LOADERS_REORDER) {
-                    LauncherLog.d(TAG, "reorderApplist: added loop = " + loop + ", packageName = "
-                            + ai.componentName.getPackageName());
-                }
+        final ApplicationInfo[] reordered = new ApplicationInfo[matchCount];
+        final int[] positions = new int[matchCount];
+        int size = remaining.size();
 
-                if (ai.componentName.getPackageName().equals(tp.packageName)
-                        && ai.componentName.getClassName().equals(tp.className)) {
-                    newIndex = Math.min(Math.max(tp.order, 0), added.size());
-                    if (DEBUG_LOADERS_REORDER) {
-                        LauncherLog.d(TAG, "reorderApplist: added newIndex = " + newIndex);
-                    }
-                    /// M: make sure the array list not out of bound
-                    if (newIndex < data.size()) {
-                        data.add(newIndex, ai);
-                    } else {
-                        data.add(ai);
-                    }
-                    dumpData();
-                    break;
+        // Replay the insertions on the positions alone: an insert at pos shifts every
+        // earlier top package app that sits at or after pos.
+        int count = 0;
+        for (int i = 0; i < topCount; i++) {
+            if (matches[i] == null) {
+                continue;
+            }
+            final int newIndex = Math.min(Math.max(sTopPackages.get(i).order, 0), added.size());
+            /// M: make sure the array list not out of bound
+            final int pos = Math.min(newIndex, size);
+            for (int j = 0; j < count; j++) {
+                if (positions[j] >= pos) {
+                    positions[j]++;
                 }
-                loop++;
+            }
+            reordered[count] = matches[i];
+            positions[count] = pos;
+            count++;
+            size++;
+            if (DEBUG_LOADERS_REORDER) {
+                LauncherLog.d(TAG, "reorderApplist: packageName = "
+                        + matches[i].componentName.getPackageName() + ", newIndex = " + pos);
             }
         }
 
+        final ApplicationInfo[] result = new ApplicationInfo[size];
+        for (int i = 0; i < count; i++) {
+            result[positions[i]] = reordered[i];
+        }
+        int next = 0;
+        for (ApplicationInfo ai : remaining) {
+            while (result[next] != null) {
+                next++;
+            }
+            result[next++] = ai;
+        }
+        data.clear();
+        Collections.addAll(data, result);
+        dumpData();
+
         if (added.size() == data.size()) {
             added = (ArrayList<ApplicationInfo>) data.clone();
             LauncherLog.d(TAG, "reorderApplist added.size() == data.size()");
@@ -478,6 +504,9 @@ class AllAppsList {
      * Dump application informations in data.
      */
     void dumpData() {
+        if (!DEBUG_LOADERS_REORDER) {
+            return;
+        }
         int loop2 = 0;
         for (ApplicationInfo ai : data) {
             if (DEBUG_LOADERS_REORDER) {
@@ -510,6 +539,7 @@ class AllAppsList {
 
         if (appInfo != null) {
             data.remove(appInfo);
+            mDataIndex.remove(appInfo.componentName);
             added.remove(appInfo);
             LauncherLog.d(TAG, "Success to remove from app list: " + className);
             return true;
@@ -561,5 +591,19 @@ class AllAppsList {
         } else {
         	LauncherLog.d(TAG, "some mistake may occur when ensureTopPackageOrdered");
         }
+
+        final HashMap<ComponentName, Integer> index =
+                new HashMap<ComponentName, Integer>(sTopPackages.size());
+        for (int i = 0; i < sTopPackages.size(); i++) {
+            final TopPackage tp = sTopPackages.get(i);
+            if (tp.packageName == null || tp.className == null) {
+                continue;
+            }
+            final ComponentName component = new ComponentName(tp.packageName, tp.className);
+            if (!index.containsKey(component)) {
+                index.put(component, i);
+            }
+        }
+        sTopPackageIndex = index;
     }
 }
@@ -24,6 +24,8 @@ import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
 import android.util.Log;
 
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -55,6 +57,13 @@ class ApplicationInfo extends ItemInfo {
 
     int flags = 0;
 
+    /**
+     * The collation key of {@link #title}, see {@link #getTitleKey()}.
+     */
+    private CollationKey mTitleKey;
+    private CharSequence mTitleKeySource;
+    private Collator mTitleKeyCollator;
+
     ApplicationInfo() {
         itemType = LauncherSettings.BaseLauncherColumns.ITEM_TYPE_SHORTCUT;
     }
@@ -86,6 +95,8 @@ class ApplicationInfo extends ItemInfo {
         }
 
         iconCache.getTitleAndIcon(this, info, labelCache);
+        // Make the sort key while we are off the main thread
+        getTitleKey();
     }
 
     public ApplicationInfo(ApplicationInfo info) {
@@ -103,6 +114,23 @@ class ApplicationInfo extends ItemInfo {
         return super.getPackageName(intent);
     }
 
+    /**
+     * Returns the collation key of the title, made once per title and locale and used by
+     * {@link LauncherModel#getAppNameComparator()}.
+     */
+    CollationKey getTitleKey() {
+        final CharSequence title = this.title;
+        final Collator collator = LauncherModel.getCollator();
+        CollationKey key = mTitleKey;
+        if (key == null || mTitleKeySource != title || mTitleKeyCollator != collator) {
+            key = LauncherModel.getCollationKey(title);
+            mTitleKey = key;
+            mTitleKeySource = title;
+            mTitleKeyCollator = collator;
+        }
+        return key;
+    }
+
     /**
      * Creates the application intent based on a component name and various launch flags.
      * Sets {@link #itemType} to {@link LauncherSettings.BaseLauncherColumns#ITEM_TYPE_APPLICATION}.
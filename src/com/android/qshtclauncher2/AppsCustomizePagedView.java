@@ -50,7 +50,6 @@ import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Process;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -76,7 +75,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -188,6 +187,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
     // Content
     private ArrayList<ApplicationInfo> mApps;
+    // mApps by component, updated wherever an app is added to or removed from mApps.
+    private final HashMap<ComponentName, ApplicationInfo> mAppsIndex =
+            new HashMap<ComponentName, ApplicationInfo>();
     private ArrayList<Object> mWidgets;
     private ArrayList<ApplicationInfo> mAppsDownload;
     private ArrayList<ApplicationInfo> mAppsFreq;
@@ -204,6 +206,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     // Caching
     private Canvas mCanvas;
     private IconCache mIconCache;
+    private WidgetPreviewDiskCache mPreviewDiskCache;
+    private PagedViewIconCache mPreviewCache;
 
     // Dimens
     private int mContentWidth;
@@ -227,8 +231,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private DecelerateInterpolator mLeftScreenAlphaInterpolator = new DecelerateInterpolator(4);
 
     // Previews & outlines
-    ArrayList<AppsCustomizeAsyncTask> mRunningTasks;
-    private static final int sPageSleepDelay = 200;
+    private WidgetPreviewScheduler mPreviewScheduler;
 
     private Runnable mInflateWidgetRunnable = null;
     private Runnable mBindWidgetRunnable = null;
@@ -267,6 +270,23 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     private boolean mAppsHasSet = false;
     private AppsChangeFreqAsyncTask mAppsChangeFreqAsyncTask;
 
+    // The app lists and page counts the apps pages were last synced from.  Later changes are
+    // diffed against them so that only the pages and cells that changed are synced again.
+    private final ArrayList<ApplicationInfo> mSyncedApps = new ArrayList<ApplicationInfo>();
+    private final ArrayList<ApplicationInfo> mSyncedAppsFreq = new ArrayList<ApplicationInfo>();
+    private final ArrayList<ApplicationInfo> mSyncedAppsDownload =
+            new ArrayList<ApplicationInfo>();
+    private int mSyncedNumCells;
+    private int mSyncedNumAppsPages;
+    private int mSyncedNumAppsFreqPages;
+    private int mSyncedNumAppsDownloadPages;
+    private boolean mAppsSynced;
+
+    private int mFullAppsSyncCount;
+    private int mIncrementalAppsSyncCount;
+    private int mResyncedAppsPageCount;
+    private int mUpdatedAppCellCount;
+
     public AppsCustomizePagedView(Context context, AttributeSet attrs) {
         super(context, attrs);
         mLayoutInflater = LayoutInflater.from(context);
@@ -275,7 +295,6 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         
         mIconCache = ((LauncherApplication) context.getApplicationContext()).getIconCache();
         mCanvas = new Canvas();
-        mRunningTasks = new ArrayList<AppsCustomizeAsyncTask>();
 
         // Save the default widget preview background
         Resources resources = context.getResources();
@@ -298,6 +317,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         
         if(this.isSupportWidget()){
         	mWidgets = new ArrayList<Object>();
+        	mPreviewDiskCache = new WidgetPreviewDiskCache(context);
+        	mPreviewCache = new PagedViewIconCache(
+        	        resources.getInteger(R.integer.config_widgetPreviewCacheMaxKb) * 1024L);
+        	mPreviewScheduler = new WidgetPreviewScheduler(mPreviewSchedulerCallbacks);
         	mWidgetShortCut =  new ArrayList<ResolveInfo>();
         	mNumAppsFreqPages = 0;
         	mNumAppsDownloadPages = 0;
@@ -501,6 +524,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     + mNumWidgetPages + ", this = " + this);
         }
         invalidatePageData(Math.max(0, page), hostIsTransitioning);
+        rememberSyncedApps();
 
         // Show All Apps cling if we are finished transitioning, otherwise, we will try again when
         // the transition completes in AppsCustomizeTabHost (otherwise the wrong offsets will be
@@ -586,6 +610,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     	if(!isSupportWidget())
     		return;
     	
+        // Don't hand back previews rendered for the old version of an updated package
+        mPreviewDiskCache.onPackagesChanged();
         mWidgets.clear();
         mWidgetShortCut.clear();
         List<AppWidgetProviderInfo> widgets =
@@ -617,14 +643,22 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             }
         }
         mWidgetShortCut.addAll(shortcuts);
+        // Drop the previews of widgets and shortcuts that are gone
+        mPreviewCache.retainAllAppWidgets(widgets);
+        mPreviewCache.retainAllShortcuts(shortcuts);
         //mWidgets.addAll(shortcuts);
-        Collections.sort(mWidgets,
-                new LauncherModel.WidgetAndShortcutNameComparator(mPackageManager));
-        
-        Collections.sort(mWidgetShortCut,
-                new LauncherModel.WidgetAndShortcutNameComparator(mPackageManager));
+        LauncherModel.sortWidgetsAndShortcutsByLabel(mWidgets, mPackageManager);
+        LauncherModel.sortWidgetsAndShortcutsByLabel(mWidgetShortCut, mPackageManager);
         updatePageCounts();
         invalidateOnDataChange();
+
+        // Previews rendered for packages that have since been updated or removed are dead weight
+        final WidgetPreviewDiskCache previewDiskCache = mPreviewDiskCache;
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            public void run() {
+                previewDiskCache.purgeStalePackages();
+            }
+        });
     }
 
     @Override
@@ -975,7 +1009,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             int maxWidth, maxHeight;
             maxWidth = Math.min((int) (previewDrawable.getIntrinsicWidth() * minScale), size[0]);
             maxHeight = Math.min((int) (previewDrawable.getIntrinsicHeight() * minScale), size[1]);
-            preview = getWidgetPreview(createWidgetInfo.componentName, createWidgetInfo.previewImage,
+            // Rendered directly, the disk cache is only consulted off the main thread
+            preview = renderWidgetPreview(createWidgetInfo.componentName, createWidgetInfo.previewImage,
                     createWidgetInfo.icon, spanX, spanY, maxWidth, maxHeight);
 
             // Determine the image view drawable scale relative to the preview
@@ -991,7 +1026,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         } else {
             PendingAddShortcutInfo createShortcutInfo = (PendingAddShortcutInfo) v.getTag();
             Drawable icon = mIconCache.getFullResIcon(createShortcutInfo.shortcutActivityInfo);
-            preview = Bitmap.createBitmap(icon.getIntrinsicWidth(),
+            preview = LauncherApplication.getBitmapPool().get(icon.getIntrinsicWidth(),
                     icon.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
 
             mCanvas.setBitmap(preview);
@@ -1016,8 +1051,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         mLauncher.getWorkspace().onDragStartedWithItem(createItemInfo, outline, clipAlpha);
         mDragController.startDrag(image, preview, this, createItemInfo,
                 DragController.DRAG_ACTION_COPY, null, scale);
-        outline.recycle();
-        preview.recycle();
+        LauncherApplication.getBitmapPool().put(outline);
+        LauncherApplication.getBitmapPool().put(preview);
         return true;
     }
 
@@ -1200,6 +1235,23 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         	mAppsChangeFreqAsyncTask = null;
         }
         cancelAllTasks();
+        if (mPreviewScheduler != null) {
+            // Don't let the worker threads keep this view and the activity alive
+            mPreviewScheduler.quit();
+        }
+        if (mPreviewDiskCache != null) {
+            mPreviewDiskCache.close();
+        }
+    }
+
+    /**
+     * Shrinks the in-memory preview cache, called before the bitmap pool is trimmed so the
+     * evicted previews are released along with it.
+     */
+    public void trimMemory(int level) {
+        if (mPreviewCache != null) {
+            mPreviewCache.trimMemory(level);
+        }
     }
 
     public void clearAllWidgetPages() {
@@ -1221,22 +1273,21 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     }
 
     private void cancelAllTasks() {
-        if (LauncherLog.DEBUG) {
-            LauncherLog.d(TAG, "cancelAllTasks: mRunningTasks size = " + mRunningTasks.size());
-        }
+        if (mPreviewScheduler != null) {
+            if (LauncherLog.DEBUG) {
+                LauncherLog.d(TAG, "cancelAllTasks: pending pages = "
+                        + mPreviewScheduler.getPendingCount());
+            }
 
-        // Clean up all the async tasks
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            task.cancel(false);
-            iter.remove();
-            mDirtyPageContent.set(task.page, true);
+            // Drop all the outstanding preview loads
+            for (int page : mPreviewScheduler.cancelAll()) {
+                mDirtyPageContent.set(page, true);
 
-            // We've already preallocated the views for the data to load into, so clear them as well
-            View v = getChildAt(task.page);
-            if (v instanceof PagedViewGridLayout) {
-                ((PagedViewGridLayout) v).removeAllViewsOnPage();
+                // We've already preallocated the views for the data to load into, so clear them as well
+                View v = getChildAt(page);
+                if (v instanceof PagedViewGridLayout) {
+                    ((PagedViewGridLayout) v).removeAllViewsOnPage();
+                }
             }
         }
         mDeferredSyncWidgetPageItems.clear();
@@ -1306,18 +1357,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     + delta + ", duration = " + duration + ", this = " + this);
         }
 
-        // Update the thread priorities given the direction lookahead
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            int pageIndex = task.page;
-            if ((mNextPage > mCurrentPage && pageIndex >= mCurrentPage) ||
-                (mNextPage < mCurrentPage && pageIndex <= mCurrentPage)) {
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            } else {
-                task.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
-            }
-        }
+        // Load the previews of the page we are flinging to first
+        updatePreviewTargetPage();
         
         return whichPage;
     }
@@ -1428,108 +1469,45 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     }
 
     /**
-     * A helper to return the priority for loading of the specified widget page.
+     * Points the preview scheduler at the page we are on, or the page we are snapping to.
      */
-    private int getWidgetPageLoadPriority(int childindex) {
-        // If we are snapping to another page, use that index as the target page index
+    private void updatePreviewTargetPage() {
+        if (mPreviewScheduler == null) {
+            return;
+        }
         int toPage = indexToPage(mCurrentPage);
         if (mNextPage > -1) {
             toPage = indexToPage(mNextPage);
         }
-
-        // We use the distance from the target page as an initial guess of priority, but if there
-        // are no pages of higher priority than the page specified, then bump up the priority of
-        // the specified page.
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        int minPageDiff = Integer.MAX_VALUE;
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            minPageDiff = Math.abs(task.page - toPage);
-        }
-
-        int rawPageDiff = Math.abs(childindex - toPage);
-        return rawPageDiff - Math.min(rawPageDiff, minPageDiff);
-    }
-    /**
-     * Return the appropriate thread priority for loading for a given page (we give the current
-     * page much higher priority)
-     */
-    private int getThreadPriorityForPage(int childindex) {
-        // TODO-APPS_CUSTOMIZE: detect number of cores and set thread priorities accordingly below
-        int pageDiff = getWidgetPageLoadPriority(childindex);
-        if (pageDiff <= 0) {
-            return Process.THREAD_PRIORITY_LESS_FAVORABLE;
-        } else if (pageDiff <= 1) {
-            return Process.THREAD_PRIORITY_LOWEST;
-        } else {
-            return Process.THREAD_PRIORITY_LOWEST;
-        }
-    }
-
-    private int getSleepForPage(int childindex) {
-        int pageDiff = getWidgetPageLoadPriority(childindex);
-        return Math.max(0, pageDiff * sPageSleepDelay);
+        mPreviewScheduler.setTargetPage(toPage);
     }
 
     /**
-     * Creates and executes a new AsyncTask to load a page of widget previews.
+     * Queues a page of widget previews on the preview scheduler.
      */
     private void prepareLoadWidgetPreviewsTask(int childindex, ArrayList<Object> widgets,
             int cellWidth, int cellHeight, int cellCountX) {
     	if(!isSupportWidget())
     		return;
     	
-        // Prune all tasks that are no longer needed
-        Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-        while (iter.hasNext()) {
-            AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-            int taskPage = task.page;
-            if (taskPage < getAssociatedLowerPageBound(mCurrentPage) ||
-                    taskPage > getAssociatedUpperPageBound(mCurrentPage)) {
-                task.cancel(false);
-                iter.remove();
-            } else {
-                task.setThreadPriority(getThreadPriorityForPage(taskPage));
-            }
-        }
+        // Prune all the pages that are no longer needed
+        mPreviewScheduler.cancelOutside(getAssociatedLowerPageBound(mCurrentPage),
+                getAssociatedUpperPageBound(mCurrentPage));
+        updatePreviewTargetPage();
+        mPreviewScheduler.submit(new AsyncTaskPageData(childindex, widgets, cellWidth, cellHeight));
+    }
 
-        // We introduce a slight delay to order the loading of side pages so that we don't thrash
-        final int sleepMs = getSleepForPage(childindex);
-        AsyncTaskPageData pageData = new AsyncTaskPageData(childindex, widgets, cellWidth, cellHeight,
-            new AsyncTaskCallback() {
-                @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
-                    try {
-                        try {
-                            Thread.sleep(sleepMs);
-                        } catch (Exception e) {}
-                        loadWidgetPreviewsInBackground(task, data);
-                    } finally {
-                        if (task.isCancelled()) {
-                            data.cleanup(true);
-                        }
-                    }
-                }
-            },
-            new AsyncTaskCallback() {
-                @Override
-                public void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data) {
-                    mRunningTasks.remove(task);
-                    if (task.isCancelled()) {
-                        return;
-                    }
-                    // do cleanup inside onSyncWidgetPageItems
-                    onSyncWidgetPageItems(data);
-                }
-            });
+    private final WidgetPreviewScheduler.Callbacks mPreviewSchedulerCallbacks =
+            new WidgetPreviewScheduler.Callbacks() {
+        public Bitmap loadPreview(Object info, int maxWidth, int maxHeight) {
+            return loadWidgetPreview(info, maxWidth, maxHeight);
+        }
 
-        // Ensure that the task is appropriately prioritized and runs in parallel
-        AppsCustomizeAsyncTask t = new AppsCustomizeAsyncTask(childindex,
-                AsyncTaskPageData.Type.LoadWidgetPreviewData);
-        t.setThreadPriority(getThreadPriorityForPage(childindex));
-        t.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, pageData);
-        mRunningTasks.add(t);
-    }
+        public void onPagePreviewsLoaded(AsyncTaskPageData data) {
+            // do cleanup inside onSyncWidgetPageItems
+            onSyncWidgetPageItems(data);
+        }
+    };
 
     /*
      * Widgets PagedView implementation
@@ -1563,7 +1541,32 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
     }
 
+    private String getPreviewLocale() {
+        return getResources().getConfiguration().locale.toString();
+    }
+
     private Bitmap getShortcutPreview(ResolveInfo info, int maxWidth, int maxHeight) {
+        final ComponentName component = new ComponentName(info.activityInfo.packageName,
+                info.activityInfo.name);
+        final PagedViewIconCache.Key key = new PagedViewIconCache.Key(info, maxWidth, maxHeight);
+        final long version = mPreviewDiskCache.getLastUpdateTime(component.getPackageName());
+        Bitmap preview = mPreviewCache.getPreview(key, version);
+        if (preview != null) {
+            return preview;
+        }
+        final String locale = getPreviewLocale();
+        preview = mPreviewDiskCache.get(component, WidgetPreviewDiskCache.TYPE_SHORTCUT,
+                maxWidth, maxHeight, locale);
+        if (preview == null) {
+            preview = renderShortcutPreview(info, maxWidth, maxHeight);
+            mPreviewDiskCache.put(component, WidgetPreviewDiskCache.TYPE_SHORTCUT,
+                    maxWidth, maxHeight, locale, preview);
+        }
+        mPreviewCache.putPreview(key, version, preview);
+        return preview;
+    }
+
+    private Bitmap renderShortcutPreview(ResolveInfo info, int maxWidth, int maxHeight) {
         Bitmap tempBitmap = mCachedShortcutPreviewBitmap.get();
         final Canvas c = mCachedShortcutPreviewCanvas.get();
         if (tempBitmap == null ||
@@ -1591,7 +1594,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         renderDrawableToBitmap(
                 icon, tempBitmap, paddingLeft, paddingTop, scaledIconWidth, scaledIconWidth);
 
-        Bitmap preview = Bitmap.createBitmap(maxWidth, maxHeight, Config.ARGB_8888);
+        Bitmap preview = LauncherApplication.getBitmapPool().get(maxWidth, maxHeight,
+                Config.ARGB_8888);
         c.setBitmap(preview);
         Paint p = mCachedShortcutPreviewPaint.get();
         if (p == null) {
@@ -1619,6 +1623,30 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     	if(!isSupportWidget())
     		return null;
 
+        final PagedViewIconCache.Key key =
+                new PagedViewIconCache.Key(provider, maxWidth, maxHeight);
+        final long version = mPreviewDiskCache.getLastUpdateTime(provider.getPackageName());
+        Bitmap preview = mPreviewCache.getPreview(key, version);
+        if (preview != null) {
+            return preview;
+        }
+        final String locale = getPreviewLocale();
+        preview = mPreviewDiskCache.get(provider, WidgetPreviewDiskCache.TYPE_WIDGET,
+                maxWidth, maxHeight, locale);
+        if (preview == null) {
+            preview = renderWidgetPreview(provider, previewImage, iconId, cellHSpan, cellVSpan,
+                    maxWidth, maxHeight);
+            mPreviewDiskCache.put(provider, WidgetPreviewDiskCache.TYPE_WIDGET,
+                    maxWidth, maxHeight, locale, preview);
+        }
+        mPreviewCache.putPreview(key, version, preview);
+        return preview;
+    }
+
+    private Bitmap renderWidgetPreview(ComponentName provider, int previewImage,
+            int iconId, int cellHSpan, int cellVSpan, int maxWidth,
+            int maxHeight) {
+
         // Load the preview image if possible
         String packageName = provider.getPackageName();
         ///M:maxWidth & maxHeight maybe zero which can lead to createBitmap JE
@@ -1672,7 +1700,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             bitmapWidth = previewDrawableWidth * cellHSpan; // subtract 2 dips
             bitmapHeight = previewDrawableHeight * cellVSpan;
 
-            defaultPreview = Bitmap.createBitmap(bitmapWidth, bitmapHeight,
+            defaultPreview = LauncherApplication.getBitmapPool().get(bitmapWidth, bitmapHeight,
                     Config.ARGB_8888);
             final Canvas c = mCachedAppWidgetPreviewCanvas.get();
             c.setBitmap(defaultPreview);
@@ -1727,7 +1755,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             bitmapHeight = (int) (scale * bitmapHeight);
         }
 
-        Bitmap preview = Bitmap.createBitmap(bitmapWidth, bitmapHeight,
+        Bitmap preview = LauncherApplication.getBitmapPool().get(bitmapWidth, bitmapHeight,
                 Config.ARGB_8888);
 
         // Draw the scaled preview into the final bitmap
@@ -1750,6 +1778,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             }
             c.drawBitmap(defaultPreview, src, dest, p);
             c.setBitmap(null);
+            LauncherApplication.getBitmapPool().put(defaultPreview);
         }
         return preview;
     }
@@ -1873,8 +1902,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                 }
                 if (immediate) {
                     AsyncTaskPageData data = new AsyncTaskPageData(indexToPage(page), items,
-                            maxPreviewWidth, maxPreviewHeight, null, null);
-                    loadWidgetPreviewsInBackground(null, data);
+                            maxPreviewWidth, maxPreviewHeight);
+                    loadWidgetPreviewsInBackground(data);
                     onSyncWidgetPageItems(data);
                 } else {
                     if (mInTransition) {
@@ -1889,51 +1918,38 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     	
     }
 
-    private void loadWidgetPreviewsInBackground(AppsCustomizeAsyncTask task,
-            AsyncTaskPageData data) {
+    private void loadWidgetPreviewsInBackground(AsyncTaskPageData data) {
     	
     	if(!isSupportWidget()){
     		return;
     	}
-    	
-        // loadWidgetPreviewsInBackground can be called without a task to load a set of widget
-        // previews synchronously
-        if (task != null) {
-            // Ensure that this task starts running at the correct priority
-            task.syncThreadPriority();
-        }
 
-        // Load each of the widget/shortcut previews
+        // Load each of the widget/shortcut previews synchronously
         ArrayList<Object> items = data.items;
-        ArrayList<Bitmap> images = data.generatedImages;
         int count = items.size();
         for (int i = 0; i < count; ++i) {
-            if (task != null) {
-                // Ensure we haven't been cancelled yet
-                if (task.isCancelled()) break;
-                // Before work on each item, ensure that this task is running at the correct
-                // priority
-                task.syncThreadPriority();
-            }
+            data.generatedImages.add(loadWidgetPreview(items.get(i),
+                    data.maxImageWidth, data.maxImageHeight));
+        }
+    }
 
-            Object rawInfo = items.get(i);
-            if (rawInfo instanceof AppWidgetProviderInfo) {
-                AppWidgetProviderInfo info = (AppWidgetProviderInfo) rawInfo;
-                int[] cellSpans = Launcher.getSpanForWidget(mLauncher, info);
-
-                int maxWidth = Math.min(data.maxImageWidth,
-                        mWidgetSpacingLayout.estimateCellWidth(cellSpans[0]));
-                int maxHeight = Math.min(data.maxImageHeight,
-                        mWidgetSpacingLayout.estimateCellHeight(cellSpans[1]));
-                Bitmap b = getWidgetPreview(info.provider, info.previewImage, info.icon,
-                        cellSpans[0], cellSpans[1], maxWidth, maxHeight);
-                images.add(b);
-            } else if (rawInfo instanceof ResolveInfo) {
-                // Fill in the shortcuts information
-                ResolveInfo info = (ResolveInfo) rawInfo;
-                images.add(getShortcutPreview(info, data.maxImageWidth, data.maxImageHeight));
-            }
+    private Bitmap loadWidgetPreview(Object rawInfo, int maxImageWidth, int maxImageHeight) {
+        if (rawInfo instanceof AppWidgetProviderInfo) {
+            AppWidgetProviderInfo info = (AppWidgetProviderInfo) rawInfo;
+            int[] cellSpans = Launcher.getSpanForWidget(mLauncher, info);
+
+            int maxWidth = Math.min(maxImageWidth,
+                    mWidgetSpacingLayout.estimateCellWidth(cellSpans[0]));
+            int maxHeight = Math.min(maxImageHeight,
+                    mWidgetSpacingLayout.estimateCellHeight(cellSpans[1]));
+            return getWidgetPreview(info.provider, info.previewImage, info.icon,
+                    cellSpans[0], cellSpans[1], maxWidth, maxHeight);
+        } else if (rawInfo instanceof ResolveInfo) {
+            // Fill in the shortcuts information
+            ResolveInfo info = (ResolveInfo) rawInfo;
+            return getShortcutPreview(info, maxImageWidth, maxImageHeight);
         }
+        return null;
     }
 
     private void onSyncWidgetPageItems(AsyncTaskPageData data) {
@@ -1952,8 +1968,8 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             int count = items.size();
             for (int i = 0; i < count; ++i) {
                 PagedViewWidget widget = (PagedViewWidget) layout.getChildAt(i);
-                if (widget != null) {
-                    Bitmap preview = data.generatedImages.get(i);
+                Bitmap preview = data.generatedImages.get(i);
+                if (widget != null && preview != null) {
                     widget.applyPreview(new FastBitmapDrawable(preview), i);
                 }
             }
@@ -1965,14 +1981,6 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
 
             layout.createHardwareLayer();
             invalidate();
-
-            // Update all thread priorities
-            Iterator<AppsCustomizeAsyncTask> iter = mRunningTasks.iterator();
-            while (iter.hasNext()) {
-                AppsCustomizeAsyncTask task = (AppsCustomizeAsyncTask) iter.next();
-                int pageIndex = task.page;
-                task.setThreadPriority(getThreadPriorityForPage(pageIndex));
-            }
         } finally {
             data.cleanup(false);
         }
@@ -2196,9 +2204,114 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             // The next layout pass will trigger data-ready if both widgets and apps are set, so
             // request a layout to trigger the page data when ready.
             requestLayout();
+            mAppsSynced = false;
         } else {
             cancelAllTasks();
             invalidatePageData();
+            rememberSyncedApps();
+        }
+    }
+
+    /**
+     * Called instead of invalidateOnDataChange() when only the app lists changed.  If the
+     * number of pages is unchanged, the list shown is diffed against the one the pages were
+     * synced from and only the cells that changed are updated, rebuilding a page only if its
+     * number of items changed.  Pages that are not loaded are just marked dirty.
+     *
+     * @param touched components whose ApplicationInfo was updated in place, or null
+     */
+    private void invalidateOnAppsChange(HashSet<ComponentName> touched) {
+        final int numCells = mCellCountX * mCellCountY;
+        if (!mAppsSynced || !isDataReady() || numCells == 0 || numCells != mSyncedNumCells
+                || mNumAppsPages != mSyncedNumAppsPages
+                || mNumAppsFreqPages != mSyncedNumAppsFreqPages
+                || mNumAppsDownloadPages != mSyncedNumAppsDownloadPages
+                || getChildCount() != mDirtyPageContent.size()) {
+            mFullAppsSyncCount++;
+            invalidateOnDataChange();
+            return;
+        }
+
+        // The pages of every apps tab stay loaded while another tab is shown, so all of them
+        // are diffed, not just the current one
+        resyncAppsPages(ContentType_Apps_Freq, mNumAppsFreqPages, mSyncedAppsFreq, mAppsFreq,
+                touched);
+        resyncAppsPages(ContentType_Apps, mNumAppsPages, mSyncedApps, mApps, touched);
+        resyncAppsPages(ContentType_Apps_Download, mNumAppsDownloadPages, mSyncedAppsDownload,
+                mAppsDownload, touched);
+        mIncrementalAppsSyncCount++;
+        rememberSyncedApps();
+    }
+
+    private void resyncAppsPages(int contentType, int pageCount,
+            ArrayList<ApplicationInfo> synced, ArrayList<ApplicationInfo> list,
+            HashSet<ComponentName> touched) {
+        if (list == null || pageCount == 0) {
+            return;
+        }
+        final AppsListDiff diff = AppsListDiff.compute(synced, list, touched);
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "invalidateOnAppsChange: type = " + contentType + ", " + diff
+                    + ", this = " + this);
+        }
+        if (diff.isEmpty()) {
+            return;
+        }
+        final int numCells = mCellCountX * mCellCountY;
+        for (int page = 0; page < pageCount; page++) {
+            if (diff.isRangeChanged(page * numCells, (page + 1) * numCells)) {
+                resyncAppsPage(contentType, page, list, diff);
+            }
+        }
+    }
+
+    private void resyncAppsPage(int contentType, int page, ArrayList<ApplicationInfo> list,
+            AppsListDiff diff) {
+        final int childIndex = indexToPage(page, contentType);
+        final PagedViewCellLayout layout = (PagedViewCellLayout) getChildAt(childIndex);
+        if (layout.getPageChildCount() == 0) {
+            // Not loaded, it will be synced when it comes into range
+            mDirtyPageContent.set(childIndex, true);
+            layout.setTag("");
+            return;
+        }
+
+        final int numCells = mCellCountX * mCellCountY;
+        final int startIndex = page * numCells;
+        final int endIndex = Math.min(startIndex + numCells, list.size());
+        if (layout.getPageChildCount() != endIndex - startIndex) {
+            layout.setTag("");
+            syncAppsPageItems(page, contentType, false);
+            mResyncedAppsPageCount++;
+            return;
+        }
+        for (int i = startIndex; i < endIndex; i++) {
+            if (diff.isChanged(i)) {
+                final View v = layout.getChildOnPageAt(i - startIndex);
+                if (v instanceof MTKAppIcon) {
+                    ((MTKAppIcon) v).applyFromApplicationInfo(list.get(i), true, this);
+                    mUpdatedAppCellCount++;
+                }
+            }
+        }
+    }
+
+    private void rememberSyncedApps() {
+        copyAppsList(mApps, mSyncedApps);
+        copyAppsList(mAppsFreq, mSyncedAppsFreq);
+        copyAppsList(mAppsDownload, mSyncedAppsDownload);
+        mSyncedNumCells = mCellCountX * mCellCountY;
+        mSyncedNumAppsPages = mNumAppsPages;
+        mSyncedNumAppsFreqPages = mNumAppsFreqPages;
+        mSyncedNumAppsDownloadPages = mNumAppsDownloadPages;
+        mAppsSynced = true;
+    }
+
+    private static void copyAppsList(ArrayList<ApplicationInfo> from,
+            ArrayList<ApplicationInfo> to) {
+        to.clear();
+        if (from != null) {
+            to.addAll(from);
         }
     }
     
@@ -2218,6 +2331,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     
     public void setApps(ArrayList<ApplicationInfo> list) {
         mApps = list;
+        mAppsIndex.clear();
+        for (ApplicationInfo info : list) {
+            mAppsIndex.put(info.componentName, info);
+        }
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "setApps : mApps = " + mApps.size() + ", mAppsHasSet = "
                     + mAppsHasSet + ", isDataReady() = " + isDataReady());
@@ -2251,7 +2368,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         }
 
         updatePageCounts();
-        invalidateOnDataChange();
+        invalidateOnAppsChange(null);
     }
 
     private void addAppsWithoutInvalidate(ArrayList<ApplicationInfo> list) {
@@ -2269,16 +2386,25 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     LauncherLog.d(TAG, "addAppsWithoutInvalidate: mApps size = " + mApps.size()
                             + ", index = " + index + ", info = " + info + ", this = " + this);
                 }
-                
-                if(supportDl && info.isDownloadApp()){
-                	index = Collections.binarySearch(mAppsDownload, info, LauncherModel.getAppNameComparator());
+            } else if (!mApps.get(index).componentName.equals(info.componentName)) {
+                continue;
+            }
+            // mApps is shared with the other apps customize pane, which may have added the
+            // app already; this pane's index and tab lists still need it
+            if (mAppsIndex.put(info.componentName, info) != null) {
+                continue;
+            }
+
+            if(supportDl && info.isDownloadApp()){
+            	index = Collections.binarySearch(mAppsDownload, info, LauncherModel.getAppNameComparator());
+            	if (index < 0)
             		mAppsDownload.add(-(index + 1), info);
-                }
-                
-                if(supportFreq && info.isFreqApp()){
-                	index = Collections.binarySearch(mAppsFreq, info, getAppFreqComparator());
-                	mAppsFreq.add(-(index + 1), info);
-                }
+            }
+
+            if(supportFreq && info.isFreqApp()){
+            	index = Collections.binarySearch(mAppsFreq, info, getAppFreqComparator());
+            	if (index < 0)
+            		mAppsFreq.add(-(index + 1), info);
             }
         }
     }
@@ -2291,7 +2417,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         addAppsWithoutInvalidate(list);
         reorderApps();
         updatePageCounts();
-        invalidateOnDataChange();
+        invalidateOnAppsChange(null);
     }
 
     private int findAppByComponent(List<ApplicationInfo> list, ApplicationInfo item) {
@@ -2349,6 +2475,10 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         int length = list.size();
         for (int i = 0; i < length; ++i) {
             ApplicationInfo info = list.get(i);
+            if (mAppsIndex.remove(info.componentName) == null) {
+                continue;
+            }
+            // The other pane may already have removed it from the shared mApps
             int removeIndex = findAppByComponent(mApps, info);
             if (removeIndex > -1) {
                 mApps.remove(removeIndex);
@@ -2356,18 +2486,18 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     LauncherLog.d(TAG, "removeAppsWithoutInvalidate: removeIndex = " + removeIndex
                             + ", ApplicationInfo info = " + info + ", this = " + this);
                 }
-                
-                if(supportDl && info.isDownloadApp()){
-                	removeIndex = findAppByComponent(mAppsDownload, info);
-                	if(removeIndex > -1)
-                		mAppsDownload.remove(removeIndex);
-                }
-                
-                if(supportFreq && info.isFreqApp()){
-                	removeIndex = findAppByComponent(mAppsFreq, info);
-                	if(removeIndex > -1)
-                		mAppsFreq.remove(removeIndex);
-                }
+            }
+
+            if(supportDl && info.isDownloadApp()){
+            	removeIndex = findAppByComponent(mAppsDownload, info);
+            	if(removeIndex > -1)
+            		mAppsDownload.remove(removeIndex);
+            }
+
+            if(supportFreq && info.isFreqApp()){
+            	removeIndex = findAppByComponent(mAppsFreq, info);
+            	if(removeIndex > -1)
+            		mAppsFreq.remove(removeIndex);
             }
         }
     }
@@ -2382,7 +2512,7 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
             int removeIndex = findAppByPackage(mApps, pn, attr);
             while (removeIndex > -1) {
 
-                mApps.remove(removeIndex);
+                mAppsIndex.remove(mApps.remove(removeIndex).componentName);
                 if(supportDl && attr[0]){
                 	final int dlRemoveIndex = findAppByPackage(mAppsDownload, pn);
                 	if(dlRemoveIndex > -1)
@@ -2406,10 +2536,13 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
                     + ",size = " + mApps.size() + ", this = " + this);
         }
 
+        if (mPreviewCache != null) {
+            mPreviewCache.removePackages(packageNames);
+        }
         removeAppsWithPackageNameWithoutInvalidate(packageNames);
         reorderApps();
         updatePageCounts();
-        invalidateOnDataChange();
+        invalidateOnAppsChange(null);
     }
 
     public void updateApps(ArrayList<ApplicationInfo> list) {
@@ -2420,11 +2553,23 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         // We remove and re-add the updated applications list because it's properties may have
         // changed (ie. the title), and this will ensure that the items will be in their proper
         // place in the list.
+        if (mPreviewCache != null) {
+            final HashSet<String> packageNames = new HashSet<String>();
+            for (ApplicationInfo info : list) {
+                packageNames.add(info.componentName.getPackageName());
+            }
+            mPreviewCache.removePackages(packageNames);
+        }
         removeAppsWithoutInvalidate(list);
         addAppsWithoutInvalidate(list);
         updatePageCounts();
         reorderApps();
-        invalidateOnDataChange();
+        // The infos may have been updated in place, so their cells are synced regardless
+        final HashSet<ComponentName> touched = new HashSet<ComponentName>();
+        for (ApplicationInfo info : list) {
+            touched.add(info.componentName);
+        }
+        invalidateOnAppsChange(touched);
     }
 
     public void reset() {
@@ -2478,6 +2623,18 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
         ApplicationInfo.dumpApplicationInfoList(TAG, "mApps", mApps);
         if(mWidgets != null)
         	dumpAppWidgetProviderInfoList(TAG, "mWidgets", mWidgets);
+        if (mPreviewCache != null) {
+            mPreviewCache.dumpState();
+        }
+        if (mPreviewDiskCache != null) {
+            mPreviewDiskCache.dumpState();
+        }
+        if (mPreviewScheduler != null) {
+            mPreviewScheduler.dumpState();
+        }
+        LauncherLog.d(TAG, "apps syncs: full=" + mFullAppsSyncCount + " incremental="
+                + mIncrementalAppsSyncCount + " pagesResynced=" + mResyncedAppsPageCount
+                + " cellsUpdated=" + mUpdatedAppCellCount);
     }
 
     private void dumpAppWidgetProviderInfoList(String tag, String label,
@@ -2742,11 +2899,9 @@ public class AppsCustomizePagedView extends PagedViewWithDraggableItems implemen
     	ComponentName cmp = sInfo.getComponentName();
     	if(cmp == null)
     		return;
-    	for(ApplicationInfo appInfo : mApps){
-    		if(cmp.equals(appInfo.componentName)){
-    			increaseAppFreqInfo(appInfo);
-    			return;
-    		}
+    	final ApplicationInfo appInfo = mAppsIndex.get(cmp);
+    	if(appInfo != null){
+    		increaseAppFreqInfo(appInfo);
     	}
     }
     
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.content.ComponentName;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Difference between two orderings of the all apps list.  Items are matched by component,
+ * an item is updated if it is matched by a different ApplicationInfo, and moved if it is not
+ * part of the longest run of matched items that kept their relative order, so the counts are
+ * the smallest set of inserts, removes, moves and updates that turns one list into the other.
+ *
+ * The positions whose item is not the same object as before, or was updated in place, are
+ * what the pages need to re-sync; everything else is still showing the right thing.
+ */
+class AppsListDiff {
+    int inserted;
+    int removed;
+    int moved;
+    int updated;
+
+    private final BitSet mChanged = new BitSet();
+    private final int mOldSize;
+    private final int mNewSize;
+
+    private AppsListDiff(int oldSize, int newSize) {
+        mOldSize = oldSize;
+        mNewSize = newSize;
+    }
+
+    /**
+     * @param touched components whose ApplicationInfo may have been updated in place, or null
+     */
+    static AppsListDiff compute(List<ApplicationInfo> oldList, List<ApplicationInfo> newList,
+            Set<ComponentName> touched) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+        final AppsListDiff diff = new AppsListDiff(oldSize, newSize);
+
+        final HashMap<ComponentName, Integer> oldIndex =
+                new HashMap<ComponentName, Integer>(oldSize * 2);
+        for (int i = 0; i < oldSize; i++) {
+            oldIndex.put(oldList.get(i).componentName, i);
+        }
+
+        // Old positions of the matched items, in their new order
+        final int[] matched = new int[newSize];
+        int matchedCount = 0;
+        for (int i = 0; i < newSize; i++) {
+            final ApplicationInfo info = newList.get(i);
+            final Integer old = oldIndex.get(info.componentName);
+            final boolean isTouched = touched != null && touched.contains(info.componentName);
+            if (old == null) {
+                diff.inserted++;
+            } else {
+                matched[matchedCount++] = old;
+                if (oldList.get(old) != info || isTouched) {
+                    diff.updated++;
+                }
+            }
+            if (i >= oldSize || oldList.get(i) != info || isTouched) {
+                diff.mChanged.set(i);
+            }
+        }
+        diff.removed = oldSize - matchedCount;
+        diff.moved = matchedCount - longestIncreasingRun(matched, matchedCount);
+        return diff;
+    }
+
+    boolean isEmpty() {
+        return mOldSize == mNewSize && mChanged.isEmpty();
+    }
+
+    /** Returns true if the item at this position of the new list is not the one shown. */
+    boolean isChanged(int position) {
+        return mChanged.get(position);
+    }
+
+    /**
+     * Returns true if anything in [start, end) changed, including positions that only
+     * existed in the old list.
+     */
+    boolean isRangeChanged(int start, int end) {
+        if (mOldSize > mNewSize && start < mOldSize && end > mNewSize) {
+            return true;
+        }
+        final int next = mChanged.nextSetBit(start);
+        return next >= 0 && next < end;
+    }
+
+    @Override
+    public String toString() {
+        return "AppsListDiff(inserted=" + inserted + " removed=" + removed + " moved=" + moved
+                + " updated=" + updated + " changedPositions=" + mChanged.cardinality() + ")";
+    }
+
+    /** Length of the longest strictly increasing subsequence, by patience sorting. */
+    private static int longestIncreasingRun(int[] values, int count) {
+        final ArrayList<Integer> tails = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            final int v = values[i];
+            int lo = 0;
+            int hi = tails.size();
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (tails.get(mid) < v) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == tails.size()) {
+                tails.add(v);
+            } else {
+                tails.set(lo, v);
+            }
+        }
+        return tails.size();
+    }
+}
@@ -1,5 +0,0 @@
-package com.android.qshtclauncher2;
-
-public interface AsyncTaskCallback {
-    void run(AppsCustomizeAsyncTask task, AsyncTaskPageData data);
-}
@@ -5,29 +5,20 @@ import java.util.ArrayList;
 import android.graphics.Bitmap;
 
 public class AsyncTaskPageData {
-    enum Type {
-        LoadWidgetPreviewData
-    }
 
-    AsyncTaskPageData(int p, ArrayList<Object> l, ArrayList<Bitmap> si, AsyncTaskCallback bgR,
-            AsyncTaskCallback postR) {
+    AsyncTaskPageData(int p, ArrayList<Object> l, ArrayList<Bitmap> si) {
         page = p;
         items = l;
         sourceImages = si;
         generatedImages = new ArrayList<Bitmap>();
         maxImageWidth = maxImageHeight = -1;
-        doInBackgroundCallback = bgR;
-        postExecuteCallback = postR;
     }
-    AsyncTaskPageData(int p, ArrayList<Object> l, int cw, int ch, AsyncTaskCallback bgR,
-            AsyncTaskCallback postR) {
+    AsyncTaskPageData(int p, ArrayList<Object> l, int cw, int ch) {
         page = p;
         items = l;
         generatedImages = new ArrayList<Bitmap>();
         maxImageWidth = cw;
         maxImageHeight = ch;
-        doInBackgroundCallback = bgR;
-        postExecuteCallback = postR;
     }
     void cleanup(boolean cancelled) {
         // Clean up any references to source/generated bitmaps
@@ -42,7 +33,7 @@ public class AsyncTaskPageData {
         if (generatedImages != null) {
             if (cancelled) {
                 for (Bitmap b : generatedImages) {
-                    b.recycle();
+                    LauncherApplication.getBitmapPool().put(b);
                 }
             }
             generatedImages.clear();
@@ -54,6 +45,4 @@ public class AsyncTaskPageData {
     ArrayList<Bitmap> generatedImages;
     int maxImageWidth;
     int maxImageHeight;
-    AsyncTaskCallback doInBackgroundCallback;
-    AsyncTaskCallback postExecuteCallback;
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Pool of mutable bitmaps for the short-lived drag, outline and preview bitmaps, so that
+ * picking up an item or opening a preview screen does not allocate (and later collect) a
+ * full ARGB_8888 bitmap every time.  Bitmaps are bucketed by width, height and config since
+ * they can't be reconfigured in place, and the total size of the idle bitmaps is capped.
+ */
+class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    private final HashMap<Long, ArrayList<Bitmap>> mBuckets = new HashMap<Long, ArrayList<Bitmap>>();
+    // Idle bitmaps, least recently returned first
+    private final LinkedList<Bitmap> mLru = new LinkedList<Bitmap>();
+    private final long mMaxBytes;
+    private long mBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+    private long mReusedBytes;
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cleared, mutable bitmap of exactly the given size and config, reusing an idle
+     * one if there is one.
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        synchronized (this) {
+            final ArrayList<Bitmap> bucket = mBuckets.get(getKey(width, height, config));
+            if (bucket != null && !bucket.isEmpty()) {
+                final Bitmap b = bucket.remove(bucket.size() - 1);
+                mLru.remove(b);
+                final int byteCount = getByteCount(b);
+                mBytes -= byteCount;
+                mReusedBytes += byteCount;
+                mHitCount++;
+                b.eraseColor(0);
+                return b;
+            }
+            mMissCount++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Hands a bitmap back to the pool.  The caller must not touch it afterwards; bitmaps that
+     * can't be reused are recycled straight away.
+     */
+    void put(Bitmap b) {
+        if (b == null || b.isRecycled()) {
+            return;
+        }
+        final int byteCount = getByteCount(b);
+        if (!b.isMutable() || b.getConfig() == null || byteCount > mMaxBytes) {
+            b.recycle();
+            return;
+        }
+        synchronized (this) {
+            final Long key = getKey(b.getWidth(), b.getHeight(), b.getConfig());
+            ArrayList<Bitmap> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Bitmap>(2);
+                mBuckets.put(key, bucket);
+            } else if (bucket.contains(b)) {
+                return;
+            }
+            bucket.add(b);
+            mLru.addLast(b);
+            mBytes += byteCount;
+            trimToSizeLocked(mMaxBytes);
+        }
+    }
+
+    /**
+     * Drops idle bitmaps in proportion to the trim level, everything at
+     * TRIM_MEMORY_MODERATE and above.
+     */
+    void trimMemory(int level) {
+        synchronized (this) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+                trimToSizeLocked(0);
+            } else {
+                trimToSizeLocked(mMaxBytes / 2);
+            }
+        }
+    }
+
+    void dumpState() {
+        synchronized (this) {
+            LauncherLog.d(TAG, "idle=" + mLru.size() + " bytes=" + mBytes
+                    + " maxBytes=" + mMaxBytes + " hits=" + mHitCount + " misses=" + mMissCount
+                    + " evictions=" + mEvictionCount + " reusedBytes=" + mReusedBytes);
+        }
+    }
+
+    private void trimToSizeLocked(long maxBytes) {
+        while (mBytes > maxBytes && !mLru.isEmpty()) {
+            final Bitmap b = mLru.removeFirst();
+            mBuckets.get(getKey(b.getWidth(), b.getHeight(), b.getConfig())).remove(b);
+            mBytes -= getByteCount(b);
+            mEvictionCount++;
+            b.recycle();
+        }
+    }
+
+    private static Long getKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) (height & 0xffffff) << 8) | config.ordinal();
+    }
+
+    private static int getByteCount(Bitmap b) {
+        return b.getRowBytes() * b.getHeight();
+    }
+}
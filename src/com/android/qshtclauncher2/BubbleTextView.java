@@ -100,6 +100,7 @@ public class BubbleTextView extends TextView {
                 null, null);
         setText(info.title);
         setTag(info);
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     @Override
@@ -52,10 +52,7 @@ import com.android.qshtclauncher2.FolderIcon.FolderRingAnimator;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Stack;
 
 public class CellLayout extends ViewGroup {
     static final String TAG = "CellLayout";
@@ -83,8 +80,10 @@ public class CellLayout extends ViewGroup {
     private final int[] mTmpPoint = new int[2];
     int[] mTempLocation = new int[2];
 
-    boolean[][] mOccupied;
-    boolean[][] mTmpOccupied;
+    GridOccupancy mOccupied;
+    GridOccupancy mTmpOccupied;
+    // Cells of a group of views that is pushed around as one block
+    private GridOccupancy mTmpBlockOccupied;
     private boolean mLastDownOnOccupiedCell = false;
 
     private OnTouchListener mInterceptTouchListener;
@@ -137,6 +136,10 @@ public class CellLayout extends ViewGroup {
     private TimeInterpolator mEaseOutInterpolator;
     private ShortcutAndWidgetContainer mShortcutsAndWidgets;
 
+    // Bumped whenever the items on this page are added, removed or moved, so that
+    // snapshots of the page can tell whether they are out of date
+    private int mContentGeneration;
+
     private boolean mIsHotseat = false;
     private float mHotseatScale = 1f;
 
@@ -156,6 +159,16 @@ public class CellLayout extends ViewGroup {
 
     private ArrayList<View> mIntersectingViews = new ArrayList<View>();
     private Rect mOccupiedRect = new Rect();
+    // Scratch state of the reorder solver, reused from one solve to the next
+    private final ItemConfiguration mSwapSolution = new ItemConfiguration();
+    private final ItemConfiguration mNoShuffleSolution = new ItemConfiguration();
+    private final ReorderSolutionCache mReorderCache = new ReorderSolutionCache();
+    private ViewCluster mViewCluster;
+    private int[] mIntersectingItems = new int[0];
+    private final Rect mTmpBoundingRect = new Rect();
+    private final int[] mTmpSwapCell = new int[2];
+    private final int[] mTmpNoShuffleCell = new int[2];
+    private final int[] mTmpNoShuffleSpan = new int[2];
     private int[] mDirectionVector = new int[2];
     int[] mPreviousReorderDirection = new int[2];
     private static final int INVALID_DIRECTION = -100;
@@ -197,8 +210,9 @@ public class CellLayout extends ViewGroup {
         mMaxGap = a.getDimensionPixelSize(R.styleable.CellLayout_maxGap, 0);
         mCountX = LauncherModel.getCellCountX();
         mCountY = LauncherModel.getCellCountY();
-        mOccupied = new boolean[mCountX][mCountY];
-        mTmpOccupied = new boolean[mCountX][mCountY];
+        mOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpBlockOccupied = new GridOccupancy(mCountX, mCountY);
         mPreviousReorderDirection[0] = INVALID_DIRECTION;
         mPreviousReorderDirection[1] = INVALID_DIRECTION;
 
@@ -332,9 +346,11 @@ public class CellLayout extends ViewGroup {
     public void setGridSize(int x, int y) {
         mCountX = x;
         mCountY = y;
-        mOccupied = new boolean[mCountX][mCountY];
-        mTmpOccupied = new boolean[mCountX][mCountY];
-        mTempRectStack.clear();
+        mOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTmpBlockOccupied = new GridOccupancy(mCountX, mCountY);
+        mTempRegions = null;
+        mReorderCache.clear();
         requestLayout();
     }
 
@@ -567,7 +583,7 @@ public class CellLayout extends ViewGroup {
             cd.setBounds(0, 0,  mCellWidth, mCellHeight);
             for (int i = 0; i < mCountX; i++) {
                 for (int j = 0; j < mCountY; j++) {
-                    if (mOccupied[i][j]) {
+                    if (mOccupied.get(i, j)) {
                         cellToPoint(i, j, pt);
                         canvas.save();
                         canvas.translate(pt[0], pt[1]);
@@ -1175,6 +1191,22 @@ public class CellLayout extends ViewGroup {
         }
     }
 
+    int getContentGeneration() {
+        return mContentGeneration;
+    }
+
+    /**
+     * Called by the ShortcutAndWidgetContainer whenever its children change, move or draw
+     * something new in place.
+     */
+    void onContentChanged() {
+        mContentGeneration++;
+        final Workspace workspace = mLauncher.getWorkspace();
+        if (workspace != null) {
+            workspace.getThumbnailCache().scheduleRefresh();
+        }
+    }
+
     public ShortcutAndWidgetContainer getShortcutsAndWidgets() {
         if (getChildCount() > 0) {
             return (ShortcutAndWidgetContainer) getChildAt(0);
@@ -1189,7 +1221,7 @@ public class CellLayout extends ViewGroup {
     public boolean animateChildToPosition(final View child, int cellX, int cellY, int duration,
             int delay, boolean permanent, boolean adjustOccupied) {
         ShortcutAndWidgetContainer clc = getShortcutsAndWidgets();
-        boolean[][] occupied = mOccupied;
+        GridOccupancy occupied = mOccupied;
         if (!permanent) {
             occupied = mTmpOccupied;
         }
@@ -1207,8 +1239,8 @@ public class CellLayout extends ViewGroup {
             final int oldX = lp.x;
             final int oldY = lp.y;
             if (adjustOccupied) {
-                occupied[lp.cellX][lp.cellY] = false;
-                occupied[cellX][cellY] = true;
+                occupied.set(lp.cellX, lp.cellY, false);
+                occupied.set(cellX, cellY, true);
             }
             lp.isLockedToGrid = true;
             if (permanent) {
@@ -1433,20 +1465,9 @@ public class CellLayout extends ViewGroup {
                 spanX, spanY, ignoreView, ignoreOccupied, result, null, mOccupied);
     }
 
-    private final Stack<Rect> mTempRectStack = new Stack<Rect>();
-    private void lazyInitTempRectStack() {
-        if (mTempRectStack.isEmpty()) {
-            for (int i = 0; i < mCountX * mCountY; i++) {
-                mTempRectStack.push(new Rect());
-            }
-        }
-    }
-
-    private void recycleTempRects(Stack<Rect> used) {
-        while (!used.isEmpty()) {
-            mTempRectStack.push(used.pop());
-        }
-    }
+    // Candidate regions of findNearestArea, allocated once per grid size
+    private Rect[] mTempRegions;
+    private final Rect mTempBestRect = new Rect();
 
     /**
      * Find a vacant area that will fit the given bounds nearest the requested
@@ -1466,8 +1487,26 @@ public class CellLayout extends ViewGroup {
      */
     int[] findNearestArea(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX, int spanY,
             View ignoreView, boolean ignoreOccupied, int[] result, int[] resultSpan,
-            boolean[][] occupied) {
-        lazyInitTempRectStack();
+            GridOccupancy occupied) {
+        // Keep track of best-scoring drop area
+        final int[] bestXY = result != null ? result : new int[2];
+
+        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
+                spanX < minSpanX || spanY < minSpanY) {
+            return bestXY;
+        }
+
+        final int countX = mCountX;
+        final int countY = mCountY;
+        if (mTempRegions == null) {
+            mTempRegions = new Rect[countX * countY];
+            for (int i = 0; i < mTempRegions.length; i++) {
+                mTempRegions[i] = new Rect();
+            }
+        }
+        final Rect[] validRegions = mTempRegions;
+        int validRegionCount = 0;
+
         // mark space take by ignoreView as available (method checks if ignoreView is null)
         markCellsAsUnoccupiedForView(ignoreView, occupied);
 
@@ -1477,33 +1516,18 @@ public class CellLayout extends ViewGroup {
         pixelX -= (mCellWidth + mWidthGap) * (spanX - 1) / 2f;
         pixelY -= (mCellHeight + mHeightGap) * (spanY - 1) / 2f;
 
-        // Keep track of best-scoring drop area
-        final int[] bestXY = result != null ? result : new int[2];
         double bestDistance = Double.MAX_VALUE;
-        final Rect bestRect = new Rect(-1, -1, -1, -1);
-        final Stack<Rect> validRegions = new Stack<Rect>();
-
-        final int countX = mCountX;
-        final int countY = mCountY;
-
-        if (minSpanX <= 0 || minSpanY <= 0 || spanX <= 0 || spanY <= 0 ||
-                spanX < minSpanX || spanY < minSpanY) {
-            return bestXY;
-        }
+        final Rect bestRect = mTempBestRect;
+        bestRect.set(-1, -1, -1, -1);
 
         for (int y = 0; y < countY - (minSpanY - 1); y++) {
-            inner:
             for (int x = 0; x < countX - (minSpanX - 1); x++) {
                 int ySize = -1;
                 int xSize = -1;
                 if (ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
+                    if (!occupied.isRegionVacant(x, y, minSpanX, minSpanY)) {
+                        continue;
                     }
                     xSize = minSpanX;
                     ySize = minSpanY;
@@ -1516,33 +1540,24 @@ public class CellLayout extends ViewGroup {
                     boolean hitMaxY = ySize >= spanY;
                     while (!(hitMaxX && hitMaxY)) {
                         if (incX && !hitMaxX) {
-                            for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || occupied[x + xSize][y + j]) {
-                                    // We can't move out horizontally
-                                    hitMaxX = true;
-                                }
-                            }
-                            if (!hitMaxX) {
+                            if (occupied.canFit(x + xSize, y, 1, ySize)) {
                                 xSize++;
+                            } else {
+                                // We can't move out horizontally
+                                hitMaxX = true;
                             }
                         } else if (!hitMaxY) {
-                            for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || occupied[x + i][y + ySize]) {
-                                    // We can't move out vertically
-                                    hitMaxY = true;
-                                }
-                            }
-                            if (!hitMaxY) {
+                            if (occupied.canFit(x, y + ySize, xSize, 1)) {
                                 ySize++;
+                            } else {
+                                // We can't move out vertically
+                                hitMaxY = true;
                             }
                         }
                         hitMaxX |= xSize >= spanX;
                         hitMaxY |= ySize >= spanY;
                         incX = !incX;
                     }
-                    incX = true;
-                    hitMaxX = xSize >= spanX;
-                    hitMaxY = ySize >= spanY;
                 }
                 final int[] cellXY = mTmpXY;
                 cellToCenterPoint(x, y, cellXY);
@@ -1550,18 +1565,20 @@ public class CellLayout extends ViewGroup {
                 // We verify that the current rect is not a sub-rect of any of our previous
                 // candidates. In this case, the current rect is disqualified in favour of the
                 // containing rect.
-                Rect currentRect = mTempRectStack.pop();
+                Rect currentRect = validRegions[validRegionCount];
                 currentRect.set(x, y, x + xSize, y + ySize);
                 boolean contained = false;
-                for (Rect r : validRegions) {
-                    if (r.contains(currentRect)) {
+                for (int i = 0; i < validRegionCount; i++) {
+                    if (validRegions[i].contains(currentRect)) {
                         contained = true;
                         break;
                     }
                 }
-                validRegions.push(currentRect);
-                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2)
-                        + Math.pow(cellXY[1] - pixelY, 2));
+                validRegionCount++;
+                // Squared distances order the candidates just like the distances do
+                final double dx = cellXY[0] - pixelX;
+                final double dy = cellXY[1] - pixelY;
+                double distance = dx * dx + dy * dy;
 
                 if ((distance <= bestDistance && !contained) ||
                         currentRect.contains(bestRect)) {
@@ -1584,7 +1601,6 @@ public class CellLayout extends ViewGroup {
             bestXY[0] = -1;
             bestXY[1] = -1;
         }
-        recycleTempRects(validRegions);
         return bestXY;
     }
 
@@ -1610,7 +1626,7 @@ public class CellLayout extends ViewGroup {
      *         nearest the requested location.
      */
     private int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean blockOccupied[][], int[] result) {
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         float bestDistance = Float.MAX_VALUE;
@@ -1620,15 +1636,11 @@ public class CellLayout extends ViewGroup {
         final int countY = mCountY;
 
         for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
             for (int x = 0; x < countX - (spanX - 1); x++) {
                 // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null || blockOccupied[i][j])) {
-                            continue inner;
-                        }
-                    }
+                if (blockOccupied == null ? !occupied.isRegionVacant(x, y, spanX, spanY)
+                        : !occupied.isRegionVacant(x, y, spanX, spanY, blockOccupied)) {
+                    continue;
                 }
 
                 float distance = (float)
@@ -1661,21 +1673,22 @@ public class CellLayout extends ViewGroup {
         return bestXY;
     }
 
-    private boolean addViewToTempLocation(View v, Rect rectOccupiedByPotentialDrop,
+    private boolean addItemToTempLocation(int item, Rect rectOccupiedByPotentialDrop,
             int[] direction, ItemConfiguration currentState) {
-        CellAndSpan c = currentState.map.get(v);
+        final ItemConfiguration c = currentState;
         boolean success = false;
-        markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
+        markCellsForView(c.x[item], c.y[item], c.spanX[item], c.spanY[item], mTmpOccupied, false);
         markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
 
-        findNearestArea(c.x, c.y, c.spanX, c.spanY, direction, mTmpOccupied, null, mTempLocation);
+        findNearestArea(c.x[item], c.y[item], c.spanX[item], c.spanY[item], direction,
+                mTmpOccupied, null, mTempLocation);
 
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
-            c.x = mTempLocation[0];
-            c.y = mTempLocation[1];
+            c.x[item] = mTempLocation[0];
+            c.y[item] = mTempLocation[1];
             success = true;
         }
-        markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
+        markCellsForView(c.x[item], c.y[item], c.spanX[item], c.spanY[item], mTmpOccupied, true);
         return success;
     }
 
@@ -1684,6 +1697,9 @@ public class CellLayout extends ViewGroup {
      * of the cluster and determining how those edges interact with other views. The edges
      * essentially define a fine-grained boundary around the cluster of views -- like a more
      * precise version of a bounding box.
+     *
+     * Views are referred to by their index in the ItemConfiguration, and a single cluster is
+     * reused for every push.
      */
     private class ViewCluster {
         final static int LEFT = 0;
@@ -1691,7 +1707,9 @@ public class CellLayout extends ViewGroup {
         final static int RIGHT = 2;
         final static int BOTTOM = 3;
 
-        ArrayList<View> views;
+        int[] items = new int[0];
+        boolean[] inCluster = new boolean[0];
+        int count;
         ItemConfiguration config;
         Rect boundingRect = new Rect();
 
@@ -1699,12 +1717,22 @@ public class CellLayout extends ViewGroup {
         int[] rightEdge = new int[mCountY];
         int[] topEdge = new int[mCountX];
         int[] bottomEdge = new int[mCountX];
-        boolean leftEdgeDirty, rightEdgeDirty, topEdgeDirty, bottomEdgeDirty, boundingRectDirty;
+        boolean leftEdgeDirty, rightEdgeDirty, topEdgeDirty, bottomEdgeDirty;
 
-        @SuppressWarnings("unchecked")
-        public ViewCluster(ArrayList<View> views, ItemConfiguration config) {
-            this.views = (ArrayList<View>) views.clone();
+        void init(int[] clusterItems, int clusterCount, ItemConfiguration config) {
             this.config = config;
+            if (items.length < config.count) {
+                items = new int[config.count];
+                inCluster = new boolean[config.count];
+            } else {
+                Arrays.fill(inCluster, false);
+            }
+            count = 0;
+            for (int i = 0; i < clusterCount; i++) {
+                items[count++] = clusterItems[i];
+                inCluster[clusterItems[i]] = true;
+            }
+            boundingRect.setEmpty();
             resetEdges();
         }
 
@@ -1721,41 +1749,40 @@ public class CellLayout extends ViewGroup {
             rightEdgeDirty = true;
             bottomEdgeDirty = true;
             topEdgeDirty = true;
-            boundingRectDirty = true;
         }
 
         void computeEdge(int which, int[] edge) {
-            int count = views.size();
-            for (int i = 0; i < count; i++) {
-                CellAndSpan cs = config.map.get(views.get(i));
+            final ItemConfiguration cs = config;
+            for (int k = 0; k < count; k++) {
+                final int i = items[k];
                 switch (which) {
                     case LEFT:
-                        int left = cs.x;
-                        for (int j = cs.y; j < cs.y + cs.spanY; j++) {
+                        int left = cs.x[i];
+                        for (int j = cs.y[i]; j < cs.y[i] + cs.spanY[i]; j++) {
                             if (left < edge[j] || edge[j] < 0) {
                                 edge[j] = left;
                             }
                         }
                         break;
                     case RIGHT:
-                        int right = cs.x + cs.spanX;
-                        for (int j = cs.y; j < cs.y + cs.spanY; j++) {
+                        int right = cs.x[i] + cs.spanX[i];
+                        for (int j = cs.y[i]; j < cs.y[i] + cs.spanY[i]; j++) {
                             if (right > edge[j]) {
                                 edge[j] = right;
                             }
                         }
                         break;
                     case TOP:
-                        int top = cs.y;
-                        for (int j = cs.x; j < cs.x + cs.spanX; j++) {
+                        int top = cs.y[i];
+                        for (int j = cs.x[i]; j < cs.x[i] + cs.spanX[i]; j++) {
                             if (top < edge[j] || edge[j] < 0) {
                                 edge[j] = top;
                             }
                         }
                         break;
                     case BOTTOM:
-                        int bottom = cs.y + cs.spanY;
-                        for (int j = cs.x; j < cs.x + cs.spanX; j++) {
+                        int bottom = cs.y[i] + cs.spanY[i];
+                        for (int j = cs.x[i]; j < cs.x[i] + cs.spanX[i]; j++) {
                             if (bottom > edge[j]) {
                                 edge[j] = bottom;
                             }
@@ -1765,36 +1792,39 @@ public class CellLayout extends ViewGroup {
             }
         }
 
-        boolean isViewTouchingEdge(View v, int whichEdge) {
-            CellAndSpan cs = config.map.get(v);
+        boolean contains(int item) {
+            return inCluster[item];
+        }
 
-            int[] edge = getEdge(whichEdge);
+        boolean isItemTouchingEdge(int item, int whichEdge) {
+            final ItemConfiguration cs = config;
+            final int[] edge = getEdge(whichEdge);
 
             switch (whichEdge) {
                 case LEFT:
-                    for (int i = cs.y; i < cs.y + cs.spanY; i++) {
-                        if (edge[i] == cs.x + cs.spanX) {
+                    for (int i = cs.y[item]; i < cs.y[item] + cs.spanY[item]; i++) {
+                        if (edge[i] == cs.x[item] + cs.spanX[item]) {
                             return true;
                         }
                     }
                     break;
                 case RIGHT:
-                    for (int i = cs.y; i < cs.y + cs.spanY; i++) {
-                        if (edge[i] == cs.x) {
+                    for (int i = cs.y[item]; i < cs.y[item] + cs.spanY[item]; i++) {
+                        if (edge[i] == cs.x[item]) {
                             return true;
                         }
                     }
                     break;
                 case TOP:
-                    for (int i = cs.x; i < cs.x + cs.spanX; i++) {
-                        if (edge[i] == cs.y + cs.spanY) {
+                    for (int i = cs.x[item]; i < cs.x[item] + cs.spanX[item]; i++) {
+                        if (edge[i] == cs.y[item] + cs.spanY[item]) {
                             return true;
                         }
                     }
                     break;
                 case BOTTOM:
-                    for (int i = cs.x; i < cs.x + cs.spanX; i++) {
-                        if (edge[i] == cs.y) {
+                    for (int i = cs.x[item]; i < cs.x[item] + cs.spanX[item]; i++) {
+                        if (edge[i] == cs.y[item]) {
                             return true;
                         }
                     }
@@ -1804,43 +1834,42 @@ public class CellLayout extends ViewGroup {
         }
 
         void shift(int whichEdge, int delta) {
-            for (View v: views) {
-                CellAndSpan c = config.map.get(v);
+            for (int k = 0; k < count; k++) {
+                final int i = items[k];
                 switch (whichEdge) {
                     case LEFT:
-                        c.x -= delta;
+                        config.x[i] -= delta;
                         break;
                     case RIGHT:
-                        c.x += delta;
+                        config.x[i] += delta;
                         break;
                     case TOP:
-                        c.y -= delta;
+                        config.y[i] -= delta;
                         break;
                     case BOTTOM:
                     default:
-                        c.y += delta;
+                        config.y[i] += delta;
                         break;
                 }
             }
             resetEdges();
         }
 
-        public void addView(View v) {
-            views.add(v);
+        public void addItem(int item) {
+            items[count++] = item;
+            inCluster[item] = true;
             resetEdges();
         }
 
         public Rect getBoundingRect() {
-            if (boundingRectDirty) {
-                boolean first = true;
-                for (View v: views) {
-                    CellAndSpan c = config.map.get(v);
-                    if (first) {
-                        boundingRect.set(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-                        first = false;
-                    } else {
-                        boundingRect.union(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-                    }
+            for (int k = 0; k < count; k++) {
+                final int i = items[k];
+                if (k == 0) {
+                    boundingRect.set(config.x[i], config.y[i],
+                            config.x[i] + config.spanX[i], config.y[i] + config.spanY[i]);
+                } else {
+                    boundingRect.union(config.x[i], config.y[i],
+                            config.x[i] + config.spanX[i], config.y[i] + config.spanY[i]);
                 }
             }
             return boundingRect;
@@ -1849,75 +1878,80 @@ public class CellLayout extends ViewGroup {
         public int[] getEdge(int which) {
             switch (which) {
                 case LEFT:
-                    return getLeftEdge();
+                    if (leftEdgeDirty) {
+                        computeEdge(LEFT, leftEdge);
+                        leftEdgeDirty = false;
+                    }
+                    return leftEdge;
                 case RIGHT:
-                    return getRightEdge();
+                    if (rightEdgeDirty) {
+                        computeEdge(RIGHT, rightEdge);
+                        rightEdgeDirty = false;
+                    }
+                    return rightEdge;
                 case TOP:
-                    return getTopEdge();
+                    if (topEdgeDirty) {
+                        computeEdge(TOP, topEdge);
+                        topEdgeDirty = false;
+                    }
+                    return topEdge;
                 case BOTTOM:
                 default:
-                    return getBottomEdge();
-            }
-        }
-
-        public int[] getLeftEdge() {
-            if (leftEdgeDirty) {
-                computeEdge(LEFT, leftEdge);
-            }
-            return leftEdge;
-        }
-
-        public int[] getRightEdge() {
-            if (rightEdgeDirty) {
-                computeEdge(RIGHT, rightEdge);
-            }
-            return rightEdge;
-        }
-
-        public int[] getTopEdge() {
-            if (topEdgeDirty) {
-                computeEdge(TOP, topEdge);
+                    if (bottomEdgeDirty) {
+                        computeEdge(BOTTOM, bottomEdge);
+                        bottomEdgeDirty = false;
+                    }
+                    return bottomEdge;
             }
-            return topEdge;
         }
 
-        public int[] getBottomEdge() {
-            if (bottomEdgeDirty) {
-                computeEdge(BOTTOM, bottomEdge);
+        private int pushOrder(int item, int whichEdge) {
+            switch (whichEdge) {
+                case LEFT:
+                    return -(config.x[item] + config.spanX[item]);
+                case RIGHT:
+                    return config.x[item];
+                case TOP:
+                    return -(config.y[item] + config.spanY[item]);
+                case BOTTOM:
+                default:
+                    return config.y[item];
             }
-            return bottomEdge;
         }
 
-        PositionComparator comparator = new PositionComparator();
-        class PositionComparator implements Comparator<View> {
-            int whichEdge = 0;
-            public int compare(View left, View right) {
-                CellAndSpan l = config.map.get(left);
-                CellAndSpan r = config.map.get(right);
-                switch (whichEdge) {
-                    case LEFT:
-                        return (r.x + r.spanX) - (l.x + l.spanX);
-                    case RIGHT:
-                        return l.x - r.x;
-                    case TOP:
-                        return (r.y + r.spanY) - (l.y + l.spanY);
-                    case BOTTOM:
-                    default:
-                        return l.y - r.y;
+        /**
+         * Orders the configuration's items in the order they would be pushed by the given
+         * edge.  The sort is stable, so items the edge does not tell apart keep their order.
+         */
+        public void sortConfigurationForEdgePush(int edge) {
+            final int[] sorted = config.sortedItems;
+            for (int k = 1; k < config.sortedCount; k++) {
+                final int item = sorted[k];
+                final int order = pushOrder(item, edge);
+                int j = k - 1;
+                while (j >= 0 && pushOrder(sorted[j], edge) > order) {
+                    sorted[j + 1] = sorted[j];
+                    j--;
                 }
+                sorted[j + 1] = item;
             }
         }
+    }
 
-        public void sortConfigurationForEdgePush(int edge) {
-            comparator.whichEdge = edge;
-            Collections.sort(config.sortedViews, comparator);
+    private ViewCluster getViewCluster() {
+        if (mViewCluster == null || mViewCluster.leftEdge.length != mCountY
+                || mViewCluster.topEdge.length != mCountX) {
+            mViewCluster = new ViewCluster();
         }
+        return mViewCluster;
     }
 
-    private boolean pushViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
-            int[] direction, View dragView, ItemConfiguration currentState) {
+    private boolean pushItemsToTempLocation(int[] items, int itemCount,
+            Rect rectOccupiedByPotentialDrop, int[] direction, int dragItem,
+            ItemConfiguration currentState) {
 
-        ViewCluster cluster = new ViewCluster(views, currentState);
+        ViewCluster cluster = getViewCluster();
+        cluster.init(items, itemCount, currentState);
         Rect clusterRect = cluster.getBoundingRect();
         int whichEdge;
         int pushDistance;
@@ -1945,9 +1979,8 @@ public class CellLayout extends ViewGroup {
         }
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
+        for (int k = 0; k < itemCount; k++) {
+            markItemCells(currentState, items[k], mTmpOccupied, false);
         }
 
         // We save the current configuration -- if we fail to find a solution we will revert
@@ -1961,23 +1994,22 @@ public class CellLayout extends ViewGroup {
         cluster.sortConfigurationForEdgePush(whichEdge);
 
         while (pushDistance > 0 && !fail) {
-            for (View v: currentState.sortedViews) {
+            for (int k = 0; k < currentState.sortedCount; k++) {
+                final int item = currentState.sortedItems[k];
                 // For each view that isn't in the cluster, we see if the leading edge of the
                 // cluster is contacting the edge of that view. If so, we add that view to the
                 // cluster.
-                if (!cluster.views.contains(v) && v != dragView) {
-                    if (cluster.isViewTouchingEdge(v, whichEdge)) {
-                        LayoutParams lp = (LayoutParams) v.getLayoutParams();
-                        if (!lp.canReorder) {
+                if (!cluster.contains(item) && item != dragItem) {
+                    if (cluster.isItemTouchingEdge(item, whichEdge)) {
+                        if (!currentState.canReorder[item]) {
                             // The push solution includes the all apps button, this is not viable.
                             fail = true;
                             break;
                         }
-                        cluster.addView(v);
-                        CellAndSpan c = currentState.map.get(v);
+                        cluster.addItem(item);
 
                         // Adding view to cluster, mark it as not occupied.
-                        markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
+                        markItemCells(currentState, item, mTmpOccupied, false);
                     }
                 }
             }
@@ -2001,44 +2033,45 @@ public class CellLayout extends ViewGroup {
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: cluster.views) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
+        for (int k = 0; k < cluster.count; k++) {
+            markItemCells(currentState, cluster.items[k], mTmpOccupied, true);
         }
 
         return foundSolution;
     }
 
-    private boolean addViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
-            int[] direction, View dragView, ItemConfiguration currentState) {
-        if (views.size() == 0) return true;
+    private boolean addItemsToTempLocation(int[] items, int itemCount,
+            Rect rectOccupiedByPotentialDrop, int[] direction, ItemConfiguration currentState) {
+        if (itemCount == 0) return true;
 
+        final ItemConfiguration c = currentState;
         boolean success = false;
-        Rect boundingRect = null;
+        final Rect boundingRect = mTmpBoundingRect;
         // We construct a rect which represents the entire group of views passed in
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            if (boundingRect == null) {
-                boundingRect = new Rect(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
+        for (int k = 0; k < itemCount; k++) {
+            final int i = items[k];
+            if (k == 0) {
+                boundingRect.set(c.x[i], c.y[i], c.x[i] + c.spanX[i], c.y[i] + c.spanY[i]);
             } else {
-                boundingRect.union(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
+                boundingRect.union(c.x[i], c.y[i], c.x[i] + c.spanX[i], c.y[i] + c.spanY[i]);
             }
         }
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, false);
+        for (int k = 0; k < itemCount; k++) {
+            markItemCells(c, items[k], mTmpOccupied, false);
         }
 
-        boolean[][] blockOccupied = new boolean[boundingRect.width()][boundingRect.height()];
+        final GridOccupancy blockOccupied = mTmpBlockOccupied;
+        blockOccupied.clear();
         int top = boundingRect.top;
         int left = boundingRect.left;
         // We mark more precisely which parts of the bounding rect are truly occupied, allowing
         // for interlocking.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x - left, c.y - top, c.spanX, c.spanY, blockOccupied, true);
+        for (int k = 0; k < itemCount; k++) {
+            final int i = items[k];
+            markCellsForView(c.x[i] - left, c.y[i] - top, c.spanX[i], c.spanY[i],
+                    blockOccupied, true);
         }
 
         markCellsForRect(rectOccupiedByPotentialDrop, mTmpOccupied, true);
@@ -2050,47 +2083,50 @@ public class CellLayout extends ViewGroup {
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
             int deltaX = mTempLocation[0] - boundingRect.left;
             int deltaY = mTempLocation[1] - boundingRect.top;
-            for (View v: views) {
-                CellAndSpan c = currentState.map.get(v);
-                c.x += deltaX;
-                c.y += deltaY;
+            for (int k = 0; k < itemCount; k++) {
+                c.x[items[k]] += deltaX;
+                c.y[items[k]] += deltaY;
             }
             success = true;
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
-            markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
+        for (int k = 0; k < itemCount; k++) {
+            markItemCells(c, items[k], mTmpOccupied, true);
         }
         return success;
     }
 
-    private void markCellsForRect(Rect r, boolean[][] occupied, boolean value) {
-        markCellsForView(r.left, r.top, r.width(), r.height(), occupied, value);
+    private void markItemCells(ItemConfiguration c, int item, GridOccupancy occupied,
+            boolean value) {
+        markCellsForView(c.x[item], c.y[item], c.spanX[item], c.spanY[item], occupied, value);
+    }
+
+    private void markCellsForRect(Rect r, GridOccupancy occupied, boolean value) {
+        occupied.markCells(r, value);
     }
 
     // This method tries to find a reordering solution which satisfies the push mechanic by trying
     // to push items in each of the cardinal directions, in an order based on the direction vector
     // passed.
-    private boolean attemptPushInDirection(ArrayList<View> intersectingViews, Rect occupied,
-            int[] direction, View ignoreView, ItemConfiguration solution) {
+    private boolean attemptPushInDirection(int[] items, int itemCount, Rect occupied,
+            int[] direction, int dragItem, ItemConfiguration solution) {
         if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
             // If the direction vector has two non-zero components, we try pushing 
             // separately in each of the components.
             int temp = direction[1];
             direction[1] = 0;
 
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             direction[1] = temp;
             temp = direction[0];
             direction[0] = 0;
 
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             // Revert the direction
@@ -2101,16 +2137,16 @@ public class CellLayout extends ViewGroup {
             direction[1] *= -1;
             temp = direction[1];
             direction[1] = 0;
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
 
             direction[1] = temp;
             temp = direction[0];
             direction[0] = 0;
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             // revert the direction
@@ -2121,15 +2157,15 @@ public class CellLayout extends ViewGroup {
         } else {
             // If the direction vector has a single non-zero component, we push first in the
             // direction of the vector
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             // Then we try the opposite direction
             direction[0] *= -1;
             direction[1] *= -1;
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             // Switch the direction back
@@ -2143,16 +2179,16 @@ public class CellLayout extends ViewGroup {
             int temp = direction[1];
             direction[1] = direction[0];
             direction[0] = temp;
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
 
             // Then we try the opposite direction
             direction[0] *= -1;
             direction[1] *= -1;
-            if (pushViewsToTempLocation(intersectingViews, occupied, direction,
-                    ignoreView, solution)) {
+            if (pushItemsToTempLocation(items, itemCount, occupied, direction,
+                    dragItem, solution)) {
                 return true;
             }
             // Switch the direction back
@@ -2172,49 +2208,47 @@ public class CellLayout extends ViewGroup {
         // Return early if get invalid cell positions
         if (cellX < 0 || cellY < 0) return false;
 
-        mIntersectingViews.clear();
         mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
 
         // Mark the desired location of the view currently being dragged.
-        if (ignoreView != null) {
-            CellAndSpan c = solution.map.get(ignoreView);
-            if (c != null) {
-                c.x = cellX;
-                c.y = cellY;
-            }
-        }
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
-        for (View child: solution.map.keySet()) {
-            if (child == ignoreView) continue;
-            CellAndSpan c = solution.map.get(child);
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            r1.set(c.x, c.y, c.x + c.spanX, c.y + c.spanY);
-            if (Rect.intersects(r0, r1)) {
-                if (!lp.canReorder) {
+        final int dragItem = solution.indexOf(ignoreView);
+        if (dragItem >= 0) {
+            solution.x[dragItem] = cellX;
+            solution.y[dragItem] = cellY;
+        }
+        if (mIntersectingItems.length < solution.count) {
+            mIntersectingItems = new int[solution.count];
+        }
+        final int[] intersecting = mIntersectingItems;
+        int intersectingCount = 0;
+        for (int i = 0; i < solution.count; i++) {
+            if (i == dragItem) continue;
+            if (solution.x[i] < cellX + spanX && cellX < solution.x[i] + solution.spanX[i]
+                    && solution.y[i] < cellY + spanY && cellY < solution.y[i] + solution.spanY[i]) {
+                if (!solution.canReorder[i]) {
                     return false;
                 }
-                mIntersectingViews.add(child);
+                intersecting[intersectingCount++] = i;
             }
         }
 
         // First we try to find a solution which respects the push mechanic. That is, 
         // we try to find a solution such that no displaced item travels through another item
         // without also displacing that item.
-        if (attemptPushInDirection(mIntersectingViews, mOccupiedRect, direction, ignoreView,
-                solution)) {
+        if (attemptPushInDirection(intersecting, intersectingCount, mOccupiedRect, direction,
+                dragItem, solution)) {
             return true;
         }
 
         // Next we try moving the views as a block, but without requiring the push mechanic.
-        if (addViewsToTempLocation(mIntersectingViews, mOccupiedRect, direction, ignoreView,
+        if (addItemsToTempLocation(intersecting, intersectingCount, mOccupiedRect, direction,
                 solution)) {
             return true;
         }
 
         // Ok, they couldn't move as a block, let's move them individually
-        for (View v : mIntersectingViews) {
-            if (!addViewToTempLocation(v, mOccupiedRect, direction, solution)) {
+        for (int k = 0; k < intersectingCount; k++) {
+            if (!addItemToTempLocation(intersecting[k], mOccupiedRect, direction, solution)) {
                 return false;
             }
         }
@@ -2238,16 +2272,14 @@ public class CellLayout extends ViewGroup {
         }
     }
 
-    private void copyOccupiedArray(boolean[][] occupied) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                occupied[i][j] = mOccupied[i][j];
-            }
-        }
+    private void copyOccupiedArray(GridOccupancy occupied) {
+        mOccupied.copyTo(occupied);
     }
 
     ItemConfiguration simpleSwap(int pixelX, int pixelY, int minSpanX, int minSpanY, int spanX,
             int spanY, int[] direction, View dragView, boolean decX, ItemConfiguration solution) {
+        // The first attempt of a solve is the one the reorder cache can answer
+        final boolean firstAttempt = solution.sortedCount == 0;
         // Copy the current state into the solution. This solution will be manipulated as necessary.
         copyCurrentStateToSolution(solution, false);
         // Copy the current occupied array into the temporary occupied array. This array will be
@@ -2256,14 +2288,19 @@ public class CellLayout extends ViewGroup {
 
         // We find the nearest cell into which we would place the dragged item, assuming there's
         // nothing in its way.
-        int result[] = new int[2];
+        int result[] = mTmpSwapCell;
         result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
 
         boolean success = false;
         // First we try the exact nearest position of the item being dragged,
         // we will then want to try to move this around to other neighbouring positions
-        success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragView,
-                solution);
+        if (firstAttempt) {
+            success = mReorderCache.rearrangementExists(result[0], result[1], spanX, spanY,
+                    direction, dragView, solution);
+        } else {
+            success = rearrangementExists(result[0], result[1], spanX, spanY, direction,
+                    dragView, solution);
+        }
 
         if (!success) {
             // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
@@ -2288,38 +2325,35 @@ public class CellLayout extends ViewGroup {
 
     private void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
         int childCount = mShortcutsAndWidgets.getChildCount();
+        solution.ensureCapacity(childCount);
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c;
             if (temp) {
-                c = new CellAndSpan(lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan);
+                solution.set(i, child, lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan,
+                        lp.canReorder);
             } else {
-                c = new CellAndSpan(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
+                solution.set(i, child, lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan,
+                        lp.canReorder);
             }
-            solution.add(child, c);
         }
+        solution.count = childCount;
     }
 
     private void copySolutionToTempState(ItemConfiguration solution, View dragView) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                mTmpOccupied[i][j] = false;
-            }
-        }
+        mTmpOccupied.clear();
 
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                lp.tmpCellX = c.x;
-                lp.tmpCellY = c.y;
-                lp.cellHSpan = c.spanX;
-                lp.cellVSpan = c.spanY;
-                markCellsForView(c.x, c.y, c.spanX, c.spanY, mTmpOccupied, true);
+            if (solution.isItem(i, child)) {
+                lp.tmpCellX = solution.x[i];
+                lp.tmpCellY = solution.y[i];
+                lp.cellHSpan = solution.spanX[i];
+                lp.cellVSpan = solution.spanY[i];
+                markItemCells(solution, i, mTmpOccupied, true);
             }
         }
         markCellsForView(solution.dragViewX, solution.dragViewY, solution.dragViewSpanX,
@@ -2329,22 +2363,17 @@ public class CellLayout extends ViewGroup {
     private void animateItemsToSolution(ItemConfiguration solution, View dragView, boolean
             commitDragView) {
 
-        boolean[][] occupied = DESTRUCTIVE_REORDER ? mOccupied : mTmpOccupied;
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                occupied[i][j] = false;
-            }
-        }
+        GridOccupancy occupied = DESTRUCTIVE_REORDER ? mOccupied : mTmpOccupied;
+        occupied.clear();
 
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
-            if (c != null) {
-                animateChildToPosition(child, c.x, c.y, REORDER_ANIMATION_DURATION, 0,
-                        DESTRUCTIVE_REORDER, false);
-                markCellsForView(c.x, c.y, c.spanX, c.spanY, occupied, true);
+            if (solution.isItem(i, child)) {
+                animateChildToPosition(child, solution.x[i], solution.y[i],
+                        REORDER_ANIMATION_DURATION, 0, DESTRUCTIVE_REORDER, false);
+                markItemCells(solution, i, occupied, true);
             }
         }
         if (commitDragView) {
@@ -2359,11 +2388,10 @@ public class CellLayout extends ViewGroup {
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             if (child == dragView) continue;
-            CellAndSpan c = solution.map.get(child);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            if (c != null) {
+            if (solution.isItem(i, child)) {
                 ReorderHintAnimation rha = new ReorderHintAnimation(child, lp.cellX, lp.cellY,
-                        c.x, c.y, c.spanX, c.spanY);
+                        solution.x[i], solution.y[i], solution.spanX[i], solution.spanY[i]);
                 rha.animate();
             }
         }
@@ -2492,11 +2520,7 @@ public class CellLayout extends ViewGroup {
     }
 
     private void commitTempPlacement() {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                mOccupied[i][j] = mTmpOccupied[i][j];
-            }
-        }
+        mTmpOccupied.copyTo(mOccupied);
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
@@ -2528,8 +2552,8 @@ public class CellLayout extends ViewGroup {
 
     ItemConfiguration findConfigurationNoShuffle(int pixelX, int pixelY, int minSpanX, int minSpanY,
             int spanX, int spanY, View dragView, ItemConfiguration solution) {
-        int[] result = new int[2];
-        int[] resultSpan = new int[2];
+        final int[] result = mTmpNoShuffleCell;
+        final int[] resultSpan = mTmpNoShuffleSpan;
         findNearestVacantArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, null, result,
                 resultSpan);
         if (result[0] >= 0 && result[1] >= 0) {
@@ -2650,8 +2674,9 @@ public class CellLayout extends ViewGroup {
         regionToCenterPoint(cellX, cellY, spanX, spanY, pixelXY);
 
         // First we determine if things have moved enough to cause a different layout
+        mSwapSolution.clear();
         ItemConfiguration swapSolution = simpleSwap(pixelXY[0], pixelXY[1], spanX, spanY,
-                 spanX,  spanY, direction, dragView,  true,  new ItemConfiguration());
+                 spanX,  spanY, direction, dragView,  true,  mSwapSolution);
 
         setUseTempCoords(true);
         if (swapSolution != null && swapSolution.isSolution) {
@@ -2702,12 +2727,14 @@ public class CellLayout extends ViewGroup {
             mPreviousReorderDirection[1] = mDirectionVector[1];
         }
 
+        mSwapSolution.clear();
         ItemConfiguration swapSolution = simpleSwap(pixelX, pixelY, minSpanX, minSpanY,
-                 spanX,  spanY, mDirectionVector, dragView,  true,  new ItemConfiguration());
+                 spanX,  spanY, mDirectionVector, dragView,  true,  mSwapSolution);
 
         // We attempt the approach which doesn't shuffle views at all
+        mNoShuffleSolution.clear();
         ItemConfiguration noShuffleSolution = findConfigurationNoShuffle(pixelX, pixelY, minSpanX,
-                minSpanY, spanX, spanY, dragView, new ItemConfiguration());
+                minSpanY, spanX, spanY, dragView, mNoShuffleSolution);
 
         ItemConfiguration finalSolution = null;
         if (swapSolution.isSolution && swapSolution.area() >= noShuffleSolution.area()) {
@@ -2767,31 +2794,89 @@ public class CellLayout extends ViewGroup {
         return mItemPlacementDirty;
     }
 
+    /**
+     * Position of every child of mShortcutsAndWidgets while the reorder solver moves them
+     * around, kept in arrays indexed like the children.  The arrays are reused from one
+     * solve to the next, call {@link #clear()} before starting a new one.
+     */
     private class ItemConfiguration {
-        HashMap<View, CellAndSpan> map = new HashMap<View, CellAndSpan>();
-        private HashMap<View, CellAndSpan> savedMap = new HashMap<View, CellAndSpan>();
-        ArrayList<View> sortedViews = new ArrayList<View>();
+        View[] views = new View[0];
+        int[] x = new int[0];
+        int[] y = new int[0];
+        int[] spanX = new int[0];
+        int[] spanY = new int[0];
+        boolean[] canReorder = new boolean[0];
+        private int[] savedX = new int[0];
+        private int[] savedY = new int[0];
+        int count;
+        // Items in the order the last push considered them.  Every attempt of a solve appends
+        // the children again, as the lists of views it replaces did.
+        int[] sortedItems = new int[0];
+        int sortedCount;
         boolean isSolution = false;
         int dragViewX, dragViewY, dragViewSpanX, dragViewSpanY;
 
-        void save() {
-            // Copy current state into savedMap
-            for (View v: map.keySet()) {
-                map.get(v).copy(savedMap.get(v));
+        void clear() {
+            Arrays.fill(views, null);
+            count = 0;
+            sortedCount = 0;
+            isSolution = false;
+            // A failed solve leaves these alone, so they must not carry over from the last drag
+            dragViewX = 0;
+            dragViewY = 0;
+            dragViewSpanX = 0;
+            dragViewSpanY = 0;
+        }
+
+        void ensureCapacity(int size) {
+            if (views.length < size) {
+                views = Arrays.copyOf(views, size);
+                x = Arrays.copyOf(x, size);
+                y = Arrays.copyOf(y, size);
+                spanX = Arrays.copyOf(spanX, size);
+                spanY = Arrays.copyOf(spanY, size);
+                canReorder = Arrays.copyOf(canReorder, size);
+                savedX = new int[size];
+                savedY = new int[size];
+            }
+        }
+
+        void set(int i, View v, int cellX, int cellY, int cellSpanX, int cellSpanY,
+                boolean reorder) {
+            views[i] = v;
+            x[i] = cellX;
+            y[i] = cellY;
+            spanX[i] = cellSpanX;
+            spanY[i] = cellSpanY;
+            canReorder[i] = reorder;
+            if (sortedCount == sortedItems.length) {
+                sortedItems = Arrays.copyOf(sortedItems, Math.max(16, sortedCount * 2));
+            }
+            sortedItems[sortedCount++] = i;
+        }
+
+        int indexOf(View v) {
+            if (v == null) return -1;
+            for (int i = 0; i < count; i++) {
+                if (views[i] == v) return i;
             }
+            return -1;
         }
 
-        void restore() {
-            // Restore current state from savedMap
-            for (View v: savedMap.keySet()) {
-                savedMap.get(v).copy(map.get(v));
-            }
+        boolean isItem(int i, View v) {
+            return i < count && views[i] == v;
         }
 
-        void add(View v, CellAndSpan cs) {
-            map.put(v, cs);
-            savedMap.put(v, new CellAndSpan());
-            sortedViews.add(v);
+        void save() {
+            // Copy current state into the saved positions
+            System.arraycopy(x, 0, savedX, 0, count);
+            System.arraycopy(y, 0, savedY, 0, count);
+        }
+
+        void restore() {
+            // Restore current state from the saved positions
+            System.arraycopy(savedX, 0, x, 0, count);
+            System.arraycopy(savedY, 0, y, 0, count);
         }
 
         int area() {
@@ -2799,31 +2884,138 @@ public class CellLayout extends ViewGroup {
         }
     }
 
-    private class CellAndSpan {
-        int x, y;
-        int spanX, spanY;
-
-        public CellAndSpan() {
-        }
-
-        public void copy(CellAndSpan copy) {
-            copy.x = x;
-            copy.y = y;
-            copy.spanX = spanX;
-            copy.spanY = spanY;
-        }
+    /**
+     * Outcomes of the first rearrangement attempt of a solve, kept per target cell, span and
+     * direction for as long as the committed placement of the page stays the same, which in
+     * practice is the length of a drag.  Drag-over ticks and reorder alarms that land on the
+     * same cell again replay the outcome instead of searching.  A replay restores everything
+     * the search leaves behind, so the rest of the solve goes on exactly as before.
+     */
+    private class ReorderSolutionCache {
+        private static final int MAX_ENTRIES = 64;
+
+        private final class Entry {
+            boolean success;
+            int[] x;
+            int[] y;
+            int[] sortedItems;
+            int sortedCount;
+            int directionX;
+            int directionY;
+            GridOccupancy tmpOccupied;
+        }
+
+        private final SparseArray<Entry> mEntries = new SparseArray<Entry>();
+
+        // The committed placement the entries were computed for
+        private View mDragView;
+        private View[] mViews = new View[0];
+        private int[] mState = new int[0];
+        private int mCount = -1;
+        private GridOccupancy mOccupiedState;
+
+        int hits;
+        int misses;
+
+        boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY, int[] direction,
+                View dragView, ItemConfiguration solution) {
+            final int key = key(cellX, cellY, spanX, spanY, direction);
+            if (key < 0) {
+                return CellLayout.this.rearrangementExists(cellX, cellY, spanX, spanY, direction,
+                        dragView, solution);
+            }
+            validate(solution, dragView);
+
+            Entry e = mEntries.get(key);
+            if (e != null) {
+                hits++;
+                System.arraycopy(e.x, 0, solution.x, 0, solution.count);
+                System.arraycopy(e.y, 0, solution.y, 0, solution.count);
+                System.arraycopy(e.sortedItems, 0, solution.sortedItems, 0, e.sortedCount);
+                solution.sortedCount = e.sortedCount;
+                direction[0] = e.directionX;
+                direction[1] = e.directionY;
+                e.tmpOccupied.copyTo(mTmpOccupied);
+                return e.success;
+            }
+
+            misses++;
+            final boolean success = CellLayout.this.rearrangementExists(cellX, cellY, spanX,
+                    spanY, direction, dragView, solution);
+            if (mEntries.size() >= MAX_ENTRIES) {
+                mEntries.clear();
+            }
+            e = new Entry();
+            e.success = success;
+            e.x = Arrays.copyOf(solution.x, solution.count);
+            e.y = Arrays.copyOf(solution.y, solution.count);
+            e.sortedItems = Arrays.copyOf(solution.sortedItems, solution.sortedCount);
+            e.sortedCount = solution.sortedCount;
+            e.directionX = direction[0];
+            e.directionY = direction[1];
+            e.tmpOccupied = new GridOccupancy(mCountX, mCountY);
+            mTmpOccupied.copyTo(e.tmpOccupied);
+            mEntries.put(key, e);
+            return success;
+        }
+
+        void clear() {
+            mEntries.clear();
+            mDragView = null;
+            Arrays.fill(mViews, null);
+            mCount = -1;
+        }
+
+        /** Drops the entries if the committed placement is not the one they were made for. */
+        private void validate(ItemConfiguration committed, View dragView) {
+            final int count = committed.count;
+            boolean valid = dragView == mDragView && count == mCount
+                    && mOccupiedState != null && mOccupiedState.hasSameCells(mOccupied);
+            for (int i = 0; valid && i < count; i++) {
+                final int s = i * 5;
+                valid = mViews[i] == committed.views[i]
+                        && mState[s] == committed.x[i] && mState[s + 1] == committed.y[i]
+                        && mState[s + 2] == committed.spanX[i]
+                        && mState[s + 3] == committed.spanY[i]
+                        && mState[s + 4] == (committed.canReorder[i] ? 1 : 0);
+            }
+            if (valid) {
+                return;
+            }
 
-        public CellAndSpan(int x, int y, int spanX, int spanY) {
-            this.x = x;
-            this.y = y;
-            this.spanX = spanX;
-            this.spanY = spanY;
+            mEntries.clear();
+            mDragView = dragView;
+            mCount = count;
+            if (mViews.length < count) {
+                mViews = new View[count];
+                mState = new int[count * 5];
+            }
+            Arrays.fill(mViews, null);
+            for (int i = 0; i < count; i++) {
+                final int s = i * 5;
+                mViews[i] = committed.views[i];
+                mState[s] = committed.x[i];
+                mState[s + 1] = committed.y[i];
+                mState[s + 2] = committed.spanX[i];
+                mState[s + 3] = committed.spanY[i];
+                mState[s + 4] = committed.canReorder[i] ? 1 : 0;
+            }
+            if (mOccupiedState == null || mOccupiedState.countX != mCountX
+                    || mOccupiedState.countY != mCountY) {
+                mOccupiedState = new GridOccupancy(mCountX, mCountY);
+            }
+            mOccupied.copyTo(mOccupiedState);
         }
 
-        public String toString() {
-            return "(" + x + ", " + y + ": " + spanX + ", " + spanY + ")";
+        private int key(int cellX, int cellY, int spanX, int spanY, int[] direction) {
+            if (cellX < 0 || cellY < 0 || cellX > 63 || cellY > 63 || spanX < 0 || spanY < 0
+                    || spanX > 63 || spanY > 63 || direction[0] < -1 || direction[0] > 1
+                    || direction[1] < -1 || direction[1] > 1) {
+                return -1;
+            }
+            return cellX | cellY << 6 | spanX << 12 | spanY << 18
+                    | (direction[0] + 1) << 24 | (direction[1] + 1) << 26;
         }
-
     }
 
     /**
@@ -2941,7 +3133,7 @@ public class CellLayout extends ViewGroup {
      * The superset of the above two methods
      */
     boolean findCellForSpanThatIntersectsIgnoring(int[] cellXY, int spanX, int spanY,
-            int intersectX, int intersectY, View ignoreView, boolean occupied[][]) {
+            int intersectX, int intersectY, View ignoreView, GridOccupancy occupied) {
         // mark space take by ignoreView as available (method checks if ignoreView is null)
         markCellsAsUnoccupiedForView(ignoreView, occupied);
 
@@ -2965,17 +3157,13 @@ public class CellLayout extends ViewGroup {
             }
 
             for (int y = startY; y < endY && !foundCell; y++) {
-                inner:
                 for (int x = startX; x < endX; x++) {
-                    for (int i = 0; i < spanX; i++) {
-                        for (int j = 0; j < spanY; j++) {
-                            if (occupied[x + i][y + j]) {
-                                // small optimization: we can skip to after the column we just found
-                                // an occupied cell
-                                x += i;
-                                continue inner;
-                            }
-                        }
+                    final int occupiedColumn = occupied.firstOccupiedColumn(x, y, spanX, spanY);
+                    if (occupiedColumn >= 0) {
+                        // small optimization: we can skip to after the column we just found
+                        // an occupied cell
+                        x += occupiedColumn;
+                        continue;
                     }
                     if (cellXY != null) {
                         cellXY[0] = x;
@@ -3037,6 +3225,12 @@ public class CellLayout extends ViewGroup {
         mDragOutlineCurrent = (mDragOutlineCurrent + 1) % mDragOutlineAnims.length;
         revertTempState();
         setIsDragOverlapping(false);
+
+        if (LauncherLog.DEBUG_DRAG) {
+            LauncherLog.d(TAG, "onDragExit: reorder cache hits = " + mReorderCache.hits
+                    + ", misses = " + mReorderCache.misses);
+        }
+        mReorderCache.clear();
     }
 
     /**
@@ -3157,7 +3351,16 @@ public class CellLayout extends ViewGroup {
      */
     public boolean getVacantCell(int[] vacant, int spanX, int spanY) {
 
-        return findVacantCell(vacant, spanX, spanY, mCountX, mCountY, mOccupied);
+        for (int y = 0; y < mCountY; y++) {
+            for (int x = 0; x < mCountX; x++) {
+                if (mOccupied.canFit(x, y, spanX, spanY)) {
+                    vacant[0] = x;
+                    vacant[1] = y;
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     static boolean findVacantCell(int[] vacant, int spanX, int spanY,
@@ -3185,11 +3388,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     }
 
     private void clearOccupiedCells() {
-        for (int x = 0; x < mCountX; x++) {
-            for (int y = 0; y < mCountY; y++) {
-                mOccupied[x][y] = false;
-            }
-        }
+        mOccupied.clear();
     }
 
     public void onMove(View view, int newCellX, int newCellY, int newSpanX, int newSpanY) {
@@ -3200,7 +3399,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     public void markCellsAsOccupiedForView(View view) {
         markCellsAsOccupiedForView(view, mOccupied);
     }
-    public void markCellsAsOccupiedForView(View view, boolean[][] occupied) {
+    public void markCellsAsOccupiedForView(View view, GridOccupancy occupied) {
         if (view == null || view.getParent() != mShortcutsAndWidgets) return;
         LayoutParams lp = (LayoutParams) view.getLayoutParams();
         markCellsForView(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, occupied, true);
@@ -3209,20 +3408,15 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     public void markCellsAsUnoccupiedForView(View view) {
         markCellsAsUnoccupiedForView(view, mOccupied);
     }
-    public void markCellsAsUnoccupiedForView(View view, boolean occupied[][]) {
+    public void markCellsAsUnoccupiedForView(View view, GridOccupancy occupied) {
         if (view == null || view.getParent() != mShortcutsAndWidgets) return;
         LayoutParams lp = (LayoutParams) view.getLayoutParams();
         markCellsForView(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, occupied, false);
     }
 
-    private void markCellsForView(int cellX, int cellY, int spanX, int spanY, boolean[][] occupied,
-            boolean value) {
-        if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                occupied[x][y] = value;
-            }
-        }
+    private void markCellsForView(int cellX, int cellY, int spanX, int spanY,
+            GridOccupancy occupied, boolean value) {
+        occupied.markCells(cellX, cellY, spanX, spanY, value);
     }
 
     public int getDesiredWidth() {
@@ -3237,7 +3431,7 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
 
     public boolean isOccupied(int x, int y) {
         if (x < mCountX && y < mCountY) {
-            return mOccupied[x][y];
+            return mOccupied.get(x, y);
         } else {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
         }
@@ -20,42 +20,82 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.os.MessageQueue;
-import android.util.Pair;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.view.Choreographer;
 
 /**
  * Queue of things to run on a looper thread.  Items posted with {@link #post} will not
  * be actually enqued on the handler until after the last one has run, to keep from
  * starving the thread.
  *
+ * Each message runs queued items until the frame budget is used up, then waits for the next
+ * frame so input and drawing are not held up by a long bind.  Items are kept in a ring
+ * buffer, and every type has a generation so that all items of a type can be cancelled
+ * without walking the queue; stale items are simply skipped when they reach the head.
+ *
  * This class is fifo.
  */
 public class DeferredHandler {
     private static final String TAG = "DeferredHandler";
-    private LinkedList<Pair<Runnable, Integer>> mQueue = new LinkedList<Pair<Runnable, Integer>>();
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long DEFAULT_FRAME_BUDGET = 8;
+
+    private static final int RUN_DONE = 0;
+    private static final int RUN_NOTHING = 1;
+    private static final int RUN_OVER_BUDGET = 2;
+
+    /**
+     * Runnables that know roughly how long they take and how much of a frame they may use.
+     * A batch stops before one of these would run over its budget, instead of checking the
+     * handler's own budget afterwards.
+     */
+    interface FrameBudgetedRunnable extends Runnable {
+        long getEstimatedCost();
+        long getFrameBudget();
+    }
+
+    private static class TypeStats {
+        int generation;
+        int pending;
+        int posted;
+        int run;
+        int cancelled;
+        long runTime;
+    }
+
+    private final Object mLock = new Object();
+    // Ring buffer of queued items, guarded by mLock
+    private Runnable[] mRunnables = new Runnable[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private int[] mGenerations = new int[INITIAL_CAPACITY];
+    private int mHead;
+    private int mSize;
+    private final SparseArray<TypeStats> mTypeStats = new SparseArray<TypeStats>();
+
     private MessageQueue mMessageQueue = Looper.myQueue();
     private Impl mHandler = new Impl();
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private long mFrameBudget = DEFAULT_FRAME_BUDGET;
+    // Set while a batch that ran out of budget waits for the next frame, guarded by mLock
+    private boolean mFramePending;
+
+    // Dispatch stats, only touched on the looper thread
+    private int mBatchCount;
+    private int mMaxBatchSize;
+    private long mMaxBatchTime;
 
     private class Impl extends Handler implements MessageQueue.IdleHandler {
         public void handleMessage(Message msg) {
-            Pair<Runnable, Integer> p;
-            Runnable r;
-            synchronized (mQueue) {
-                if (mQueue.size() == 0) {
-                    return;
-                }
-                p = mQueue.removeFirst();
-                r = p.first;
-            }
-            r.run();
-            synchronized (mQueue) {
-                scheduleNextLocked();
-            }
+            runBatch();
         }
 
         public boolean queueIdle() {
-            handleMessage(null);
+            runNext(true, 0, 0);
+            synchronized (mLock) {
+                scheduleNextLocked();
+            }
             return false;
         }
     }
@@ -75,14 +115,31 @@ public class DeferredHandler {
     public DeferredHandler() {
     }
 
+    /**
+     * Sets how long, in milliseconds, a single message may keep running queued items.
+     */
+    public void setFrameBudget(long budget) {
+        mFrameBudget = Math.max(1, budget);
+    }
+
     /** Schedule runnable to run after everything that's on the queue right now. */
     public void post(Runnable runnable) {
         post(runnable, 0);
     }
     public void post(Runnable runnable, int type) {
-        synchronized (mQueue) {
-            mQueue.add(new Pair<Runnable, Integer>(runnable, type));
-            if (mQueue.size() == 1) {
+        synchronized (mLock) {
+            if (mSize == mRunnables.length) {
+                growLocked();
+            }
+            final TypeStats stats = getTypeStatsLocked(type);
+            final int index = (mHead + mSize) % mRunnables.length;
+            mRunnables[index] = runnable;
+            mTypes[index] = type;
+            mGenerations[index] = stats.generation;
+            mSize++;
+            stats.pending++;
+            stats.posted++;
+            if (mSize == 1) {
                 scheduleNextLocked();
             }
         }
@@ -97,50 +154,224 @@ public class DeferredHandler {
     }
 
     public void cancelRunnable(Runnable runnable) {
-        synchronized (mQueue) {
-            while (mQueue.remove(runnable)) { }
+        synchronized (mLock) {
+            final int capacity = mRunnables.length;
+            for (int i = 0; i < mSize; i++) {
+                final int index = (mHead + i) % capacity;
+                if (mRunnables[index] == runnable && isLiveLocked(index)) {
+                    mRunnables[index] = null;
+                    final TypeStats stats = mTypeStats.get(mTypes[index]);
+                    stats.pending--;
+                    stats.cancelled++;
+                }
+            }
         }
     }
     public void cancelAllRunnablesOfType(int type) {
-        synchronized (mQueue) {
-            ListIterator<Pair<Runnable, Integer>> iter = mQueue.listIterator();
-            Pair<Runnable, Integer> p;
-            while (iter.hasNext()) {
-                p = iter.next();
-                if (p.second == type) {
-                    iter.remove();
-                }
+        synchronized (mLock) {
+            final TypeStats stats = mTypeStats.get(type);
+            if (stats == null || stats.pending == 0) {
+                return;
             }
+            // Everything posted before now is stale and gets dropped when it reaches the head
+            stats.generation++;
+            stats.cancelled += stats.pending;
+            stats.pending = 0;
         }
     }
 
     public void cancel() {
-        synchronized (mQueue) {
-            mQueue.clear();
+        synchronized (mLock) {
+            for (int i = mTypeStats.size() - 1; i >= 0; i--) {
+                final TypeStats stats = mTypeStats.valueAt(i);
+                stats.generation++;
+                stats.cancelled += stats.pending;
+                stats.pending = 0;
+            }
+            clearLocked();
         }
     }
 
     /** Runs all queued Runnables from the calling thread. */
     public void flush() {
-        LinkedList<Pair<Runnable, Integer>> queue = new LinkedList<Pair<Runnable, Integer>>();
-        synchronized (mQueue) {
-            queue.addAll(mQueue);
-            mQueue.clear();
+        final Runnable[] queue;
+        int count = 0;
+        synchronized (mLock) {
+            queue = new Runnable[mSize];
+            while (mSize > 0) {
+                final Runnable r = pollLocked();
+                if (r != null) {
+                    queue[count++] = r;
+                }
+            }
         }
-        for (Pair<Runnable, Integer> p : queue) {
-            p.first.run();
+        for (int i = 0; i < count; i++) {
+            queue[i].run();
         }
     }
 
+    void dumpState() {
+        synchronized (mLock) {
+            LauncherLog.d(TAG, "queued=" + mSize + " capacity=" + mRunnables.length
+                    + " budget=" + mFrameBudget + "ms batches=" + mBatchCount
+                    + " maxBatchSize=" + mMaxBatchSize + " maxBatchTime=" + mMaxBatchTime + "ms");
+            for (int i = 0; i < mTypeStats.size(); i++) {
+                final TypeStats stats = mTypeStats.valueAt(i);
+                LauncherLog.d(TAG, "type " + mTypeStats.keyAt(i) + ": pending=" + stats.pending
+                        + " posted=" + stats.posted + " run=" + stats.run
+                        + " cancelled=" + stats.cancelled + " time=" + stats.runTime + "ms");
+            }
+        }
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            // Frame callbacks run before the frame's layout and draw, so run the batch from a
+            // message instead, which is handled once the frame has been drawn
+            synchronized (mLock) {
+                mFramePending = false;
+                if (!mHandler.hasMessages(1)) {
+                    mHandler.sendEmptyMessage(1);
+                }
+            }
+        }
+    };
+
+    private void runBatch() {
+        final long start = SystemClock.uptimeMillis();
+        int count = 0;
+        int result;
+        while ((result = runNext(false, SystemClock.uptimeMillis() - start, count)) == RUN_DONE) {
+            count++;
+        }
+        onBatchFinished(count, SystemClock.uptimeMillis() - start, result == RUN_OVER_BUDGET);
+    }
+
+    /**
+     * Runs the item at the head of the queue if it fits in what is left of the batch.  Idle
+     * items are only run from the idle handler.
+     */
+    private int runNext(boolean idle, long elapsed, int count) {
+        final Runnable r;
+        final int type;
+        synchronized (mLock) {
+            skipStaleLocked();
+            if (mSize == 0 || (mRunnables[mHead] instanceof IdleRunnable) != idle) {
+                // An idle item at the head waits for the idle handler that was added for it
+                return RUN_NOTHING;
+            }
+            // Always make progress, even if the first item alone is over budget
+            if (!idle && count > 0) {
+                final Runnable head = mRunnables[mHead];
+                if (head instanceof FrameBudgetedRunnable) {
+                    final FrameBudgetedRunnable budgeted = (FrameBudgetedRunnable) head;
+                    if (elapsed + budgeted.getEstimatedCost() > budgeted.getFrameBudget()) {
+                        return RUN_OVER_BUDGET;
+                    }
+                } else if (elapsed >= mFrameBudget) {
+                    return RUN_OVER_BUDGET;
+                }
+            }
+            type = mTypes[mHead];
+            r = pollLocked();
+        }
+        final long start = SystemClock.uptimeMillis();
+        r.run();
+        final long time = SystemClock.uptimeMillis() - start;
+        synchronized (mLock) {
+            final TypeStats stats = getTypeStatsLocked(type);
+            stats.run++;
+            stats.runTime += time;
+        }
+        return RUN_DONE;
+    }
+
+    private void onBatchFinished(int count, long elapsed, boolean overBudget) {
+        mBatchCount++;
+        mMaxBatchSize = Math.max(mMaxBatchSize, count);
+        mMaxBatchTime = Math.max(mMaxBatchTime, elapsed);
+        synchronized (mLock) {
+            if (overBudget) {
+                // Let this frame be drawn and carry on with the next one
+                if (!mFramePending) {
+                    mFramePending = true;
+                    mChoreographer.postFrameCallback(mFrameCallback);
+                }
+            } else {
+                scheduleNextLocked();
+            }
+        }
+    }
+
+    private Runnable pollLocked() {
+        final int index = mHead;
+        final Runnable r = mRunnables[index];
+        final boolean live = isLiveLocked(index);
+        mRunnables[index] = null;
+        mHead = (mHead + 1) % mRunnables.length;
+        mSize--;
+        if (live) {
+            mTypeStats.get(mTypes[index]).pending--;
+            return r;
+        }
+        return null;
+    }
+
+    private void skipStaleLocked() {
+        while (mSize > 0 && !isLiveLocked(mHead)) {
+            pollLocked();
+        }
+    }
+
+    private boolean isLiveLocked(int index) {
+        return mRunnables[index] != null
+                && mGenerations[index] == mTypeStats.get(mTypes[index]).generation;
+    }
+
+    private TypeStats getTypeStatsLocked(int type) {
+        TypeStats stats = mTypeStats.get(type);
+        if (stats == null) {
+            stats = new TypeStats();
+            mTypeStats.put(type, stats);
+        }
+        return stats;
+    }
+
+    private void growLocked() {
+        final int capacity = mRunnables.length;
+        final Runnable[] runnables = new Runnable[capacity * 2];
+        final int[] types = new int[capacity * 2];
+        final int[] generations = new int[capacity * 2];
+        for (int i = 0; i < mSize; i++) {
+            final int index = (mHead + i) % capacity;
+            runnables[i] = mRunnables[index];
+            types[i] = mTypes[index];
+            generations[i] = mGenerations[index];
+        }
+        mRunnables = runnables;
+        mTypes = types;
+        mGenerations = generations;
+        mHead = 0;
+    }
+
+    private void clearLocked() {
+        while (mSize > 0) {
+            mRunnables[mHead] = null;
+            mHead = (mHead + 1) % mRunnables.length;
+            mSize--;
+        }
+        mHead = 0;
+    }
+
     void scheduleNextLocked() {
-        if (mQueue.size() > 0) {
-            Pair<Runnable, Integer> p = mQueue.getFirst();
-            Runnable peek = p.first;
+        skipStaleLocked();
+        if (mSize > 0) {
+            Runnable peek = mRunnables[mHead];
             if (peek instanceof IdleRunnable) {
                 mMessageQueue.addIdleHandler(mHandler);
                 /// M: There is only an idle runnable in message queue,
                 /// we need to post a log runnable to trigger message.
-                if (mQueue.size() == 1) {
+                if (mSize == 1) {
                     mHandler.post(new Runnable() {
                         @Override
                         public void run() {
@@ -149,10 +380,9 @@ public class DeferredHandler {
                         }
                     });
                 }
-            } else {
+            } else if (!mFramePending && !mHandler.hasMessages(1)) {
                 mHandler.sendEmptyMessage(1);
             }
         }
     }
 }
-
@@ -24,13 +24,16 @@ import android.graphics.PointF;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.InputMethodManager;
 
 
@@ -63,12 +66,16 @@ public class DragController {
 
     private static final float MAX_FLING_DEGREES = 35f;
 
+    // How long after a drag starts or the state changes the drop target regions are recomputed
+    // on every lookup, long enough for the transition animations to finish moving and scaling
+    // the targets, e.g. the drop target bar sliding in when a drag starts
+    private static final long DROP_TARGET_SETTLE_TIME = 500;
+
     private Launcher mLauncher;
     private Handler mHandler;
     private final Vibrator mVibrator;
 
     // temporaries to avoid gc thrash
-    private Rect mRectTemp = new Rect();
     private final int[] mCoordinatesTemp = new int[2];
 
     /** Whether or not we're dragging. */
@@ -89,6 +96,11 @@ public class DragController {
 
     /** Who can receive drop events */
     private ArrayList<DropTarget> mDropTargets = new ArrayList<DropTarget>();
+    // Hit regions of mDropTargets, rebuilt only after layout, scrolling or a state change
+    private final DropTargetIndex mDropTargetIndex = new DropTargetIndex();
+    private boolean mDropTargetIndexValid;
+    private long mDropTargetSettleTime;
+    private ViewTreeObserver mDragLayerObserver;
     private ArrayList<DragListener> mListeners = new ArrayList<DragListener>();
     private DropTarget mFlingToDeleteDropTarget;
 
@@ -118,6 +130,49 @@ public class DragController {
     protected int mFlingToDeleteThresholdVelocity;
     private VelocityTracker mVelocityTracker;
 
+    // Touch moves only move the DragView right away, the drop targets see the latest position
+    // once per frame
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+    private boolean mMoveFramePending;
+    private int mPendingMoveX;
+    private int mPendingMoveY;
+
+    private final Choreographer.FrameCallback mMoveFrameCallback =
+            new Choreographer.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            mMoveFramePending = false;
+            if (mDragging) {
+                handleMoveEvent(mPendingMoveX, mPendingMoveY);
+            }
+        }
+    };
+
+    // Move event stats of the current or last drag
+    private int mMoveEventCount;
+    private int mCoalescedMoveCount;
+    private int mEvaluationCount;
+    private long mEvaluationTotalNanos;
+    private long mEvaluationMaxNanos;
+    private long mLookupTotalNanos;
+    private long mLookupMaxNanos;
+    private long mEventAgeTotal;
+    private long mEventAgeMax;
+    private int mIndexBuildCount;
+
+    private final ViewTreeObserver.OnGlobalLayoutListener mLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+        public void onGlobalLayout() {
+            mDropTargetIndexValid = false;
+        }
+    };
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+        public void onScrollChanged() {
+            mDropTargetIndexValid = false;
+        }
+    };
+
     /**
      * Interface to receive notifications when a drag starts or stops
      */
@@ -235,6 +290,11 @@ public class DragController {
         final int dragRegionTop = dragRegion == null ? 0 : dragRegion.top;
 
         mDragging = true;
+        resetMoveStats();
+        startObservingDragLayer();
+        // The listeners have just started animating drop targets in, which is done with
+        // translations that don't cause a layout
+        invalidateDropTargetRegions();
 
         mDragObject = new DropTarget.DragObject();
 
@@ -368,6 +428,11 @@ public class DragController {
         if (mDragging) {
             mDragging = false;
             clearScrollRunnable();
+            cancelPendingMoveEvent();
+            stopObservingDragLayer();
+            if (LauncherLog.DEBUG_DRAG) {
+                dumpState();
+            }
             boolean isDeferred = false;
             if (mDragObject.dragView != null) {
                 isDeferred = mDragObject.deferDragViewCleanupPostAnimation;
@@ -461,6 +526,7 @@ public class DragController {
             case MotionEvent.ACTION_UP:
                 mLastTouchUpTime = System.currentTimeMillis();
                 if (mDragging) {
+                    flushPendingMoveEvent();
                     PointF vec = isFlingingToDelete(mDragObject.dragSource);
                     if (vec != null) {
                         dropOnFlingToDeleteTarget(dragLayerX, dragLayerY, vec);
@@ -504,6 +570,15 @@ public class DragController {
     }
 
     private void handleMoveEvent(int x, int y) {
+        final long start = System.nanoTime();
+        dispatchMoveEvent(x, y);
+        final long time = System.nanoTime() - start;
+        mEvaluationCount++;
+        mEvaluationTotalNanos += time;
+        mEvaluationMaxNanos = Math.max(mEvaluationMaxNanos, time);
+    }
+
+    private void dispatchMoveEvent(int x, int y) {
         mDragObject.dragView.move(x, y);
 
         // Drop on someone?
@@ -574,6 +649,40 @@ public class DragController {
         }
     }
 
+    /**
+     * Moves the DragView to the touch point and schedules the drop targets to be updated on
+     * the next frame.  Moves that arrive before then replace the pending one, so onDragOver
+     * and the reorder searches behind it run at most once per frame however fast the panel
+     * reports touches.
+     */
+    private void postMoveEvent(int x, int y) {
+        mMoveEventCount++;
+        mDragObject.dragView.move(x, y);
+        mPendingMoveX = x;
+        mPendingMoveY = y;
+        if (mMoveFramePending) {
+            mCoalescedMoveCount++;
+        } else {
+            mMoveFramePending = true;
+            mChoreographer.postFrameCallback(mMoveFrameCallback);
+        }
+    }
+
+    /** Updates the drop targets now if a move is still waiting for the next frame. */
+    private void flushPendingMoveEvent() {
+        if (mMoveFramePending) {
+            cancelPendingMoveEvent();
+            handleMoveEvent(mPendingMoveX, mPendingMoveY);
+        }
+    }
+
+    private void cancelPendingMoveEvent() {
+        if (mMoveFramePending) {
+            mMoveFramePending = false;
+            mChoreographer.removeFrameCallback(mMoveFrameCallback);
+        }
+    }
+
     /**
      * Call this from a drag source view.
      */
@@ -610,10 +719,15 @@ public class DragController {
             }
             break;
         case MotionEvent.ACTION_MOVE:
-            handleMoveEvent(dragLayerX, dragLayerY);
+            // How long the event waited before we got to handle it
+            final long age = SystemClock.uptimeMillis() - ev.getEventTime();
+            mEventAgeTotal += age;
+            mEventAgeMax = Math.max(mEventAgeMax, age);
+            postMoveEvent(dragLayerX, dragLayerY);
             break;
         case MotionEvent.ACTION_UP:
             // Ensure that we've processed a move event at the current pointer location.
+            cancelPendingMoveEvent();
             handleMoveEvent(dragLayerX, dragLayerY);
             mHandler.removeCallbacks(mScrollRunnable);
 
@@ -714,39 +828,92 @@ public class DragController {
     }
 
     private DropTarget findDropTarget(int x, int y, int[] dropCoordinates) {
-        final Rect r = mRectTemp;
-
-        final ArrayList<DropTarget> dropTargets = mDropTargets;
-        final int count = dropTargets.size();
-        for (int i = count - 1; i >= 0; i--) {
-            DropTarget target = dropTargets.get(i);
-            if (!target.isDropEnabled()) {
-                continue;
+        final long start = System.nanoTime();
+        final long now = SystemClock.uptimeMillis();
+        if (!mDropTargetIndexValid || now < mDropTargetSettleTime) {
+            // Hit rects are already in DragLayer coordinates in the index
+            mDropTargetIndex.build(mDropTargets);
+            mDropTargetIndexValid = true;
+            mIndexBuildCount++;
+        }
+
+        mDragObject.x = x;
+        mDragObject.y = y;
+        DropTarget target = mDropTargetIndex.find(x, y, dropCoordinates);
+        if (target != null) {
+            DropTarget delegate = target.getDropTargetDelegate(mDragObject);
+            if (delegate != null) {
+                target = delegate;
+                target.getLocationInDragLayer(dropCoordinates);
             }
 
-            target.getHitRect(r);
+            // Make dropCoordinates relative to the DropTarget
+            dropCoordinates[0] = x - dropCoordinates[0];
+            dropCoordinates[1] = y - dropCoordinates[1];
+        }
 
-            // Convert the hit rect to DragLayer coordinates
-            target.getLocationInDragLayer(dropCoordinates);
-            r.offset(dropCoordinates[0] - target.getLeft(), dropCoordinates[1] - target.getTop());
+        final long time = System.nanoTime() - start;
+        mLookupTotalNanos += time;
+        mLookupMaxNanos = Math.max(mLookupMaxNanos, time);
+        return target;
+    }
 
-            mDragObject.x = x;
-            mDragObject.y = y;
-            if (r.contains(x, y)) {
-                DropTarget delegate = target.getDropTargetDelegate(mDragObject);
-                if (delegate != null) {
-                    target = delegate;
-                    target.getLocationInDragLayer(dropCoordinates);
-                }
+    /**
+     * Recomputes the drop target regions on every lookup for a short while, called when the
+     * drop targets are about to move without a layout, e.g. when entering or leaving spring
+     * loaded mode or showing the preview screen.
+     */
+    void invalidateDropTargetRegions() {
+        mDropTargetIndexValid = false;
+        mDropTargetSettleTime = SystemClock.uptimeMillis() + DROP_TARGET_SETTLE_TIME;
+    }
 
-                // Make dropCoordinates relative to the DropTarget
-                dropCoordinates[0] = x - dropCoordinates[0];
-                dropCoordinates[1] = y - dropCoordinates[1];
+    private void startObservingDragLayer() {
+        mDropTargetIndexValid = false;
+        final ViewTreeObserver observer = mLauncher.getDragLayer().getViewTreeObserver();
+        if (observer != mDragLayerObserver) {
+            stopObservingDragLayer();
+            observer.addOnGlobalLayoutListener(mLayoutListener);
+            observer.addOnScrollChangedListener(mScrollChangedListener);
+            mDragLayerObserver = observer;
+        }
+    }
 
-                return target;
-            }
+    private void stopObservingDragLayer() {
+        if (mDragLayerObserver != null && mDragLayerObserver.isAlive()) {
+            mDragLayerObserver.removeGlobalOnLayoutListener(mLayoutListener);
+            mDragLayerObserver.removeOnScrollChangedListener(mScrollChangedListener);
         }
-        return null;
+        mDragLayerObserver = null;
+        // Don't keep the targets alive between drags
+        mDropTargetIndex.clear();
+        mDropTargetIndexValid = false;
+    }
+
+    private void resetMoveStats() {
+        mMoveEventCount = 0;
+        mCoalescedMoveCount = 0;
+        mEvaluationCount = 0;
+        mEvaluationTotalNanos = 0;
+        mEvaluationMaxNanos = 0;
+        mLookupTotalNanos = 0;
+        mLookupMaxNanos = 0;
+        mEventAgeTotal = 0;
+        mEventAgeMax = 0;
+        mIndexBuildCount = 0;
+    }
+
+    void dumpState() {
+        final int moves = Math.max(1, mMoveEventCount);
+        final int evaluations = Math.max(1, mEvaluationCount);
+        LauncherLog.d(TAG, "drag moves=" + mMoveEventCount + " coalesced=" + mCoalescedMoveCount
+                + " avgEventAge=" + mEventAgeTotal / moves + "ms maxEventAge=" + mEventAgeMax
+                + "ms evaluations=" + mEvaluationCount + " avgFrameCost="
+                + mEvaluationTotalNanos / evaluations / 1000 + "us maxFrameCost="
+                + mEvaluationMaxNanos / 1000 + "us avgLookup="
+                + mLookupTotalNanos / evaluations / 1000 + "us maxLookup="
+                + mLookupMaxNanos / 1000 + "us dropTargets=" + mDropTargets.size()
+                + " indexBuilds=" + mIndexBuildCount + " bands=" + mDropTargetIndex.bandCount());
     }
 
     public void setDragScoller(DragScroller scroller) {
@@ -776,6 +943,7 @@ public class DragController {
      */
     public void addDropTarget(DropTarget target) {
         mDropTargets.add(target);
+        invalidateDropTargetRegions();
     }
 
     /**
@@ -783,6 +951,7 @@ public class DragController {
      */
     public void removeDropTarget(DropTarget target) {
         mDropTargets.remove(target);
+        invalidateDropTargetRegions();
     }
 
     /**
@@ -790,6 +959,7 @@ public class DragController {
      */
     public void resetDropTarget() {
         mDropTargets.clear();
+        invalidateDropTargetRegions();
     }
 
     /**
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Hit regions of the drop targets in DragLayer coordinates.  The drag layer is cut into
+ * horizontal bands at every top and bottom edge of a region, and each band lists the targets
+ * covering it from the highest priority to the lowest, so a lookup is a binary search for
+ * the band followed by a scan of the few targets in it.  Nothing here walks the view
+ * hierarchy after {@link #build}.
+ */
+class DropTargetIndex {
+    private DropTarget[] mTargets = new DropTarget[0];
+    private int[] mLeft = new int[0];
+    private int[] mTop = new int[0];
+    private int[] mRight = new int[0];
+    private int[] mBottom = new int[0];
+    private int[] mOriginX = new int[0];
+    private int[] mOriginY = new int[0];
+    private int mCount;
+
+    // Band b covers [mBandEdges[b], mBandEdges[b + 1]), its targets are
+    // mBandTargets[mBandStart[b]] to mBandTargets[mBandStart[b + 1] - 1]
+    private int[] mBandEdges = new int[0];
+    private int mBandEdgeCount;
+    private int[] mBandStart = new int[0];
+    private int[] mBandTargets = new int[0];
+
+    private final Rect mTmpRect = new Rect();
+    private final int[] mTmpLocation = new int[2];
+
+    /**
+     * Computes the hit regions of the targets.  Later targets have priority over earlier
+     * ones, as they did in the list DragController walked backwards.
+     */
+    void build(ArrayList<DropTarget> targets) {
+        final int count = targets.size();
+        ensureCapacity(count);
+        mCount = 0;
+        // Highest priority first
+        for (int i = count - 1; i >= 0; i--) {
+            final DropTarget target = targets.get(i);
+            final Rect r = mTmpRect;
+            target.getHitRect(r);
+            target.getLocationInDragLayer(mTmpLocation);
+            r.offset(mTmpLocation[0] - target.getLeft(), mTmpLocation[1] - target.getTop());
+            if (r.isEmpty()) {
+                continue;
+            }
+            final int n = mCount++;
+            mTargets[n] = target;
+            mLeft[n] = r.left;
+            mTop[n] = r.top;
+            mRight[n] = r.right;
+            mBottom[n] = r.bottom;
+            mOriginX[n] = mTmpLocation[0];
+            mOriginY[n] = mTmpLocation[1];
+        }
+        for (int n = mCount; n < mTargets.length; n++) {
+            mTargets[n] = null;
+        }
+        buildBands();
+    }
+
+    void clear() {
+        Arrays.fill(mTargets, null);
+        mCount = 0;
+        mBandEdgeCount = 0;
+    }
+
+    /**
+     * Returns the enabled target with the highest priority whose region contains the point,
+     * and stores that target's origin in DragLayer coordinates in origin.
+     */
+    DropTarget find(int x, int y, int[] origin) {
+        final int band = findBand(y);
+        if (band < 0) {
+            return null;
+        }
+        for (int k = mBandStart[band]; k < mBandStart[band + 1]; k++) {
+            final int n = mBandTargets[k];
+            if (x >= mLeft[n] && x < mRight[n] && mTargets[n].isDropEnabled()) {
+                origin[0] = mOriginX[n];
+                origin[1] = mOriginY[n];
+                return mTargets[n];
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    int bandCount() {
+        return Math.max(0, mBandEdgeCount - 1);
+    }
+
+    private int findBand(int y) {
+        int lo = 0;
+        int hi = mBandEdgeCount - 1;
+        if (hi <= 0 || y < mBandEdges[0] || y >= mBandEdges[hi]) {
+            return -1;
+        }
+        // Find the last edge at or above y
+        while (lo < hi - 1) {
+            final int mid = (lo + hi) >>> 1;
+            if (mBandEdges[mid] <= y) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void buildBands() {
+        final int[] edges = mBandEdges;
+        int edgeCount = 0;
+        for (int n = 0; n < mCount; n++) {
+            edges[edgeCount++] = mTop[n];
+            edges[edgeCount++] = mBottom[n];
+        }
+        Arrays.sort(edges, 0, edgeCount);
+        int unique = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            if (unique == 0 || edges[unique - 1] != edges[i]) {
+                edges[unique++] = edges[i];
+            }
+        }
+        mBandEdgeCount = unique;
+
+        final int bands = Math.max(0, unique - 1);
+        if (mBandStart.length < bands + 1) {
+            mBandStart = new int[bands + 1];
+        }
+        int total = 0;
+        for (int b = 0; b < bands; b++) {
+            mBandStart[b] = total;
+            for (int n = 0; n < mCount; n++) {
+                if (mTop[n] <= edges[b] && mBottom[n] >= edges[b + 1]) {
+                    if (total == mBandTargets.length) {
+                        mBandTargets = Arrays.copyOf(mBandTargets, Math.max(16, total * 2));
+                    }
+                    mBandTargets[total++] = n;
+                }
+            }
+        }
+        mBandStart[bands] = total;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mTargets.length < count) {
+            mTargets = new DropTarget[count];
+            mLeft = new int[count];
+            mTop = new int[count];
+            mRight = new int[count];
+            mBottom = new int[count];
+            mOriginX = new int[count];
+            mOriginY = new int[count];
+            mBandEdges = new int[count * 2];
+        }
+    }
+}
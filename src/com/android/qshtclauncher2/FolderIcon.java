@@ -647,6 +647,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
     public void onItemsChanged() {
         invalidate();
         requestLayout();
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     public void onAdd(ShortcutInfo item) {
@@ -660,6 +661,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         updateFolderUnreadNum(componentName, item.unreadNum);
         invalidate();
         requestLayout();
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     public void onRemove(ShortcutInfo item) {
@@ -673,12 +675,14 @@ public class FolderIcon extends LinearLayout implements FolderListener {
         updateFolderUnreadNum(componentName, item.unreadNum);
         invalidate();
         requestLayout();
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     public void onTitleChanged(CharSequence title) {
         mFolderName.setText(title.toString());
         setContentDescription(String.format(getContext().getString(R.string.folder_name_format),
                 title));
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     @Override
@@ -745,6 +749,7 @@ public class FolderIcon extends LinearLayout implements FolderListener {
                 mUnread.setText(String.valueOf(unreadNum));
             }
         }
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     /**
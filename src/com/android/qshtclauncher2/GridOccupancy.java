@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.graphics.Rect;
+
+/**
+ * Occupied cells of a CellLayout grid, packed as one bit mask per row: bit x of row y is set
+ * if cell (x, y) is taken.  Testing whether a span fits is then one mask test per row of the
+ * span instead of one array lookup per cell.
+ */
+class GridOccupancy {
+    static final int MAX_COUNT_X = 64;
+
+    final int countX;
+    final int countY;
+    private final long[] mRows;
+
+    GridOccupancy(int countX, int countY) {
+        if (countX < 0 || countX > MAX_COUNT_X || countY < 0) {
+            throw new IllegalArgumentException("Unsupported grid size " + countX + "x" + countY);
+        }
+        this.countX = countX;
+        this.countY = countY;
+        mRows = new long[countY];
+    }
+
+    boolean get(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
+    }
+
+    void set(int x, int y, boolean value) {
+        if (value) {
+            mRows[y] |= 1L << x;
+        } else {
+            mRows[y] &= ~(1L << x);
+        }
+    }
+
+    /**
+     * Marks the cells of a span, clipped to the grid.  Spans starting at a negative cell are
+     * ignored.
+     */
+    void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
+        if (cellX < 0 || cellY < 0 || cellX >= countX || spanX <= 0) return;
+        final long mask = spanMask(Math.min(spanX, countX - cellX)) << cellX;
+        final int endY = Math.min(cellY + spanY, countY);
+        for (int y = cellY; y < endY; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
+            }
+        }
+    }
+
+    void markCells(Rect r, boolean value) {
+        markCells(r.left, r.top, r.width(), r.height(), value);
+    }
+
+    void clear() {
+        for (int y = 0; y < countY; y++) {
+            mRows[y] = 0;
+        }
+    }
+
+    /** Copies this grid into another one of the same size. */
+    void copyTo(GridOccupancy dest) {
+        System.arraycopy(mRows, 0, dest.mRows, 0, countY);
+    }
+
+    /** Returns true if the other grid has the same size and the same occupied cells. */
+    boolean hasSameCells(GridOccupancy other) {
+        if (other.countX != countX || other.countY != countY) {
+            return false;
+        }
+        for (int y = 0; y < countY; y++) {
+            if (mRows[y] != other.mRows[y]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset from x of the first occupied column in the span, or -1 if the whole
+     * span is vacant.  The span must lie inside the grid.
+     */
+    int firstOccupiedColumn(int x, int y, int spanX, int spanY) {
+        long taken = 0;
+        for (int j = 0; j < spanY; j++) {
+            taken |= mRows[y + j];
+        }
+        taken &= spanMask(spanX) << x;
+        return taken == 0 ? -1 : Long.numberOfTrailingZeros(taken) - x;
+    }
+
+    /** Returns true if no cell of the span is occupied.  The span must lie inside the grid. */
+    boolean isRegionVacant(int x, int y, int spanX, int spanY) {
+        return firstOccupiedColumn(x, y, spanX, spanY) < 0;
+    }
+
+    /**
+     * Like {@link #isRegionVacant(int, int, int, int)}, but only the cells that are also set
+     * in block, whose origin is placed at (x, y), need to be vacant.
+     */
+    boolean isRegionVacant(int x, int y, int spanX, int spanY, GridOccupancy block) {
+        final long mask = spanMask(spanX);
+        for (int j = 0; j < spanY; j++) {
+            if ((mRows[y + j] & ((block.mRows[j] & mask) << x)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the span fits inside the grid and none of its cells are occupied.
+     */
+    boolean canFit(int x, int y, int spanX, int spanY) {
+        return x >= 0 && y >= 0 && x + spanX <= countX && y + spanY <= countY
+                && isRegionVacant(x, y, spanX, spanY);
+    }
+
+    private static long spanMask(int span) {
+        return span >= MAX_COUNT_X ? -1L : (1L << span) - 1;
+    }
+}
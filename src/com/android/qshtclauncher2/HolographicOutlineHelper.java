@@ -22,12 +22,37 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class HolographicOutlineHelper {
     private final Paint mHolographicPaint = new Paint();
     private final Paint mBlurPaint = new Paint();
     private final Paint mErasePaint = new Paint();
 
+    private static final String TAG = "HolographicOutlineHelper";
+
+    // Outlines are only generated on the main thread, so the scratch alpha buffer and the
+    // outline cache below are shared by every helper. Large outlines get a buffer of their own.
+    private static final int MAX_ALPHA_BUFFER_SIZE = 256 * 256;
+    private static byte[] sAlphaBuffer;
+
+    // Finished outlines, keyed by a hash of the clipped alpha shape, the colors and the
+    // thickness, least recently used first
+    private static final long MAX_CACHE_BYTES = 2 * 1024 * 1024;
+    private static final LinkedHashMap<Long, Bitmap> sOutlineCache =
+            new LinkedHashMap<Long, Bitmap>(16, 0.75f, true);
+    private static long sCacheBytes;
+
+    private static int sCacheHits;
+    private static int sCacheMisses;
+    private static long sCacheHitTime;
+    private static long sCacheMissTime;
+
     public static final int MAX_OUTER_BLUR_RADIUS;
     public static final int MIN_OUTER_BLUR_RADIUS;
 
@@ -100,23 +125,47 @@ public class HolographicOutlineHelper {
     }
     void applyExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas, int color,
             int outlineColor, boolean clipAlpha, int thickness) {
+        final long start = SystemClock.uptimeMillis();
+        final int width = srcDst.getWidth();
+        final int height = srcDst.getHeight();
+
+        // Only the alpha channel matters from here on, so pull it into an ALPHA_8 bitmap
+        // (same as srcDst.extractAlpha(), but pooled)
+        final BitmapPool pool = LauncherApplication.getBitmapPool();
+        Bitmap glowShape = pool.get(width, height, Bitmap.Config.ALPHA_8);
+        srcDstCanvas.setBitmap(glowShape);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, null);
+
+        final int size = glowShape.getRowBytes() * height;
+        final byte[] alpha = getAlphaBuffer(size);
+        final ByteBuffer buffer = ByteBuffer.wrap(alpha, 0, size);
+        glowShape.copyPixelsToBuffer(buffer);
 
         // We start by removing most of the alpha channel so as to ignore shadows, and
         // other types of partial transparency when defining the shape of the object
         if (clipAlpha) {
-            int[] srcBuffer = new int[srcDst.getWidth() * srcDst.getHeight()];
-            srcDst.getPixels(srcBuffer,
-                    0, srcDst.getWidth(), 0, 0, srcDst.getWidth(), srcDst.getHeight());
-            for (int i = 0; i < srcBuffer.length; i++) {
-                final int alpha = srcBuffer[i] >>> 24;
-                if (alpha < 188) {
-                    srcBuffer[i] = 0;
+            for (int i = 0; i < size; i++) {
+                if ((alpha[i] & 0xff) < 188) {
+                    alpha[i] = 0;
                 }
             }
-            srcDst.setPixels(srcBuffer,
-                    0, srcDst.getWidth(), 0, 0, srcDst.getWidth(), srcDst.getHeight());
+            buffer.rewind();
+            glowShape.copyPixelsFromBuffer(buffer);
+        }
+
+        // The same shape in the same colors always produces the same outline
+        final long key = hashShape(alpha, size, width, height, color, outlineColor, thickness);
+        final Bitmap cached = sOutlineCache.get(key);
+        if (cached != null) {
+            srcDstCanvas.setBitmap(srcDst);
+            srcDstCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+            srcDstCanvas.drawBitmap(cached, 0, 0, null);
+            srcDstCanvas.setBitmap(null);
+            pool.put(glowShape);
+            sCacheHits++;
+            sCacheHitTime += SystemClock.uptimeMillis() - start;
+            return;
         }
-        Bitmap glowShape = srcDst.extractAlpha();
 
         // calculate the outer blur first
         BlurMaskFilter outerBlurMaskFilter;
@@ -194,7 +243,82 @@ public class HolographicOutlineHelper {
         brightOutline.recycle();
         thickOuterBlur.recycle();
         thickInnerBlur.recycle();
-        glowShape.recycle();
+        pool.put(glowShape);
+
+        cacheOutline(key, srcDst, srcDstCanvas);
+        sCacheMisses++;
+        sCacheMissTime += SystemClock.uptimeMillis() - start;
+    }
+
+    private static byte[] getAlphaBuffer(int size) {
+        if (size > MAX_ALPHA_BUFFER_SIZE) {
+            return new byte[size];
+        }
+        if (sAlphaBuffer == null || sAlphaBuffer.length < size) {
+            sAlphaBuffer = new byte[MAX_ALPHA_BUFFER_SIZE];
+        }
+        return sAlphaBuffer;
+    }
+
+    private static long hashShape(byte[] alpha, int size, int width, int height, int color,
+            int outlineColor, int thickness) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        hash = (hash ^ color) * 0x100000001b3L;
+        hash = (hash ^ outlineColor) * 0x100000001b3L;
+        hash = (hash ^ thickness) * 0x100000001b3L;
+        for (int i = 0; i < size; i++) {
+            hash = (hash ^ alpha[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void cacheOutline(long key, Bitmap outline, Canvas canvas) {
+        final long bytes = outline.getRowBytes() * outline.getHeight();
+        if (bytes > MAX_CACHE_BYTES / 4) {
+            return;
+        }
+        final BitmapPool pool = LauncherApplication.getBitmapPool();
+        final Bitmap copy = pool.get(outline.getWidth(), outline.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        canvas.setBitmap(copy);
+        canvas.drawBitmap(outline, 0, 0, null);
+        canvas.setBitmap(null);
+
+        final Bitmap old = sOutlineCache.put(key, copy);
+        if (old != null) {
+            sCacheBytes -= old.getRowBytes() * old.getHeight();
+            pool.put(old);
+        }
+        sCacheBytes += bytes;
+        trimCache(MAX_CACHE_BYTES);
+    }
+
+    private static void trimCache(long maxBytes) {
+        final BitmapPool pool = LauncherApplication.getBitmapPool();
+        Iterator<Map.Entry<Long, Bitmap>> iter = sOutlineCache.entrySet().iterator();
+        while (sCacheBytes > maxBytes && iter.hasNext()) {
+            final Bitmap b = iter.next().getValue();
+            iter.remove();
+            sCacheBytes -= b.getRowBytes() * b.getHeight();
+            pool.put(b);
+        }
+    }
+
+    /**
+     * Drops the cached outlines. Must be called on the main thread.
+     */
+    static void trimMemory() {
+        trimCache(0);
+    }
+
+    static void dumpState() {
+        LauncherLog.d(TAG, "outline cache: entries=" + sOutlineCache.size()
+                + " bytes=" + sCacheBytes + " hits=" + sCacheHits + " misses=" + sCacheMisses
+                + " avgHitMs=" + (sCacheHits > 0 ? (float) sCacheHitTime / sCacheHits : 0)
+                + " avgMissMs=" + (sCacheMisses > 0 ? (float) sCacheMissTime / sCacheMisses : 0));
     }
 
     void applyExtraThickExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas, int color,
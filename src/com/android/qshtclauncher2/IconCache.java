@@ -17,21 +17,38 @@
 package com.android.qshtclauncher2;
 
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Cache of application icons.  Icons can be made from any thread.
+ * Cache of application icons.  Icons can be made from any thread, lookups of cached
+ * icons never wait on another thread's load.
  */
 public class IconCache {
     @SuppressWarnings("unused")
@@ -39,17 +56,55 @@ public class IconCache {
 
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
 
+    // When the cache goes over budget it is trimmed a little further, so that the next few
+    // misses don't each pay for a trim.
+    private static final int TRIM_HEADROOM_PERCENT = 90;
+
     private static class CacheEntry {
         public Bitmap icon;
         public String title;
+        public int byteCount;
+        public volatile long lastAccess;
     }
 
+    private static final Comparator<Map.Entry<ComponentName, CacheEntry>> LRU_COMPARATOR =
+            new Comparator<Map.Entry<ComponentName, CacheEntry>>() {
+        public int compare(Map.Entry<ComponentName, CacheEntry> a,
+                Map.Entry<ComponentName, CacheEntry> b) {
+            final long lhs = a.getValue().lastAccess;
+            final long rhs = b.getValue().lastAccess;
+            return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+        }
+    };
+
     private final Bitmap mDefaultIcon;
     private final LauncherApplication mContext;
     private final PackageManager mPackageManager;
-    private final HashMap<ComponentName, CacheEntry> mCache =
-            new HashMap<ComponentName, CacheEntry>(INITIAL_ICON_CACHE_CAPACITY);
+    private final ConcurrentHashMap<ComponentName, CacheEntry> mCache =
+            new ConcurrentHashMap<ComponentName, CacheEntry>(INITIAL_ICON_CACHE_CAPACITY);
+    // Loads that are currently running, so concurrent misses on one component share a load.
+    private final ConcurrentHashMap<ComponentName, FutureTask<CacheEntry>> mInFlight =
+            new ConcurrentHashMap<ComponentName, FutureTask<CacheEntry>>();
     private int mIconDpi;
+    private final IconDiskCache mDiskCache;
+    // Package update times, so a disk cache lookup does not cost a PackageManager call
+    // per component.  Dropped when the package changes.
+    private final ConcurrentHashMap<String, Long> mLastUpdated =
+            new ConcurrentHashMap<String, Long>();
+
+    private final long mMaxBytes;
+    private final AtomicLong mCacheBytes = new AtomicLong();
+    private final AtomicLong mAccessClock = new AtomicLong();
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private final Object mTrimLock = new Object();
+    // Components of the items bound on the workspace and hotseat, never evicted. Replaced
+    // wholesale rather than modified so that readers don't need a lock.
+    private volatile Set<ComponentName> mPinned = Collections.emptySet();
+    // Number of items pinning each component, guarded by mTrimLock
+    private final HashMap<ComponentName, Integer> mPinCounts =
+            new HashMap<ComponentName, Integer>();
 
     public IconCache(LauncherApplication context) {
         ActivityManager activityManager =
@@ -58,6 +113,8 @@ public class IconCache {
         mContext = context;
         mPackageManager = context.getPackageManager();
         mIconDpi = activityManager.getLauncherLargeIconDensity();
+        mDiskCache = new IconDiskCache(context, mIconDpi);
+        mMaxBytes = context.getResources().getInteger(R.integer.config_iconCacheMaxKb) * 1024L;
 
         // need to set mIconDpi before getting default icon
         mDefaultIcon = makeDefaultIcon();
@@ -132,17 +189,63 @@ public class IconCache {
      * Remove any records for the supplied ComponentName.
      */
     public void remove(ComponentName componentName) {
-        synchronized (mCache) {
-            mCache.remove(componentName);
+        mInFlight.remove(componentName);
+        CacheEntry entry = mCache.get(componentName);
+        if (entry != null) {
+            removeEntry(componentName, entry);
+        }
+    }
+
+    /**
+     * Remove any records for the supplied package, both in memory and on disk.
+     */
+    public void removePackage(String packageName) {
+        Iterator<ComponentName> iter = mInFlight.keySet().iterator();
+        while (iter.hasNext()) {
+            if (packageName.equals(iter.next().getPackageName())) {
+                iter.remove();
+            }
+        }
+        for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+            if (packageName.equals(e.getKey().getPackageName())) {
+                removeEntry(e.getKey(), e.getValue());
+            }
         }
+        mLastUpdated.remove(packageName);
+        mDiskCache.removePackage(packageName);
     }
 
     /**
-     * Empty out the cache.
+     * Defers disk cache writes until the matching {@link #endDiskCacheBatch()}.
+     */
+    public void beginDiskCacheBatch() {
+        mDiskCache.beginBatch();
+    }
+
+    /**
+     * Writes the disk cache entries held back since {@link #beginDiskCacheBatch()}.
+     */
+    public void endDiskCacheBatch() {
+        mDiskCache.endBatch();
+    }
+
+    private boolean removeEntry(ComponentName componentName, CacheEntry entry) {
+        if (mCache.remove(componentName, entry)) {
+            mCacheBytes.addAndGet(-entry.byteCount);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Empty out the cache.  The disk cache is left alone, its entries are keyed by locale
+     * and package version so stale ones are never handed back.
      */
     public void flush() {
-        synchronized (mCache) {
-            mCache.clear();
+        mInFlight.clear();
+        mLastUpdated.clear();
+        for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+            removeEntry(e.getKey(), e.getValue());
         }
 
         if (LauncherLog.DEBUG) {
@@ -155,94 +258,363 @@ public class IconCache {
      */
     public void getTitleAndIcon(ApplicationInfo application, ResolveInfo info,
             HashMap<Object, CharSequence> labelCache) {
-        synchronized (mCache) {
-            CacheEntry entry = cacheLocked(application.componentName, info, labelCache);
+        CacheEntry entry = getEntry(application.componentName, info, labelCache);
 
-            application.title = entry.title;
-            application.iconBitmap = entry.icon;
+        application.title = entry.title;
+        application.iconBitmap = entry.icon;
+    }
+
+    /**
+     * Decodes an icon flattened by ItemInfo.flattenBitmap() for the favorites database,
+     * returns null if it can't be read.
+     */
+    Bitmap decodeIcon(byte[] data) {
+        try {
+            return Utilities.createIconBitmap(
+                    BitmapFactory.decodeByteArray(data, 0, data.length), mContext);
+        } catch (Exception e) {
+            return null;
         }
     }
 
-    public Bitmap getIcon(Intent intent) {
-        synchronized (mCache) {
-            final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
-            ComponentName component = intent.getComponent();
+    /**
+     * Returns a fresh copy of the icon shown for items whose own icon can't be loaded, the
+     * same one LauncherModel.getFallbackIcon() hands out.
+     */
+    Bitmap getFallbackIcon() {
+        return Utilities.createIconBitmap(getFullResDefaultActivityIcon(), mContext);
+    }
 
-            if (resolveInfo == null || component == null) {
-                return mDefaultIcon;
-            }
+    public Bitmap getIcon(Intent intent) {
+        final ResolveInfo resolveInfo = mPackageManager.resolveActivity(intent, 0);
+        ComponentName component = intent.getComponent();
 
-            CacheEntry entry = cacheLocked(component, resolveInfo, null);
-            return entry.icon;
+        if (resolveInfo == null || component == null) {
+            return mDefaultIcon;
         }
+
+        CacheEntry entry = getEntry(component, resolveInfo, null);
+        return entry.icon;
     }
 
     public Bitmap getIcon(ComponentName component, ResolveInfo resolveInfo,
             HashMap<Object, CharSequence> labelCache) {
-        synchronized (mCache) {
-            if (resolveInfo == null || component == null) {
-                return null;
-            }
-
-            CacheEntry entry = cacheLocked(component, resolveInfo, labelCache);
-            return entry.icon;
+        if (resolveInfo == null || component == null) {
+            return null;
         }
+
+        CacheEntry entry = getEntry(component, resolveInfo, labelCache);
+        return entry.icon;
     }
 
     public boolean isDefaultIcon(Bitmap icon) {
         return mDefaultIcon == icon;
     }
 
-    private CacheEntry cacheLocked(ComponentName componentName, ResolveInfo info,
+    /**
+     * Returns the entry for the component.  A hit never blocks; on a miss the first caller
+     * loads the entry and any concurrent callers for the same component wait for that load
+     * instead of starting their own.
+     */
+    private CacheEntry getEntry(final ComponentName componentName, final ResolveInfo info,
+            final HashMap<Object, CharSequence> labelCache) {
+        CacheEntry entry = mCache.get(componentName);
+        if (entry != null) {
+            entry.lastAccess = mAccessClock.incrementAndGet();
+            mHitCount.incrementAndGet();
+            return entry;
+        }
+        mMissCount.incrementAndGet();
+
+        final FutureTask<CacheEntry> task = new FutureTask<CacheEntry>(
+                new Callable<CacheEntry>() {
+                    public CacheEntry call() {
+                        return loadEntry(componentName, info, labelCache);
+                    }
+                });
+        FutureTask<CacheEntry> loading = mInFlight.putIfAbsent(componentName, task);
+        if (loading == null) {
+            loading = task;
+            task.run();
+        } else if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "getEntry: joining in-flight load of " + componentName);
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    entry = loading.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (loading == task) {
+            entry.lastAccess = mAccessClock.incrementAndGet();
+            final CacheEntry old = mCache.put(componentName, entry);
+            mCacheBytes.addAndGet(entry.byteCount - (old != null ? old.byteCount : 0));
+            // A remove() or flush() that raced with the load wins, don't publish a stale entry.
+            if (!mInFlight.remove(componentName, task)) {
+                removeEntry(componentName, entry);
+            }
+            if (mCacheBytes.get() > mMaxBytes) {
+                trimToSize(mMaxBytes * TRIM_HEADROOM_PERCENT / 100);
+            }
+        }
+        return entry;
+    }
+
+    private CacheEntry loadEntry(ComponentName componentName, ResolveInfo info,
             HashMap<Object, CharSequence> labelCache) {
         if (LauncherLog.DEBUG_LAYOUT) {
-            LauncherLog.d(TAG, "cacheLocked: componentName = " + componentName
+            LauncherLog.d(TAG, "loadEntry: componentName = " + componentName
                     + ", info = " + info + ", HashMap<Object, CharSequence>:size = "
                     +  ((labelCache == null) ? "null" : labelCache.size()));
         }
 
-        CacheEntry entry = mCache.get(componentName);
-        if (entry == null) {
-            entry = new CacheEntry();
+        CacheEntry entry = new CacheEntry();
+
+        ComponentName key = LauncherModel.getComponentNameFromResolveInfo(info);
+        final long lastUpdated = getLastUpdateTime(componentName.getPackageName());
+        final String locale = mContext.getResources().getConfiguration().locale.toString();
+        if (lastUpdated > 0) {
+            IconDiskCache.Entry stored = mDiskCache.get(componentName, lastUpdated, locale);
+            if (stored != null) {
+                entry.title = stored.title;
+                entry.icon = stored.icon;
+                if (entry.title == null) {
+                    entry.title = info.activityInfo.name;
+                }
+                putLabel(labelCache, key, entry.title);
+                if (LauncherModel.DEBUG_LOADERS) {
+                    LauncherLog.d(TAG, "loadEntry get entry from disk: title = " + entry.title);
+                }
+                entry.byteCount = getByteCount(entry.icon);
+                return entry;
+            }
+        }
 
-            mCache.put(componentName, entry);
+        final CharSequence cachedLabel = getLabel(labelCache, key);
+        if (cachedLabel != null) {
+            entry.title = cachedLabel.toString();
+            if (LauncherModel.DEBUG_LOADERS) {
+                LauncherLog.d(TAG, "loadEntry get title from cache: title = " + entry.title);
+            }
+        } else {
+            entry.title = info.loadLabel(mPackageManager).toString();
+            if (LauncherModel.DEBUG_LOADERS) {
+                LauncherLog.d(TAG, "loadEntry get title from pms: title = " + entry.title);
+            }
+            putLabel(labelCache, key, entry.title);
+        }
+        if (entry.title == null) {
+            entry.title = info.activityInfo.name;
+            if (LauncherModel.DEBUG_LOADERS) {
+                LauncherLog.d(TAG, "loadEntry get title from activity information: entry.title = " + entry.title);
+            }
+        }
 
-            ComponentName key = LauncherModel.getComponentNameFromResolveInfo(info);
-            if (labelCache != null && labelCache.containsKey(key)) {
-                entry.title = labelCache.get(key).toString();
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from cache: title = " + entry.title);
-                }                
+        entry.icon = Utilities.createIconBitmap(
+                getFullResIcon(info), mContext);
+        if (lastUpdated > 0) {
+            mDiskCache.put(componentName, lastUpdated, locale, entry.icon, entry.title);
+        }
+        entry.byteCount = getByteCount(entry.icon);
+        return entry;
+    }
+
+    /**
+     * Reads a label from a loader label cache.  The loader and the main thread can both be
+     * using the same cache, so it is only touched while holding its monitor, and never while
+     * loading a label.
+     */
+    static CharSequence getLabel(HashMap<Object, CharSequence> labelCache, Object key) {
+        if (labelCache == null) {
+            return null;
+        }
+        synchronized (labelCache) {
+            return labelCache.get(key);
+        }
+    }
+
+    static void putLabel(HashMap<Object, CharSequence> labelCache, Object key,
+            CharSequence label) {
+        if (labelCache == null || label == null) {
+            return;
+        }
+        synchronized (labelCache) {
+            labelCache.put(key, label);
+        }
+    }
+
+    private static int getByteCount(Bitmap icon) {
+        return icon != null ? icon.getRowBytes() * icon.getHeight() : 0;
+    }
+
+    /**
+     * Replaces the set of components whose entries must survive eviction, typically the
+     * items currently bound on the workspace, the hotseat and in folders.  A component may
+     * appear once for every item that uses it.
+     */
+    public void setPinnedComponents(Collection<ComponentName> components) {
+        synchronized (mTrimLock) {
+            mPinCounts.clear();
+            for (ComponentName component : components) {
+                final Integer count = mPinCounts.get(component);
+                mPinCounts.put(component, count == null ? 1 : count + 1);
+            }
+            publishPinnedLocked();
+        }
+    }
+
+    /**
+     * Pins a component for one more item, its entry must survive eviction until every item
+     * using it has been unpinned.
+     */
+    public void pinComponent(ComponentName component) {
+        if (component == null) {
+            return;
+        }
+        synchronized (mTrimLock) {
+            final Integer count = mPinCounts.get(component);
+            mPinCounts.put(component, count == null ? 1 : count + 1);
+            if (count == null) {
+                publishPinnedLocked();
+            }
+        }
+    }
+
+    /**
+     * Releases the pin of one item on a component, called when the item is removed.
+     */
+    public void unpinComponent(ComponentName component) {
+        if (component == null) {
+            return;
+        }
+        synchronized (mTrimLock) {
+            final Integer count = mPinCounts.get(component);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                mPinCounts.put(component, count - 1);
             } else {
-                entry.title = info.loadLabel(mPackageManager).toString();
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from pms: title = " + entry.title);
-                }                
-                if (labelCache != null) {
-                    labelCache.put(key, entry.title);
+                mPinCounts.remove(component);
+                publishPinnedLocked();
+            }
+        }
+    }
+
+    private void publishPinnedLocked() {
+        mPinned = Collections.unmodifiableSet(new HashSet<ComponentName>(mPinCounts.keySet()));
+    }
+
+    /**
+     * Evicts the least recently used unpinned entries until the cache holds at most
+     * maxBytes, or only pinned entries are left.
+     */
+    public void trimToSize(long maxBytes) {
+        synchronized (mTrimLock) {
+            if (mCacheBytes.get() <= maxBytes) {
+                return;
+            }
+            final Set<ComponentName> pinned = mPinned;
+            ArrayList<Map.Entry<ComponentName, CacheEntry>> candidates =
+                    new ArrayList<Map.Entry<ComponentName, CacheEntry>>(mCache.size());
+            for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+                if (!pinned.contains(e.getKey())) {
+                    candidates.add(e);
                 }
             }
-            if (entry.title == null) {
-                entry.title = info.activityInfo.name;
-                if (LauncherModel.DEBUG_LOADERS) {
-                    LauncherLog.d(TAG, "CacheLocked get title from activity information: entry.title = " + entry.title);
+            Collections.sort(candidates, LRU_COMPARATOR);
+
+            int evicted = 0;
+            final int N = candidates.size();
+            for (int i = 0; i < N && mCacheBytes.get() > maxBytes; i++) {
+                final Map.Entry<ComponentName, CacheEntry> e = candidates.get(i);
+                if (removeEntry(e.getKey(), e.getValue())) {
+                    evicted++;
                 }
             }
+            mEvictionCount.addAndGet(evicted);
+            if (LauncherLog.DEBUG) {
+                LauncherLog.d(TAG, "trimToSize: maxBytes = " + maxBytes + ", evicted = " + evicted
+                        + ", size = " + mCacheBytes.get());
+            }
+        }
+    }
+
+    /**
+     * Shrinks the cache in proportion to the trim level, from almost nothing at
+     * TRIM_MEMORY_RUNNING_MODERATE to everything but the pinned entries at
+     * TRIM_MEMORY_COMPLETE.
+     */
+    public void trimMemory(int level) {
+        final long complete = ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+        final long keep = Math.max(0, complete - Math.min(level, complete));
+        trimToSize(Math.min(mCacheBytes.get(), mMaxBytes) * keep / complete);
+    }
+
+    public long getSizeBytes() {
+        return mCacheBytes.get();
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    public void dumpState() {
+        LauncherLog.d(TAG, "entries=" + mCache.size() + " bytes=" + mCacheBytes.get()
+                + " maxBytes=" + mMaxBytes + " pinned=" + mPinned.size()
+                + " hits=" + mHitCount.get() + " misses=" + mMissCount.get()
+                + " evictions=" + mEvictionCount.get());
+    }
 
-            entry.icon = Utilities.createIconBitmap(
-                    getFullResIcon(info), mContext);
+    /**
+     * Returns the last time the package was installed or updated, or 0 if it is unknown.
+     */
+    private long getLastUpdateTime(String packageName) {
+        final Long cached = mLastUpdated.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            PackageInfo pi = mPackageManager.getPackageInfo(packageName, 0);
+            if (pi.lastUpdateTime != 0) {
+                mLastUpdated.put(packageName, pi.lastUpdateTime);
+            }
+            return pi.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
         }
-        return entry;
     }
 
     public HashMap<ComponentName,Bitmap> getAllIcons() {
-        synchronized (mCache) {
-            HashMap<ComponentName,Bitmap> set = new HashMap<ComponentName,Bitmap>();
-            for (ComponentName cn : mCache.keySet()) {
-                final CacheEntry e = mCache.get(cn);
-                set.put(cn, e.icon);
-            }
-            return set;
+        HashMap<ComponentName,Bitmap> set = new HashMap<ComponentName,Bitmap>();
+        for (Map.Entry<ComponentName, CacheEntry> e : mCache.entrySet()) {
+            set.put(e.getKey(), e.getValue().icon);
         }
+        return set;
     }
 }
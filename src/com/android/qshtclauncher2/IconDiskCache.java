@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Persistent store of pre-rendered application icons and labels.  An entry is only handed
+ * back if it was rendered for the same package update time, locale and icon density that
+ * the caller is asking for; anything else is treated as a miss.
+ */
+class IconDiskCache {
+    private static final String TAG = "IconDiskCache";
+
+    private static final String DATABASE_NAME = "app_icons.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_ICONS = "icons";
+    private static final String COMPONENT = "componentName";
+    private static final String PACKAGE = "packageName";
+    private static final String LAST_UPDATED = "lastUpdated";
+    private static final String LOCALE = "locale";
+    private static final String ICON_DPI = "iconDpi";
+    private static final String ICON = "icon";
+    private static final String LABEL = "label";
+
+    private static final String[] ENTRY_COLUMNS = new String[] {
+            LAST_UPDATED, LOCALE, ICON_DPI, ICON, LABEL
+    };
+
+    static class Entry {
+        Bitmap icon;
+        String title;
+    }
+
+    private final DatabaseHelper mOpenHelper;
+    private final int mIconDpi;
+
+    // Rows put while a batch is open, keyed by flattened component.  Guarded by "this".
+    private final LinkedHashMap<String, ContentValues> mPendingWrites =
+            new LinkedHashMap<String, ContentValues>();
+    private int mBatchDepth;
+
+    IconDiskCache(Context context, int iconDpi) {
+        mOpenHelper = new DatabaseHelper(context);
+        mIconDpi = iconDpi;
+    }
+
+    /**
+     * Returns the stored icon and label for the component, or null if there is no entry or
+     * the entry was rendered for a different package version, locale or density.
+     */
+    Entry get(ComponentName component, long lastUpdated, String locale) {
+        Cursor c = null;
+        try {
+            c = mOpenHelper.getReadableDatabase().query(TABLE_ICONS, ENTRY_COLUMNS,
+                    COMPONENT + "=?", new String[] { component.flattenToString() },
+                    null, null, null);
+            if (c == null || !c.moveToFirst()) {
+                return null;
+            }
+            if (c.getLong(0) != lastUpdated || !locale.equals(c.getString(1))
+                    || c.getInt(2) != mIconDpi) {
+                if (LauncherLog.DEBUG) {
+                    LauncherLog.d(TAG, "Stale icon entry for " + component);
+                }
+                return null;
+            }
+            final byte[] data = c.getBlob(3);
+            final Bitmap icon = data == null ? null
+                    : BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (icon == null) {
+                return null;
+            }
+            final Entry entry = new Entry();
+            entry.icon = icon;
+            entry.title = c.getString(4);
+            return entry;
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not read icon entry for " + component, e);
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Stores the rendered icon and label for the component, replacing any previous entry.
+     */
+    void put(ComponentName component, long lastUpdated, String locale, Bitmap icon,
+            String title) {
+        final byte[] data = ItemInfo.flattenBitmap(icon);
+        if (data == null) {
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(COMPONENT, component.flattenToString());
+        values.put(PACKAGE, component.getPackageName());
+        values.put(LAST_UPDATED, lastUpdated);
+        values.put(LOCALE, locale);
+        values.put(ICON_DPI, mIconDpi);
+        values.put(ICON, data);
+        values.put(LABEL, title);
+        synchronized (this) {
+            if (mBatchDepth > 0) {
+                mPendingWrites.put(component.flattenToString(), values);
+                return;
+            }
+        }
+        try {
+            mOpenHelper.getWritableDatabase().insertWithOnConflict(TABLE_ICONS, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not store icon entry for " + component, e);
+        }
+    }
+
+    /**
+     * Holds back subsequent puts until the matching {@link #endBatch()}, so that a full
+     * load is written in a single transaction instead of one per icon.  Batches nest.
+     */
+    synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Closes a batch opened by {@link #beginBatch()}; the outermost one writes every
+     * pending entry.
+     */
+    synchronized void endBatch() {
+        if (mBatchDepth == 0 || --mBatchDepth > 0 || mPendingWrites.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = null;
+        try {
+            db = mOpenHelper.getWritableDatabase();
+            db.beginTransaction();
+            for (ContentValues values : mPendingWrites.values()) {
+                db.insertWithOnConflict(TABLE_ICONS, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+            if (LauncherLog.DEBUG) {
+                LauncherLog.d(TAG, "Stored " + mPendingWrites.size() + " icon entries");
+            }
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not store " + mPendingWrites.size() + " icon entries", e);
+        } finally {
+            if (db != null && db.inTransaction()) {
+                db.endTransaction();
+            }
+            mPendingWrites.clear();
+        }
+    }
+
+    /**
+     * Drops the entry for the supplied component.
+     */
+    void remove(ComponentName component) {
+        synchronized (this) {
+            mPendingWrites.remove(component.flattenToString());
+        }
+        delete(COMPONENT + "=?", component.flattenToString());
+    }
+
+    /**
+     * Drops every entry that belongs to the supplied package.
+     */
+    void removePackage(String packageName) {
+        synchronized (this) {
+            Iterator<ContentValues> iter = mPendingWrites.values().iterator();
+            while (iter.hasNext()) {
+                if (packageName.equals(iter.next().getAsString(PACKAGE))) {
+                    iter.remove();
+                }
+            }
+        }
+        delete(PACKAGE + "=?", packageName);
+    }
+
+    private void delete(String where, String arg) {
+        try {
+            mOpenHelper.getWritableDatabase().delete(TABLE_ICONS, where, new String[] { arg });
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not delete icon entries for " + arg, e);
+        }
+    }
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ICONS + " (" +
+                    COMPONENT + " TEXT PRIMARY KEY," +
+                    PACKAGE + " TEXT NOT NULL," +
+                    LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0," +
+                    LOCALE + " TEXT," +
+                    ICON_DPI + " INTEGER NOT NULL DEFAULT 0," +
+                    ICON + " BLOB," +
+                    LABEL + " TEXT" +
+                    ");");
+            db.execSQL("CREATE INDEX icons_package ON " + TABLE_ICONS + " (" + PACKAGE + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // This is only a cache, it is always safe to throw it away.
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICONS);
+            onCreate(db);
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            onUpgrade(db, oldVersion, newVersion);
+        }
+    }
+}
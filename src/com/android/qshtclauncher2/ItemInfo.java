@@ -189,10 +189,32 @@ class ItemInfo {
         }
     }
 
+    /**
+     * Returns a hash of the size and pixels of the bitmap.  It is stored next to the icon so
+     * that a saved icon can be checked against a loaded one without decoding it.
+     */
+    static long hashBitmap(Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int[] row = new int[width];
+        // 64-bit FNV-1a over the size and the pixels, one int at a time
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                hash = (hash ^ row[x]) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
     static void writeBitmap(ContentValues values, Bitmap bitmap) {
         if (bitmap != null) {
             byte[] data = flattenBitmap(bitmap);
             values.put(LauncherSettings.Favorites.ICON, data);
+            values.put(LauncherSettings.Favorites.ICON_HASH, hashBitmap(bitmap));
         }
     }
 
@@ -855,6 +855,9 @@ public final class Launcher extends Activity
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "(Launcher)onStop: this = " + this);
         }
+
+        // Don't leave item moves or launch counts in the write-behind queue
+        LauncherModel.flushDbUpdates();
 		
 		if(QS_SUPPORT_REMOVE_SCREENPAGE){
         	//SharedPreferences sharePref = PreferenceManager.getDefaultSharedPreferences(this);
@@ -1001,6 +1004,9 @@ public final class Launcher extends Activity
             LauncherLog.d(TAG, "(Launcher)onPause: this = " + this);
         }
 
+        // Write the queued item updates now rather than when the flush timer fires
+        LauncherModel.flushDbUpdates();
+
         /// M: Call the appropriate callback for the IMtkWidget on the current page when we pause Launcher.
         mWorkspace.onPauseWhenShown(mWorkspace.getCurrentPage());
         resetReSyncFlags();
@@ -3172,6 +3178,7 @@ public final class Launcher extends Activity
         if(isWidgetStyle && mQsSmallDropPreviewScreen != null){
         	mQsSmallDropPreviewScreen.onWindowVisibleChanged(true);
         }
+        mDragController.invalidateDropTargetRegions();
         
         if(animated){
     		mStateAnimation = LauncherAnimUtils.createAnimatorSet();
@@ -3231,6 +3238,7 @@ public final class Launcher extends Activity
         if(isWidgetStyle && mQsSmallDropPreviewScreen != null){
         	mQsSmallDropPreviewScreen.onWindowVisibleChanged(false);
         }
+        mDragController.invalidateDropTargetRegions();
         
         if(animated){
     		mStateAnimation = LauncherAnimUtils.createAnimatorSet();
@@ -3271,7 +3279,19 @@ public final class Launcher extends Activity
             LauncherLog.d(TAG, "onTrimMemory: level = " + level);
         }
 
+        if (mIconCache != null) {
+            mIconCache.trimMemory(level);
+        }
+        if (mAppsCustomizeContentWidget != null) {
+            mAppsCustomizeContentWidget.trimMemory(level);
+        }
+        LauncherApplication.getBitmapPool().trimMemory(level);
+
         if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            HolographicOutlineHelper.trimMemory();
+            if (mWorkspace != null) {
+                mWorkspace.getThumbnailCache().clear();
+            }
             mAppsCustomizeTabHost.onTrimMemory();
             mAppsCustomizeTabHostWidget.onTrimMemory();
         }
@@ -3400,6 +3420,8 @@ public final class Launcher extends Activity
             hideAppsCustomizeHelper(isWidgetStyle ? State.APPS_CUSTOMIZE_WIDGET_SPRING_LOADED : State.APPS_CUSTOMIZE_SPRING_LOADED, true, true, null, isWidgetStyle);
             hideDockDivider();
             mState = isWidgetStyle ? State.APPS_CUSTOMIZE_WIDGET_SPRING_LOADED : State.APPS_CUSTOMIZE_SPRING_LOADED;
+            // The workspace scales up under the drag without a layout
+            mDragController.invalidateDropTargetRegions();
         }
     }
 
@@ -3445,6 +3467,7 @@ public final class Launcher extends Activity
             boolean isWidgetStyle = (mState == State.APPS_CUSTOMIZE_WIDGET_SPRING_LOADED);
             showAppsCustomizeHelper(animated, springLoaded, isWidgetStyle);
             mState = isWidgetStyle ? State.APPS_CUSTOMIZE_WIDGET : State.APPS_CUSTOMIZE;
+            mDragController.invalidateDropTargetRegions();
         }
         // Otherwise, we are not in spring loaded mode, so don't do anything.
     }
@@ -4577,6 +4600,17 @@ public final class Launcher extends Activity
         Log.d(TAG, "mSavedInstanceState=" + mSavedInstanceState);
         Log.d(TAG, "sFolders.size=" + sFolders.size());
         mModel.dumpState();
+        if (mIconCache != null) {
+            mIconCache.dumpState();
+        }
+        LauncherApplication.getBitmapPool().dumpState();
+        HolographicOutlineHelper.dumpState();
+        if (mWorkspace != null) {
+            mWorkspace.getThumbnailCache().dumpState();
+        }
+        if (mDragController != null) {
+            mDragController.dumpState();
+        }
 
         if (mAppsCustomizeContent != null) {
             mAppsCustomizeContent.dumpState();
@@ -36,6 +36,7 @@ public class LauncherApplication extends Application {
     public IconCache mIconCache;
     private static boolean sIsScreenLarge;
     private static float sScreenDensity;
+    private static BitmapPool sBitmapPool;
     private static int sLongPressTimeout = 300;
     private static final String sSharedPreferencesKey = "com.android.launcher2.prefs";
     WeakReference<LauncherProvider> mLauncherProvider;
@@ -49,6 +50,8 @@ public class LauncherApplication extends Application {
         // set sIsScreenXLarge and sScreenDensity *before* creating icon cache
         sIsScreenLarge = getResources().getBoolean(R.bool.is_large_screen);
         sScreenDensity = getResources().getDisplayMetrics().density;
+        sBitmapPool = new BitmapPool(
+                getResources().getInteger(R.integer.config_bitmapPoolMaxKb) * 1024L);
         if(!IsAllowToRun())
         {
         	mModel = new LauncherModel(this, null);
@@ -205,6 +208,10 @@ public class LauncherApplication extends Application {
         return sScreenDensity;
     }
 
+    static BitmapPool getBitmapPool() {
+        return sBitmapPool;
+    }
+
     public static int getLongPressTimeout() {
         return sLongPressTimeout;
     }
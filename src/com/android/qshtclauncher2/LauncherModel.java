@@ -22,11 +22,13 @@ import android.appwidget.AppWidgetProviderInfo;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.Intent.ShortcutIconResource;
+import android.content.OperationApplicationException;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -36,7 +38,6 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Environment;
 import android.os.Handler;
@@ -52,15 +53,27 @@ import com.android.qshtclauncher2.InstallWidgetReceiver.WidgetMimeTypeHandlerDat
 
 import java.lang.ref.WeakReference;
 import java.net.URISyntaxException;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Maintains in-memory state of the Launcher. It is expected that there should be only one
@@ -76,10 +89,15 @@ public class LauncherModel extends BroadcastReceiver {
     private final boolean mAppsCanBeOnExternalStorage;
     private int mBatchSize; // 0 is all apps at once
     private int mAllAppsLoadDelay; // milliseconds between batches
+    private boolean mAllAppsParallelLoad; // resolve labels and icons on sAllAppsLoaderPool
+    private int mAllAppsFirstBindCount; // apps bound before the rest in the parallel mode
+    private boolean mWorkspaceIncrementalLoad; // load and bind the current page first
+    private boolean mFrameBudgetedBind; // bind one item per step, paced by mBindScheduler
 
     private final LauncherApplication mApp;
     private final Object mLock = new Object();
     private DeferredHandler mHandler = new DeferredHandler();
+    private final WorkspaceBindScheduler mBindScheduler;
     private LoaderTask mLoaderTask;
     private boolean mIsLoaderTaskRunning;
 
@@ -95,6 +113,53 @@ public class LauncherModel extends BroadcastReceiver {
     }
     private static final Handler sWorker = new Handler(sWorkerThread.getLooper());
 
+    // Pool used by the parallel all apps load, one thread per core.  Idle threads time out so
+    // the pool costs nothing once the launcher has finished loading.
+    private static final int ALL_APPS_LOADER_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor sAllAppsLoaderPool = new ThreadPoolExecutor(
+            ALL_APPS_LOADER_THREADS, ALL_APPS_LOADER_THREADS, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+                public Thread newThread(final Runnable r) {
+                    return new Thread("launcher-apps-loader-" + mCount.getAndIncrement()) {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    };
+                }
+            });
+    static {
+        sAllAppsLoaderPool.allowCoreThreadTimeOut(true);
+    }
+
+    // Write-behind queue of favorites updates.  Updates of the same item are merged until the
+    // queue is flushed, which writes all of them with a single applyBatch() transaction.  Items
+    // are queued on the worker thread, but any thread that reads the favorites flushes the
+    // queue first, so everything below is guarded by sPendingDbLock.
+    private static final long DB_FLUSH_DELAY = 300; // ms
+    private static final Object sPendingDbLock = new Object();
+    private static final LinkedHashMap<Long, ContentValues> sPendingDbUpdates =
+            new LinkedHashMap<Long, ContentValues>();
+    private static ContentResolver sPendingDbResolver;
+    private static boolean sDbFlushScheduled;
+    private static final Runnable sDbFlushRunnable = new Runnable() {
+        public void run() {
+            flushPendingDbUpdates();
+        }
+    };
+
+    // Write-behind queue statistics, see dumpState()
+    private static long sDbUpdatesQueued;
+    private static long sDbUpdatesCoalesced;
+    private static long sDbFlushCount;
+    private static long sDbFlushedRows;
+    private static int sDbMaxBatchSize;
+    private static long sDbFlushTotalTime;
+    private static long sDbFlushMaxTime;
+
     // We start off with everything not loaded.  After that, we assume that
     // our monitoring of the package manager provides all updates and we never
     // need to do a requery.  These are only ever touched from the loader thread.
@@ -127,6 +192,10 @@ public class LauncherModel extends BroadcastReceiver {
     //       shortcuts within folders).
     static final ArrayList<ItemInfo> sBgWorkspaceItems = new ArrayList<ItemInfo>();
     static final ArrayList<ShortcutInfo> sBgLaunchFreqAppsItems = new ArrayList<ShortcutInfo>();
+    // sBgLaunchFreqAppsIndex maps the component of every item in sBgLaunchFreqAppsItems to that
+    //       item, it is only changed together with the list through addLaunchFreqItem().
+    static final HashMap<ComponentName, ShortcutInfo> sBgLaunchFreqAppsIndex =
+        new HashMap<ComponentName, ShortcutInfo>();
 
     // sBgAppWidgets is all LauncherAppWidgetInfo created by LauncherModel. Passed to bindAppWidget()
     static final ArrayList<LauncherAppWidgetInfo> sBgAppWidgets =
@@ -135,11 +204,57 @@ public class LauncherModel extends BroadcastReceiver {
     // sBgFolders is all FolderInfos created by LauncherModel. Passed to bindFolders()
     static final HashMap<Long, FolderInfo> sBgFolders = new HashMap<Long, FolderInfo>();
 
-    // sBgDbIconCache is the set of ItemInfos that need to have their icons updated in the database
-    static final HashMap<Object, byte[]> sBgDbIconCache = new HashMap<Object, byte[]>();
+    // sBgDbIconCache is the set of ItemInfos that need to have their icons updated in the database,
+    //       mapped to the hash of the icon that is saved there (null if there is none).  It is
+    //       the loader's own work list and is never read outside the worker thread, so it is not
+    //       part of the published snapshot.
+    static final HashMap<Object, Long> sBgDbIconCache = new HashMap<Object, Long>();
 
     // </ only access in worker thread >
 
+    // Bumped under sBgLock every time a new snapshot is published, which is also the number
+    // of snapshots built so far
+    private static int sBgVersion;
+    // The last published snapshot, see getBgSnapshot()
+    private static volatile BgModelSnapshot sBgSnapshot = new BgModelSnapshot(0);
+    private static final AtomicInteger sBgSnapshotReads = new AtomicInteger();
+
+    /**
+     * Immutable copy of the background model.  The collections must not be modified, but can
+     * be read from any thread without holding sBgLock.  The items themselves are shared with
+     * the background model as before.  The workspace items have no nulls and are ordered by
+     * container, which is what binding needs.
+     */
+    static final class BgModelSnapshot {
+        final int version;
+        final ArrayList<ItemInfo> workspaceItems;
+        final ArrayList<LauncherAppWidgetInfo> appWidgets;
+        final HashMap<Long, FolderInfo> folders;
+        final HashMap<Long, ItemInfo> itemsIdMap;
+        // The launch frequency items by component, see sBgLaunchFreqAppsIndex
+        final HashMap<ComponentName, ShortcutInfo> launchFreqApps;
+
+        private BgModelSnapshot(int v) {
+            version = v;
+            workspaceItems = new ArrayList<ItemInfo>(sBgWorkspaceItems.size());
+            for (ItemInfo info : sBgWorkspaceItems) {
+                if (info != null) {
+                    workspaceItems.add(info);
+                }
+            }
+            Collections.sort(workspaceItems, new Comparator<ItemInfo>() {
+                @Override
+                public int compare(ItemInfo lhs, ItemInfo rhs) {
+                    return (int) (lhs.container - rhs.container);
+                }
+            });
+            appWidgets = new ArrayList<LauncherAppWidgetInfo>(sBgAppWidgets);
+            folders = new HashMap<Long, FolderInfo>(sBgFolders);
+            itemsIdMap = new HashMap<Long, ItemInfo>(sBgItemsIdMap);
+            launchFreqApps = new HashMap<ComponentName, ShortcutInfo>(sBgLaunchFreqAppsIndex);
+        }
+    }
+
     private IconCache mIconCache;
     private Bitmap mDefaultIcon;
 
@@ -205,6 +320,13 @@ public class LauncherModel extends BroadcastReceiver {
         final Resources res = app.getResources();
         mAllAppsLoadDelay = res.getInteger(R.integer.config_allAppsBatchLoadDelay);
         mBatchSize = res.getInteger(R.integer.config_allAppsBatchSize);
+        mAllAppsParallelLoad = res.getBoolean(R.bool.config_allAppsParallelLoad);
+        mAllAppsFirstBindCount = res.getInteger(R.integer.config_allAppsFirstBindCount);
+        mWorkspaceIncrementalLoad = res.getBoolean(R.bool.config_workspaceIncrementalLoad);
+        mHandler.setFrameBudget(res.getInteger(R.integer.config_bindFrameBudgetMs));
+        mFrameBudgetedBind = res.getBoolean(R.bool.config_workspaceFrameBudgetedBind);
+        mBindScheduler = new WorkspaceBindScheduler(
+                res.getInteger(R.integer.config_bindFrameBudgetMs));
         Configuration config = res.getConfiguration();
         mPreviousConfigMcc = config.mcc;
         /// M: Assign the initial value to the variable of the mPreviousSkin.
@@ -221,7 +343,7 @@ public class LauncherModel extends BroadcastReceiver {
     private void runOnMainThread(Runnable r, int type) {
         if (sWorkerThread.getThreadId() == Process.myTid()) {
             // If we are on the worker thread, post onto the main handler
-            mHandler.post(r);
+            mHandler.post(r, type);
         } else {
             r.run();
         }
@@ -252,20 +374,37 @@ public class LauncherModel extends BroadcastReceiver {
         mDeferredBindRunnables.clear();
         // Remove any queued bind runnables
         mHandler.cancelAllRunnablesOfType(MAIN_THREAD_BINDING_RUNNABLE);
+        mBindScheduler.onBindFinished();
         // Unbind all the workspace items
         unbindWorkspaceItemsOnMainThread();
     }
 
+    /**
+     * Copies the background model into a new snapshot and publishes it.  Called with sBgLock
+     * held at the end of every section that changes sBgWorkspaceItems, sBgAppWidgets,
+     * sBgFolders, sBgItemsIdMap or the launch frequency items.
+     */
+    static void publishBgSnapshotLocked() {
+        sBgVersion++;
+        sBgSnapshot = new BgModelSnapshot(sBgVersion);
+    }
+
+    /**
+     * Returns the last published snapshot of the background model.  This never takes
+     * sBgLock, so readers do not wait for writers; they see the model as of the end of the
+     * last write.
+     */
+    static BgModelSnapshot getBgSnapshot() {
+        sBgSnapshotReads.incrementAndGet();
+        return sBgSnapshot;
+    }
+
     /** Unbinds all the sBgWorkspaceItems and sBgAppWidgets on the main thread */
     void unbindWorkspaceItemsOnMainThread() {
-        // Ensure that we don't use the same workspace items data structure on the main thread
-        // by making a copy of workspace items first.
-        final ArrayList<ItemInfo> tmpWorkspaceItems = new ArrayList<ItemInfo>();
-        final ArrayList<ItemInfo> tmpAppWidgets = new ArrayList<ItemInfo>();
-        synchronized (sBgLock) {
-            tmpWorkspaceItems.addAll(sBgWorkspaceItems);
-            tmpAppWidgets.addAll(sBgAppWidgets);
-        }
+        // The snapshot is never modified, so it is safe to walk on the main thread
+        final BgModelSnapshot snapshot = getBgSnapshot();
+        final ArrayList<ItemInfo> tmpWorkspaceItems = snapshot.workspaceItems;
+        final ArrayList<LauncherAppWidgetInfo> tmpAppWidgets = snapshot.appWidgets;
         Runnable r = new Runnable() {
                 @Override
                 public void run() {
@@ -354,7 +493,6 @@ public class LauncherModel extends BroadcastReceiver {
     static void updateItemInDatabaseHelper(Context context, final ContentValues values,
             final ItemInfo item, final String callingFunction) {
         final long itemId = item.id;
-        final Uri uri = LauncherSettings.Favorites.getContentUri(itemId, false);
         final ContentResolver cr = context.getContentResolver();
         if (LauncherLog.DEBUG) {
             LauncherLog.d(TAG, "updateItemInDatabaseHelper values = " + values + ", item = " + item);
@@ -363,7 +501,7 @@ public class LauncherModel extends BroadcastReceiver {
         final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
         Runnable r = new Runnable() {
             public void run() {
-                cr.update(uri, values, null, null);
+                queueDbUpdate(cr, itemId, values);
                 if(!"modifyItemLaunchInfoInDatabase".equals(callingFunction)){
                 //if (item.container != LauncherSettings.Favorites.CONTAINER_APPSFREQ){
 
@@ -404,6 +542,7 @@ public class LauncherModel extends BroadcastReceiver {
 	                    } else {
 	                        sBgWorkspaceItems.remove(modelItem);
 	                    }
+	                    publishBgSnapshotLocked();
 	                }
             	}
             }
@@ -411,6 +550,95 @@ public class LauncherModel extends BroadcastReceiver {
         runOnWorkerThread(r);
     }
 
+    /**
+     * Queues an update of the favorites row of the given item.  Must be called on the worker
+     * thread, the update is written by the next flushPendingDbUpdates().
+     */
+    private static void queueDbUpdate(ContentResolver cr, long itemId, ContentValues values) {
+        synchronized (sPendingDbLock) {
+            sDbUpdatesQueued++;
+            final ContentValues pending = sPendingDbUpdates.get(itemId);
+            if (pending != null) {
+                pending.putAll(values);
+                sDbUpdatesCoalesced++;
+            } else {
+                sPendingDbUpdates.put(itemId, new ContentValues(values));
+            }
+            sPendingDbResolver = cr;
+            if (!sDbFlushScheduled) {
+                sDbFlushScheduled = true;
+                sWorker.postDelayed(sDbFlushRunnable, DB_FLUSH_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Drops the queued update of an item whose row is being deleted.
+     */
+    private static void dropPendingDbUpdate(long itemId) {
+        synchronized (sPendingDbLock) {
+            sPendingDbUpdates.remove(itemId);
+        }
+    }
+
+    /**
+     * Writes all the queued favorites updates now.  Can be called on any thread; the lock is
+     * held until the batch is written, so a read that follows sees every queued update and
+     * two flushes never write the same item out of order.
+     */
+    private static void flushPendingDbUpdates() {
+        synchronized (sPendingDbLock) {
+            flushPendingDbUpdatesLocked();
+        }
+    }
+
+    private static void flushPendingDbUpdatesLocked() {
+        sWorker.removeCallbacks(sDbFlushRunnable);
+        sDbFlushScheduled = false;
+        if (sPendingDbUpdates.isEmpty()) {
+            return;
+        }
+
+        final long t = SystemClock.uptimeMillis();
+        final ArrayList<ContentProviderOperation> ops =
+                new ArrayList<ContentProviderOperation>(sPendingDbUpdates.size());
+        for (Map.Entry<Long, ContentValues> entry : sPendingDbUpdates.entrySet()) {
+            ops.add(ContentProviderOperation.newUpdate(
+                    LauncherSettings.Favorites.getContentUri(entry.getKey(), false))
+                    .withValues(entry.getValue()).build());
+        }
+        sPendingDbUpdates.clear();
+        final ContentResolver cr = sPendingDbResolver;
+        sPendingDbResolver = null;
+
+        try {
+            cr.applyBatch(LauncherProvider.AUTHORITY, ops);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Could not write " + ops.size() + " queued updates", e);
+        } catch (OperationApplicationException e) {
+            Log.w(TAG, "Could not write " + ops.size() + " queued updates", e);
+        }
+
+        final long elapsed = SystemClock.uptimeMillis() - t;
+        sDbFlushCount++;
+        sDbFlushedRows += ops.size();
+        sDbMaxBatchSize = Math.max(sDbMaxBatchSize, ops.size());
+        sDbFlushTotalTime += elapsed;
+        sDbFlushMaxTime = Math.max(sDbFlushMaxTime, elapsed);
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "flushPendingDbUpdates: " + ops.size() + " rows in " + elapsed
+                    + "ms");
+        }
+    }
+
+    /**
+     * Writes the queued favorites updates as soon as the worker thread gets to them, called
+     * when the launcher goes to the background.
+     */
+    static void flushDbUpdates() {
+        runOnWorkerThread(sDbFlushRunnable);
+    }
+
     /**
      * Move an item in the DB to a new <container, screen, cellX, cellY>
      */
@@ -502,26 +730,30 @@ public class LauncherModel extends BroadcastReceiver {
     	if(cmp == null)
     		return;
     	
-    	for(ShortcutInfo sInfo : sBgLaunchFreqAppsItems){
-    		if(cmp.equals(sInfo.getComponentName())){
-    			sInfo.launchedFreq = info.launchedFreq;
-    			sInfo.lastLaunchTime = info.lastLaunchTime;
-    			item = sInfo;
-    			break;
-    		}
+    	final boolean added;
+    	synchronized (sBgLock) {
+	    	item = sBgLaunchFreqAppsIndex.get(cmp);
+	    	if(item != null){
+	    		item.launchedFreq = info.launchedFreq;
+	    		item.lastLaunchTime = info.lastLaunchTime;
+	    		added = false;
+	    	} else {
+	    		item = new ShortcutInfo(info);
+	    		item.container = LauncherSettings.Favorites.CONTAINER_APPSFREQ;
+	    		addLaunchFreqItem(item);
+	    		publishBgSnapshotLocked();
+	    		added = true;
+	    	}
     	}
     	
-    	if(item != null){
+    	if(!added){
 	        final ContentValues values = new ContentValues();
 	        values.put(LauncherSettings.Favorites.LAUNCH_FREQ, item.launchedFreq);
 	        values.put(LauncherSettings.Favorites.LAST_LAUNCH_TIME, item.lastLaunchTime);
 
 	        updateItemInDatabaseHelper(context, values, item, "modifyItemLaunchInfoInDatabase");
     	} else {
-    		item = new ShortcutInfo(info);
-    		item.container = LauncherSettings.Favorites.CONTAINER_APPSFREQ;
     		addItemToDatabase(context, item, item.launchedFreq, item.lastLaunchTime);
-    		sBgLaunchFreqAppsItems.add(item);
     	}
     }
     
@@ -531,26 +763,30 @@ public class LauncherModel extends BroadcastReceiver {
     		return;
     	}
     	
-    	for(ShortcutInfo sInfo : sBgLaunchFreqAppsItems){
-    		if(applicationInfo.componentName.equals(sInfo.getComponentName())){
-    			sInfo.launchedFreq = applicationInfo.launchedFreq;
-    			sInfo.lastLaunchTime = applicationInfo.lastLaunchTime;
-    			item = sInfo;
-    			break;
-    		}
+    	final boolean added;
+    	synchronized (sBgLock) {
+	    	item = sBgLaunchFreqAppsIndex.get(applicationInfo.componentName);
+	    	if(item != null){
+	    		item.launchedFreq = applicationInfo.launchedFreq;
+	    		item.lastLaunchTime = applicationInfo.lastLaunchTime;
+	    		added = false;
+	    	} else {
+	    		item = new ShortcutInfo(applicationInfo);
+	    		item.container = LauncherSettings.Favorites.CONTAINER_APPSFREQ;
+	    		addLaunchFreqItem(item);
+	    		publishBgSnapshotLocked();
+	    		added = true;
+	    	}
     	}
     	
-    	if(item != null){
+    	if(!added){
 	        final ContentValues values = new ContentValues();
 	        values.put(LauncherSettings.Favorites.LAUNCH_FREQ, item.launchedFreq);
 	        values.put(LauncherSettings.Favorites.LAST_LAUNCH_TIME, item.lastLaunchTime);
 
 	        updateItemInDatabaseHelper(context, values, item, "modifyItemLaunchInfoInDatabase");
     	} else {
-    		item = new ShortcutInfo(applicationInfo);
-    		item.container = LauncherSettings.Favorites.CONTAINER_APPSFREQ;
     		addItemToDatabase(context, item, item.launchedFreq, item.lastLaunchTime);
-    		sBgLaunchFreqAppsItems.add(item);
     	}
     }
 
@@ -573,6 +809,7 @@ public class LauncherModel extends BroadcastReceiver {
      * we identify a shortcut by its title and intent.
      */
     static boolean shortcutExists(Context context, String title, Intent intent) {
+        flushPendingDbUpdates();
         /**
          * M: When installShortcut, Launcher add flags Intent.FLAG_ACTIVITY_NEW_TASK |
          * Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED shortcut intent cannot match with intent saved in launcher, so create
@@ -597,6 +834,8 @@ public class LauncherModel extends BroadcastReceiver {
      * The ItemInfo.id is not set through this function.
      */
     static ArrayList<ItemInfo> getItemsInLocalCoordinates(Context context) {
+        // The positions may still be sitting in the write-behind queue
+        flushPendingDbUpdates();
         ArrayList<ItemInfo> items = new ArrayList<ItemInfo>();
         final ContentResolver cr = context.getContentResolver();
         Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI, new String[] {
@@ -638,6 +877,7 @@ public class LauncherModel extends BroadcastReceiver {
      * Find a folder in the db, creating the FolderInfo if necessary, and adding it to folderList.
      */
     FolderInfo getFolderById(Context context, HashMap<Long,FolderInfo> folderList, long id) {
+        flushPendingDbUpdates();
         final ContentResolver cr = context.getContentResolver();
         Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI, null,
                 "_id=? and (itemType=? or itemType=?)",
@@ -720,6 +960,13 @@ public class LauncherModel extends BroadcastReceiver {
         /// M: added for scene feature, save the current scene value of the item.
         values.put(LauncherSettings.Favorites.SCENE, Launcher.getCurrentScene());
 
+        // Folders have non-negative ids, their items are on screen as well
+        if (item instanceof ShortcutInfo && app.getIconCache() != null &&
+                (container == LauncherSettings.Favorites.CONTAINER_DESKTOP ||
+                container == LauncherSettings.Favorites.CONTAINER_HOTSEAT || container >= 0)) {
+            app.getIconCache().pinComponent(((ShortcutInfo) item).getComponentName());
+        }
+
         final StackTraceElement[] stackTrace = new Throwable().getStackTrace();
 
         Runnable r = new Runnable() {
@@ -767,6 +1014,7 @@ public class LauncherModel extends BroadcastReceiver {
 	                            }
 	                            break;
 	                    }
+	                    publishBgSnapshotLocked();
 	                }
                 }
             }
@@ -812,6 +1060,9 @@ public class LauncherModel extends BroadcastReceiver {
 
         final ContentResolver cr = context.getContentResolver();
         final Uri uriToDelete = LauncherSettings.Favorites.getContentUri(item.id, false);
+        if (item instanceof ShortcutInfo) {
+            unpinIcon(context, (ShortcutInfo) item);
+        }
         Runnable r = new Runnable() {
             public void run() {
                 String transaction = "DbDebug    Delete item (" + item.title + ") from db, id: "
@@ -820,6 +1071,7 @@ public class LauncherModel extends BroadcastReceiver {
                 Launcher.sDumpLogs.add(transaction);
                 Log.d(TAG, transaction);
 
+                dropPendingDbUpdate(item.id);
                 cr.delete(uriToDelete, null, null);
 
                 // Lock on mBgLock *after* the db operation
@@ -849,6 +1101,7 @@ public class LauncherModel extends BroadcastReceiver {
                     }
                     sBgItemsIdMap.remove(item.id);
                     sBgDbIconCache.remove(item);
+                    publishBgSnapshotLocked();
                 }
                 if (LauncherLog.DEBUG) {
                     LauncherLog.d(TAG, "deleteItemFromDatabase sAppWidgets.remove = " + item
@@ -859,6 +1112,14 @@ public class LauncherModel extends BroadcastReceiver {
         runOnWorkerThread(r);
     }
 
+    private static void unpinIcon(Context context, ShortcutInfo item) {
+        final IconCache iconCache =
+                ((LauncherApplication) context.getApplicationContext()).getIconCache();
+        if (iconCache != null) {
+            iconCache.unpinComponent(item.getComponentName());
+        }
+    }
+
     /**
      * Remove the contents of the specified folder from the database
      */
@@ -868,9 +1129,14 @@ public class LauncherModel extends BroadcastReceiver {
         }
 
         final ContentResolver cr = context.getContentResolver();
+        // Called on the main thread, where the folder contents are changed
+        for (int i = 0; i < info.contents.size(); i++) {
+            unpinIcon(context, info.contents.get(i));
+        }
 
         Runnable r = new Runnable() {
             public void run() {
+                dropPendingDbUpdate(info.id);
                 cr.delete(LauncherSettings.Favorites.getContentUri(info.id, false), null, null);
                 // Lock on mBgLock *after* the db operation
                 synchronized (sBgLock) {
@@ -881,6 +1147,7 @@ public class LauncherModel extends BroadcastReceiver {
                     if (LauncherLog.DEBUG) {
                         LauncherLog.d(TAG, "deleteFolderContentsFromDatabase sBgItemsIdMap.remove = " + info.id);
                     }
+                    publishBgSnapshotLocked();
                 }
 
                 cr.delete(LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
@@ -888,12 +1155,14 @@ public class LauncherModel extends BroadcastReceiver {
                 // Lock on mBgLock *after* the db operation
                 synchronized (sBgLock) {
                     for (ItemInfo childInfo : info.contents) {
+                        dropPendingDbUpdate(childInfo.id);
                         sBgItemsIdMap.remove(childInfo.id);
                         sBgDbIconCache.remove(childInfo);
                         if (LauncherLog.DEBUG) {
                             LauncherLog.d(TAG, "deleteFolderContentsFromDatabase sItemsIdMap.remove = " + childInfo.id);
                         }
                     }
+                    publishBgSnapshotLocked();
                 }
             }
         };
@@ -1234,6 +1503,13 @@ public class LauncherModel extends BroadcastReceiver {
             }
 
             if (!mWorkspaceLoaded) {
+                final Callbacks callbacks = mCallbacks.get();
+                if (mWorkspaceIncrementalLoad && callbacks != null) {
+                    // Loads and binds the current page before the rest of the workspace
+                    loadAndBindWorkspaceIncrementally(callbacks);
+                    return;
+                }
+
                 loadWorkspace();
                 synchronized (LoaderTask.this) {
                     if (mStopped) {
@@ -1512,281 +1788,396 @@ public class LauncherModel extends BroadcastReceiver {
         private void loadWorkspace() {
             final long t = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
 
+            // Make sure the default workspace is loaded, if needed, and that the rows we are
+            // about to read have no queued updates
+            mApp.getLauncherProvider().loadDefaultFavoritesIfNecessary(0);
+            flushPendingDbUpdates();
+
+            // +1 for the hotseat (it can be larger than the workspace)
+            final ItemInfo occupied[][][] =
+                    new ItemInfo[Launcher.SCREEN_COUNT + 1][mCellCountX + 1][mCellCountY + 1];
+
+            synchronized (sBgLock) {
+                clearWorkspaceItemsLocked();
+
+                /// M: modified for scene feature, query all items from db
+                /// if the scene values of the item equals the current scene.
+                loadWorkspaceItemsLocked(getSceneSelection(), occupied);
+                publishBgSnapshotLocked();
+            }
+
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis()-t) + "ms");
+                dumpWorkspaceLayout(occupied);
+            }
+        }
+
+        /**
+         * Loads the current screen and the hotseat, binds them, and only then loads and binds
+         * the items of all the other screens.  The first query only touches the rows of one
+         * screen through the (scene, container, screen) index, so the time until the first
+         * page is bound does not grow with the number of items on the other screens.
+         */
+        private void loadAndBindWorkspaceIncrementally(final Callbacks oldCallbacks) {
+            final long t = SystemClock.uptimeMillis();
+            final int currentScreen = oldCallbacks.getCurrentWorkspaceScreen();
+            final String sceneSelection = getSceneSelection();
+            final String firstPageSelection = getFirstPageSelection(currentScreen);
+
+            // Make sure the default workspace is loaded, if needed, and that the rows we are
+            // about to read have no queued updates
+            mApp.getLauncherProvider().loadDefaultFavoritesIfNecessary(0);
+            flushPendingDbUpdates();
+
+            // +1 for the hotseat (it can be larger than the workspace)
+            final ItemInfo occupied[][][] =
+                    new ItemInfo[Launcher.SCREEN_COUNT + 1][mCellCountX + 1][mCellCountY + 1];
+
+            synchronized (sBgLock) {
+                clearWorkspaceItemsLocked();
+                loadWorkspaceItemsLocked(sceneSelection + " AND (" + firstPageSelection + ")",
+                        occupied);
+                publishBgSnapshotLocked();
+            }
+            synchronized (LoaderTask.this) {
+                if (mStopped) {
+                    LauncherLog.d(TAG, "loadAndBindWorkspaceIncrementally returned by stop flag.");
+                    return;
+                }
+            }
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "loaded first page in " + (SystemClock.uptimeMillis() - t) + "ms");
+            }
+
+            unbindWorkspaceItemsOnMainThread();
+            bindWorkspaceStarted(oldCallbacks);
+            bindWorkspaceScreens(oldCallbacks, currentScreen, true, false, false);
+            if (DEBUG_LOADERS) {
+                runOnMainThread(new Runnable() {
+                    public void run() {
+                        Log.d(TAG, "bound first page in "
+                                + (SystemClock.uptimeMillis() - t) + "ms");
+                    }
+                }, MAIN_THREAD_BINDING_RUNNABLE);
+            }
+
+            // The first selection can be NULL for rows without a container, "IS NOT 1" keeps
+            // those in the second pass as the full load would.
+            synchronized (sBgLock) {
+                loadWorkspaceItemsLocked(sceneSelection + " AND (" + firstPageSelection
+                        + ") IS NOT 1", occupied);
+                publishBgSnapshotLocked();
+            }
+            synchronized (LoaderTask.this) {
+                if (mStopped) {
+                    LauncherLog.d(TAG, "loadAndBindWorkspaceIncrementally returned by stop flag.");
+                    return;
+                }
+                mWorkspaceLoaded = true;
+            }
+            if (DEBUG_LOADERS) {
+                Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis() - t) + "ms");
+                dumpWorkspaceLayout(occupied);
+            }
+
+            bindWorkspaceScreens(oldCallbacks, currentScreen, false, true, false);
+            bindWorkspaceFinished(oldCallbacks, t, false);
+        }
+
+        /** Selects the favorites of the current scene. */
+        private String getSceneSelection() {
+            return LauncherSettings.Favorites.SCENE + " = '" + Launcher.getCurrentScene() + "'";
+        }
+
+        /**
+         * Selects the items of the hotseat and of the given screen, including the contents of
+         * the folders placed there.
+         */
+        private String getFirstPageSelection(int screen) {
+            final String onPage = "(" + LauncherSettings.Favorites.CONTAINER + " = "
+                    + LauncherSettings.Favorites.CONTAINER_HOTSEAT + " OR ("
+                    + LauncherSettings.Favorites.CONTAINER + " = "
+                    + LauncherSettings.Favorites.CONTAINER_DESKTOP + " AND "
+                    + LauncherSettings.Favorites.SCREEN + " = " + screen + "))";
+            return onPage + " OR " + LauncherSettings.Favorites.CONTAINER + " IN (SELECT "
+                    + LauncherSettings.Favorites._ID + " FROM " + LauncherProvider.TABLE_FAVORITES
+                    + " WHERE " + getSceneSelection() + " AND " + onPage + " AND "
+                    + LauncherSettings.Favorites.ITEM_TYPE + " = "
+                    + LauncherSettings.Favorites.ITEM_TYPE_FOLDER + ")";
+        }
+
+        private void clearWorkspaceItemsLocked() {
+            sBgWorkspaceItems.clear();
+            sBgAppWidgets.clear();
+            sBgFolders.clear();
+            sBgItemsIdMap.clear();
+            sBgDbIconCache.clear();
+            sBgLaunchFreqAppsItems.clear();
+            sBgLaunchFreqAppsIndex.clear();
+        }
+
+        /**
+         * Adds the favorites matching the selection to the background collections, the caller
+         * must hold sBgLock and publish the snapshot afterwards.  occupied is shared by all the
+         * calls of one load so that overlapping items are detected across them.
+         */
+        private void loadWorkspaceItemsLocked(String selection, ItemInfo occupied[][][]) {
             final Context context = mContext;
             final ContentResolver contentResolver = context.getContentResolver();
             final PackageManager manager = context.getPackageManager();
             final AppWidgetManager widgets = AppWidgetManager.getInstance(context);
             final boolean isSafeMode = manager.isSafeMode();
 
-            // Make sure the default workspace is loaded, if needed
-            mApp.getLauncherProvider().loadDefaultFavoritesIfNecessary(0);
+            final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
 
-            synchronized (sBgLock) {
-                sBgWorkspaceItems.clear();
-                sBgAppWidgets.clear();
-                sBgFolders.clear();
-                sBgItemsIdMap.clear();
-                sBgDbIconCache.clear();
-                sBgLaunchFreqAppsItems.clear();
+            final Cursor c = contentResolver.query(LauncherSettings.Favorites.CONTENT_URI,
+                    null, selection, null, null);
 
-                final ArrayList<Long> itemsToRemove = new ArrayList<Long>();
+            try {
+                final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
+                final int intentIndex = c.getColumnIndexOrThrow
+                        (LauncherSettings.Favorites.INTENT);
+                final int titleIndex = c.getColumnIndexOrThrow
+                        (LauncherSettings.Favorites.TITLE);
+                final int iconTypeIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ICON_TYPE);
+                final int iconIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
+                final int iconHashIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ICON_HASH);
+                final int iconPackageIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ICON_PACKAGE);
+                final int iconResourceIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ICON_RESOURCE);
+                final int containerIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.CONTAINER);
+                final int itemTypeIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.ITEM_TYPE);
+                final int appWidgetIdIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.APPWIDGET_ID);
+                final int screenIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.SCREEN);
+                final int cellXIndex = c.getColumnIndexOrThrow
+                        (LauncherSettings.Favorites.CELLX);
+                final int cellYIndex = c.getColumnIndexOrThrow
+                        (LauncherSettings.Favorites.CELLY);
+                final int spanXIndex = c.getColumnIndexOrThrow
+                        (LauncherSettings.Favorites.SPANX);
+                final int spanYIndex = c.getColumnIndexOrThrow(
+                        LauncherSettings.Favorites.SPANY);
                 
-                /// M: modified for scene feature, query all items from db
-                /// if the scene values of the item equals the current scene.
-                final Cursor c = contentResolver.query(LauncherSettings.Favorites.CONTENT_URI,
-                		null, "scene = '" + Launcher.getCurrentScene() + "'", null, null);
-
-                // +1 for the hotseat (it can be larger than the workspace)
-                // Load workspace in reverse order to ensure that latest items are loaded first (and
-                // before any earlier duplicates)
-                final ItemInfo occupied[][][] =
-                        new ItemInfo[Launcher.SCREEN_COUNT + 1][mCellCountX + 1][mCellCountY + 1];
+                final int freqIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.LAUNCH_FREQ);
+                final int lastTimeIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.LAST_LAUNCH_TIME);
+                //final int uriIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.URI);
+                //final int displayModeIndex = c.getColumnIndexOrThrow(
+                //        LauncherSettings.Favorites.DISPLAY_MODE);
+
+                ShortcutInfo info;
+                String intentDescription;
+                LauncherAppWidgetInfo appWidgetInfo;
+                int container;
+                long id;
+                Intent intent;
+
+                while (!mStopped && c.moveToNext()) {
+                    try {
+                        int itemType = c.getInt(itemTypeIndex);
 
-                try {
-                    final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
-                    final int intentIndex = c.getColumnIndexOrThrow
-                            (LauncherSettings.Favorites.INTENT);
-                    final int titleIndex = c.getColumnIndexOrThrow
-                            (LauncherSettings.Favorites.TITLE);
-                    final int iconTypeIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.ICON_TYPE);
-                    final int iconIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
-                    final int iconPackageIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.ICON_PACKAGE);
-                    final int iconResourceIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.ICON_RESOURCE);
-                    final int containerIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.CONTAINER);
-                    final int itemTypeIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.ITEM_TYPE);
-                    final int appWidgetIdIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.APPWIDGET_ID);
-                    final int screenIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.SCREEN);
-                    final int cellXIndex = c.getColumnIndexOrThrow
-                            (LauncherSettings.Favorites.CELLX);
-                    final int cellYIndex = c.getColumnIndexOrThrow
-                            (LauncherSettings.Favorites.CELLY);
-                    final int spanXIndex = c.getColumnIndexOrThrow
-                            (LauncherSettings.Favorites.SPANX);
-                    final int spanYIndex = c.getColumnIndexOrThrow(
-                            LauncherSettings.Favorites.SPANY);
-                    
-                    final int freqIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.LAUNCH_FREQ);
-                    final int lastTimeIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.LAST_LAUNCH_TIME);
-                    //final int uriIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.URI);
-                    //final int displayModeIndex = c.getColumnIndexOrThrow(
-                    //        LauncherSettings.Favorites.DISPLAY_MODE);
-
-                    ShortcutInfo info;
-                    String intentDescription;
-                    LauncherAppWidgetInfo appWidgetInfo;
-                    int container;
-                    long id;
-                    Intent intent;
-
-                    while (!mStopped && c.moveToNext()) {
-                        try {
-                            int itemType = c.getInt(itemTypeIndex);
-
-                            switch (itemType) {
-                            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
-                            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
-                                intentDescription = c.getString(intentIndex);
-                                try {
-                                    intent = Intent.parseUri(intentDescription, 0);
-                                } catch (URISyntaxException e) {
-                                    continue;
-                                }
+                        switch (itemType) {
+                        case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                        case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                            intentDescription = c.getString(intentIndex);
+                            try {
+                                intent = Intent.parseUri(intentDescription, 0);
+                            } catch (URISyntaxException e) {
+                                continue;
+                            }
 
-                                if (itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
-                                    info = getShortcutInfo(manager, intent, context, c, iconIndex,
-                                            titleIndex, mLabelCache);
-                                } else {
-                                    info = getShortcutInfo(c, context, iconTypeIndex,
-                                            iconPackageIndex, iconResourceIndex, iconIndex,
-                                            titleIndex);
-
-                                    // App shortcuts that used to be automatically added to Launcher
-                                    // didn't always have the correct intent flags set, so do that
-                                    // here
-                                    if (intent.getAction() != null &&
-                                        intent.getCategories() != null &&
-                                        intent.getAction().equals(Intent.ACTION_MAIN) &&
-                                        intent.getCategories().contains(Intent.CATEGORY_LAUNCHER)) {
-                                        intent.addFlags(
-                                            Intent.FLAG_ACTIVITY_NEW_TASK |
-                                            Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-                                    }
+                            if (itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+                                info = getShortcutInfo(manager, intent, context, c, iconIndex,
+                                        titleIndex, mLabelCache);
+                            } else {
+                                info = getShortcutInfo(c, context, iconTypeIndex,
+                                        iconPackageIndex, iconResourceIndex, iconIndex,
+                                        titleIndex);
+
+                                // App shortcuts that used to be automatically added to Launcher
+                                // didn't always have the correct intent flags set, so do that
+                                // here
+                                if (intent.getAction() != null &&
+                                    intent.getCategories() != null &&
+                                    intent.getAction().equals(Intent.ACTION_MAIN) &&
+                                    intent.getCategories().contains(Intent.CATEGORY_LAUNCHER)) {
+                                    intent.addFlags(
+                                        Intent.FLAG_ACTIVITY_NEW_TASK |
+                                        Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
                                 }
+                            }
 
-                                if (info != null) {
-                                    info.intent = intent;
-                                    info.id = c.getLong(idIndex);
-                                    container = c.getInt(containerIndex);
-                                    info.container = container;
-                                    info.screen = c.getInt(screenIndex);
-                                    info.cellX = c.getInt(cellXIndex);
-                                    info.cellY = c.getInt(cellYIndex);
-                                    
-                                    if(container == LauncherSettings.Favorites.CONTAINER_APPSFREQ){
+                            if (info != null) {
+                                info.intent = intent;
+                                info.id = c.getLong(idIndex);
+                                container = c.getInt(containerIndex);
+                                info.container = container;
+                                info.screen = c.getInt(screenIndex);
+                                info.cellX = c.getInt(cellXIndex);
+                                info.cellY = c.getInt(cellYIndex);
+                                
+                                if(container == LauncherSettings.Favorites.CONTAINER_APPSFREQ){
 	                                    info.launchedFreq = c.getInt(freqIndex);
 	                                    info.lastLaunchTime = c.getLong(lastTimeIndex);
-	                                    addOrReplaceFreqAppInfo(info);
+	                                    addOrReplaceFreqAppInfoLocked(info);
 	                                    break;
-                                    }
-
-                                    // check & update map of what's occupied
-                                    if (!checkItemPlacement(occupied, info)) {
-                                        break;
-                                    }
-
-                                    switch (container) {
-                                    case LauncherSettings.Favorites.CONTAINER_DESKTOP:
-                                    case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
-                                        sBgWorkspaceItems.add(info);
-                                        addOrReplaceFreqAppInfo(info);
-                                        break;
-                                    default:
-                                        // Item is in a user folder
-                                        FolderInfo folderInfo =
-                                                findOrMakeFolder(sBgFolders, container);
-                                        folderInfo.add(info);
-                                        break;
-                                    }
-                                    sBgItemsIdMap.put(info.id, info);
-
-                                    // now that we've loaded everthing re-save it with the
-                                    // icon in case it disappears somehow.
-                                    queueIconToBeChecked(sBgDbIconCache, info, c, iconIndex);
-                                } else {
-                                    // Failed to load the shortcut, probably because the
-                                    // activity manager couldn't resolve it (maybe the app
-                                    // was uninstalled), or the db row was somehow screwed up.
-                                    // Delete it.
-                                    id = c.getLong(idIndex);
-                                    Log.e(TAG, "Error loading shortcut " + id + ", removing it");
-                                    contentResolver.delete(LauncherSettings.Favorites.getContentUri(
-                                                id, false), null, null);
                                 }
-                                break;
-
-                            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
-                                id = c.getLong(idIndex);
-                                FolderInfo folderInfo = findOrMakeFolder(sBgFolders, id);
-
-                                folderInfo.title = c.getString(titleIndex);
-                                folderInfo.id = id;
-                                container = c.getInt(containerIndex);
-                                folderInfo.container = container;
-                                folderInfo.screen = c.getInt(screenIndex);
-                                folderInfo.cellX = c.getInt(cellXIndex);
-                                folderInfo.cellY = c.getInt(cellYIndex);
 
                                 // check & update map of what's occupied
-                                if (!checkItemPlacement(occupied, folderInfo)) {
+                                if (!checkItemPlacement(occupied, info)) {
                                     break;
                                 }
+
                                 switch (container) {
-                                    case LauncherSettings.Favorites.CONTAINER_DESKTOP:
-                                    case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
-                                        sBgWorkspaceItems.add(folderInfo);
-                                        break;
-                                }
-                                sBgItemsIdMap.put(folderInfo.id, folderInfo);
-                                sBgFolders.put(folderInfo.id, folderInfo);
-                                if (LauncherLog.DEBUG) {
-                                	LauncherLog.d(TAG, "loadWorkspace sBgItemsIdMap.put = " + folderInfo);
+                                case LauncherSettings.Favorites.CONTAINER_DESKTOP:
+                                case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
+                                    sBgWorkspaceItems.add(info);
+                                    addOrReplaceFreqAppInfoLocked(info);
+                                    break;
+                                default:
+                                    // Item is in a user folder
+                                    FolderInfo folderInfo =
+                                            findOrMakeFolder(sBgFolders, container);
+                                    folderInfo.add(info);
+                                    break;
                                 }
-                                break;
-                            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
-                                // Read all Launcher-specific widget details
-                                int appWidgetId = c.getInt(appWidgetIdIndex);
+                                sBgItemsIdMap.put(info.id, info);
+
+                                // now that we've loaded everthing re-save it with the
+                                // icon in case it disappears somehow.
+                                queueIconToBeChecked(sBgDbIconCache, info, c, iconHashIndex);
+                            } else {
+                                // Failed to load the shortcut, probably because the
+                                // activity manager couldn't resolve it (maybe the app
+                                // was uninstalled), or the db row was somehow screwed up.
+                                // Delete it.
                                 id = c.getLong(idIndex);
+                                Log.e(TAG, "Error loading shortcut " + id + ", removing it");
+                                contentResolver.delete(LauncherSettings.Favorites.getContentUri(
+                                            id, false), null, null);
+                            }
+                            break;
 
-                                final AppWidgetProviderInfo provider =
-                                        widgets.getAppWidgetInfo(appWidgetId);
-
-                                if (!isSafeMode && (provider == null || provider.provider == null ||
-                                        provider.provider.getPackageName() == null)) {
-                                    String log = "Deleting widget that isn't installed anymore: id="
-                                        + id + " appWidgetId=" + appWidgetId;
-                                    Log.e(TAG, log);
-                                    Launcher.sDumpLogs.add(log);
-                                    itemsToRemove.add(id);
-                                } else {
-                                    appWidgetInfo = new LauncherAppWidgetInfo(appWidgetId,
-                                            provider.provider);
-                                    appWidgetInfo.id = id;
-                                    appWidgetInfo.screen = c.getInt(screenIndex);
-                                    appWidgetInfo.cellX = c.getInt(cellXIndex);
-                                    appWidgetInfo.cellY = c.getInt(cellYIndex);
-                                    appWidgetInfo.spanX = c.getInt(spanXIndex);
-                                    appWidgetInfo.spanY = c.getInt(spanYIndex);
-                                    int[] minSpan = Launcher.getMinSpanForWidget(context, provider);
-                                    appWidgetInfo.minSpanX = minSpan[0];
-                                    appWidgetInfo.minSpanY = minSpan[1];
-
-                                    container = c.getInt(containerIndex);
-                                    if (container != LauncherSettings.Favorites.CONTAINER_DESKTOP &&
-                                        container != LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                                        Log.e(TAG, "Widget found where container != " +
-                                            "CONTAINER_DESKTOP nor CONTAINER_HOTSEAT - ignoring!");
-                                        continue;
-                                    }
-                                    appWidgetInfo.container = c.getInt(containerIndex);
-
-                                    // check & update map of what's occupied
-                                    if (!checkItemPlacement(occupied, appWidgetInfo)) {
-                                        break;
-                                    }
-                                    sBgItemsIdMap.put(appWidgetInfo.id, appWidgetInfo);
-                                    sBgAppWidgets.add(appWidgetInfo);
-                                }
+                        case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                            id = c.getLong(idIndex);
+                            FolderInfo folderInfo = findOrMakeFolder(sBgFolders, id);
+
+                            folderInfo.title = c.getString(titleIndex);
+                            folderInfo.id = id;
+                            container = c.getInt(containerIndex);
+                            folderInfo.container = container;
+                            folderInfo.screen = c.getInt(screenIndex);
+                            folderInfo.cellX = c.getInt(cellXIndex);
+                            folderInfo.cellY = c.getInt(cellYIndex);
+
+                            // check & update map of what's occupied
+                            if (!checkItemPlacement(occupied, folderInfo)) {
                                 break;
                             }
-                        } catch (Exception e) {
-                            Log.w(TAG, "Desktop items loading interrupted:", e);
+                            switch (container) {
+                                case LauncherSettings.Favorites.CONTAINER_DESKTOP:
+                                case LauncherSettings.Favorites.CONTAINER_HOTSEAT:
+                                    sBgWorkspaceItems.add(folderInfo);
+                                    break;
+                            }
+                            sBgItemsIdMap.put(folderInfo.id, folderInfo);
+                            sBgFolders.put(folderInfo.id, folderInfo);
+                            if (LauncherLog.DEBUG) {
+                            	LauncherLog.d(TAG, "loadWorkspace sBgItemsIdMap.put = " + folderInfo);
+                            }
+                            break;
+                        case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                            // Read all Launcher-specific widget details
+                            int appWidgetId = c.getInt(appWidgetIdIndex);
+                            id = c.getLong(idIndex);
+
+                            final AppWidgetProviderInfo provider =
+                                    widgets.getAppWidgetInfo(appWidgetId);
+
+                            if (!isSafeMode && (provider == null || provider.provider == null ||
+                                    provider.provider.getPackageName() == null)) {
+                                String log = "Deleting widget that isn't installed anymore: id="
+                                    + id + " appWidgetId=" + appWidgetId;
+                                Log.e(TAG, log);
+                                Launcher.sDumpLogs.add(log);
+                                itemsToRemove.add(id);
+                            } else {
+                                appWidgetInfo = new LauncherAppWidgetInfo(appWidgetId,
+                                        provider.provider);
+                                appWidgetInfo.id = id;
+                                appWidgetInfo.screen = c.getInt(screenIndex);
+                                appWidgetInfo.cellX = c.getInt(cellXIndex);
+                                appWidgetInfo.cellY = c.getInt(cellYIndex);
+                                appWidgetInfo.spanX = c.getInt(spanXIndex);
+                                appWidgetInfo.spanY = c.getInt(spanYIndex);
+                                int[] minSpan = Launcher.getMinSpanForWidget(context, provider);
+                                appWidgetInfo.minSpanX = minSpan[0];
+                                appWidgetInfo.minSpanY = minSpan[1];
+
+                                container = c.getInt(containerIndex);
+                                if (container != LauncherSettings.Favorites.CONTAINER_DESKTOP &&
+                                    container != LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
+                                    Log.e(TAG, "Widget found where container != " +
+                                        "CONTAINER_DESKTOP nor CONTAINER_HOTSEAT - ignoring!");
+                                    continue;
+                                }
+                                appWidgetInfo.container = c.getInt(containerIndex);
+
+                                // check & update map of what's occupied
+                                if (!checkItemPlacement(occupied, appWidgetInfo)) {
+                                    break;
+                                }
+                                sBgItemsIdMap.put(appWidgetInfo.id, appWidgetInfo);
+                                sBgAppWidgets.add(appWidgetInfo);
+                            }
+                            break;
                         }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Desktop items loading interrupted:", e);
                     }
-                } finally {
-                    c.close();
                 }
+            } finally {
+                c.close();
+            }
 
-                if (itemsToRemove.size() > 0) {
-                    ContentProviderClient client = contentResolver.acquireContentProviderClient(
-                                    LauncherSettings.Favorites.CONTENT_URI);
-                    // Remove dead items
-                    for (long id : itemsToRemove) {
-                        if (DEBUG_LOADERS) {
-                            Log.d(TAG, "Removed id = " + id);
-                        }
-                        // Don't notify content observers
-                        try {
-                            client.delete(LauncherSettings.Favorites.getContentUri(id, false),
-                                    null, null);
-                        } catch (RemoteException e) {
-                            Log.w(TAG, "Could not remove id = " + id);
-                        }
+            if (itemsToRemove.size() > 0) {
+                ContentProviderClient client = contentResolver.acquireContentProviderClient(
+                                LauncherSettings.Favorites.CONTENT_URI);
+                // Remove dead items
+                for (long id : itemsToRemove) {
+                    if (DEBUG_LOADERS) {
+                        Log.d(TAG, "Removed id = " + id);
+                    }
+                    // Don't notify content observers
+                    try {
+                        client.delete(LauncherSettings.Favorites.getContentUri(id, false),
+                                null, null);
+                    } catch (RemoteException e) {
+                        Log.w(TAG, "Could not remove id = " + id);
                     }
                 }
+            }
+        }
 
-                if (DEBUG_LOADERS) {
-                    Log.d(TAG, "loaded workspace in " + (SystemClock.uptimeMillis()-t) + "ms");
-                    Log.d(TAG, "workspace layout: ");
-                    for (int y = 0; y < mCellCountY; y++) {
-                        String line = "";
-                        for (int s = 0; s < Launcher.SCREEN_COUNT; s++) {
-                            if (s > 0) {
-                                line += " | ";
-                            }
-                            for (int x = 0; x < mCellCountX; x++) {
-                                line += ((occupied[s][x][y] != null) ? "#" : ".");
-                            }
-                        }
-                        Log.d(TAG, "[ " + line + " ]");
+        private void dumpWorkspaceLayout(ItemInfo occupied[][][]) {
+            Log.d(TAG, "workspace layout: ");
+            for (int y = 0; y < mCellCountY; y++) {
+                String line = "";
+                for (int s = 0; s < Launcher.SCREEN_COUNT; s++) {
+                    if (s > 0) {
+                        line += " | ";
+                    }
+                    for (int x = 0; x < mCellCountX; x++) {
+                        line += ((occupied[s][x][y] != null) ? "#" : ".");
                     }
                 }
+                Log.d(TAG, "[ " + line + " ]");
             }
         }
 
@@ -1796,31 +2187,16 @@ public class LauncherModel extends BroadcastReceiver {
                 ArrayList<ItemInfo> allWorkspaceItems,
                 ArrayList<ItemInfo> currentScreenItems,
                 ArrayList<ItemInfo> otherScreenItems) {
-            // Purge any null ItemInfos
-            Iterator<ItemInfo> iter = allWorkspaceItems.iterator();
-            while (iter.hasNext()) {
-                ItemInfo i = iter.next();
-                if (i == null) {
-                    iter.remove();
-                }
-            }
-
             // If we aren't filtering on a screen, then the set of items to load is the full set of
             // items given.
             if (currentScreen < 0) {
                 currentScreenItems.addAll(allWorkspaceItems);
             }
 
-            // Order the set of items by their containers first, this allows use to walk through the
-            // list sequentially, build up a list of containers that are in the specified screen,
-            // as well as all items in those containers.
+            // The snapshot is ordered by container and has no nulls, this allows use to walk
+            // through the list sequentially, build up a list of containers that are in the
+            // specified screen, as well as all items in those containers.
             Set<Long> itemsOnScreen = new HashSet<Long>();
-            Collections.sort(allWorkspaceItems, new Comparator<ItemInfo>() {
-                @Override
-                public int compare(ItemInfo lhs, ItemInfo rhs) {
-                    return (int) (lhs.container - rhs.container);
-                }
-            });
             for (ItemInfo info : allWorkspaceItems) {
                 if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
                     if (info.screen == currentScreen) {
@@ -1913,16 +2289,18 @@ public class LauncherModel extends BroadcastReceiver {
         private void bindWorkspaceItems(final Callbacks oldCallbacks,
                 final ArrayList<ItemInfo> workspaceItems,
                 final ArrayList<LauncherAppWidgetInfo> appWidgets,
-                final HashMap<Long, FolderInfo> folders,
+                final HashMap<Long, FolderInfo> folders, boolean currentPage,
                 ArrayList<Runnable> deferredBindRunnables) {
 
             final boolean postOnMainThread = (deferredBindRunnables != null);
+            // Without frame pacing keep the fixed size chunks, to compare against
+            final int chunk = mFrameBudgetedBind ? 1 : ITEMS_CHUNK;
 
             // Bind the workspace items
             int N = workspaceItems.size();
-            for (int i = 0; i < N; i += ITEMS_CHUNK) {
+            for (int i = 0; i < N; i += chunk) {
                 final int start = i;
-                final int chunkSize = (i+ITEMS_CHUNK <= N) ? ITEMS_CHUNK : (N-i);
+                final int chunkSize = (i+chunk <= N) ? chunk : (N-i);
                 final Runnable r = new Runnable() {
                     @Override
                     public void run() {
@@ -1932,11 +2310,8 @@ public class LauncherModel extends BroadcastReceiver {
                         }
                     }
                 };
-                if (postOnMainThread) {
-                    deferredBindRunnables.add(r);
-                } else {
-                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
-                }
+                postBindStep(WorkspaceBindScheduler.STEP_ITEM, currentPage, r,
+                        deferredBindRunnables);
             }
 
             // Bind the folders
@@ -1949,11 +2324,8 @@ public class LauncherModel extends BroadcastReceiver {
                         }
                     }
                 };
-                if (postOnMainThread) {
-                    deferredBindRunnables.add(r);
-                } else {
-                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
-                }
+                postBindStep(WorkspaceBindScheduler.STEP_FOLDERS, currentPage, r,
+                        deferredBindRunnables);
             }
 
             // Bind the widgets, one at a time
@@ -1968,12 +2340,62 @@ public class LauncherModel extends BroadcastReceiver {
                         }
                     }
                 };
-                if (postOnMainThread) {
-                    deferredBindRunnables.add(r);
-                } else {
-                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+                postBindStep(WorkspaceBindScheduler.STEP_WIDGET, currentPage, r,
+                        deferredBindRunnables);
+            }
+        }
+
+        /**
+         * Queues a bind step, either on the main thread or in deferredBindRunnables if that is
+         * given.  Frame paced steps carry a cost estimate for the deferred handler.
+         */
+        private void postBindStep(int kind, boolean currentPage, Runnable r,
+                ArrayList<Runnable> deferredBindRunnables) {
+            if (mFrameBudgetedBind) {
+                r = mBindScheduler.newStep(kind, currentPage, r);
+            }
+            if (deferredBindRunnables != null) {
+                deferredBindRunnables.add(r);
+            } else {
+                runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+            }
+        }
+
+        /**
+         * Pins the icon cache entries of the shortcuts on the workspace, the hotseat and in
+         * their folders, so that trimming the cache never evicts an icon that is on screen.
+         */
+        private void pinWorkspaceIcons(ArrayList<ItemInfo> workspaceItems,
+                final HashMap<Long, FolderInfo> folders) {
+            if (mIconCache == null) {
+                return;
+            }
+            // One entry per item, so that removing one of two items with the same component
+            // keeps it pinned
+            final ArrayList<ComponentName> components = new ArrayList<ComponentName>();
+            for (ItemInfo info : workspaceItems) {
+                if (info instanceof ShortcutInfo) {
+                    ComponentName cn = ((ShortcutInfo) info).getComponentName();
+                    if (cn != null) {
+                        components.add(cn);
+                    }
                 }
             }
+            // Folder contents are changed on the main thread, so read them there, ahead of
+            // the bind runnables posted after this
+            runOnMainThread(new Runnable() {
+                public void run() {
+                    for (FolderInfo folder : folders.values()) {
+                        for (ShortcutInfo item : folder.contents) {
+                            ComponentName cn = item.getComponentName();
+                            if (cn != null) {
+                                components.add(cn);
+                            }
+                        }
+                    }
+                    mIconCache.setPinnedComponents(components);
+                }
+            }, MAIN_THREAD_BINDING_RUNNABLE);
         }
 
         /**
@@ -1981,7 +2403,6 @@ public class LauncherModel extends BroadcastReceiver {
          */
         private void bindWorkspace(int synchronizeBindPage) {
             final long t = SystemClock.uptimeMillis();
-            Runnable r;
 
             // Don't use these two variables in any of the callback runnables.
             // Otherwise we hold a reference to them.
@@ -1999,17 +2420,40 @@ public class LauncherModel extends BroadcastReceiver {
             // Load all the items that are on the current page first (and in the process, unbind
             // all the existing workspace items before we call startBinding() below.
             unbindWorkspaceItemsOnMainThread();
-            ArrayList<ItemInfo> workspaceItems = new ArrayList<ItemInfo>();
-            ArrayList<LauncherAppWidgetInfo> appWidgets =
-                    new ArrayList<LauncherAppWidgetInfo>();
-            HashMap<Long, FolderInfo> folders = new HashMap<Long, FolderInfo>();
-            HashMap<Long, ItemInfo> itemsIdMap = new HashMap<Long, ItemInfo>();
-            synchronized (sBgLock) {
-                workspaceItems.addAll(sBgWorkspaceItems);
-                appWidgets.addAll(sBgAppWidgets);
-                folders.putAll(sBgFolders);
-                itemsIdMap.putAll(sBgItemsIdMap);
-            }
+            bindWorkspaceStarted(oldCallbacks);
+            bindWorkspaceScreens(oldCallbacks, currentScreen, true, true, isLoadingSynchronously);
+            bindWorkspaceFinished(oldCallbacks, t, isLoadingSynchronously);
+        }
+
+        /** Tells the workspace that we're about to start binding items. */
+        private void bindWorkspaceStarted(final Callbacks oldCallbacks) {
+            final Runnable r = new Runnable() {
+                public void run() {
+                    Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                    if (callbacks != null) {
+                        mBindScheduler.onBindStarted();
+                        callbacks.startBinding();
+                    }
+                }
+            };
+            runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+        }
+
+        /**
+         * Binds the loaded items of the current screen and the hotseat, the items of all the
+         * other screens, or both.  If isLoadingSynchronously is set the other screens are
+         * queued in mDeferredBindRunnables instead of being posted.
+         */
+        private void bindWorkspaceScreens(final Callbacks oldCallbacks, final int currentScreen,
+                boolean bindCurrent, boolean bindOthers, boolean isLoadingSynchronously) {
+            Runnable r;
+
+            // Only read from here on, so the snapshot collections can be used as they are
+            final BgModelSnapshot snapshot = getBgSnapshot();
+            final ArrayList<ItemInfo> workspaceItems = snapshot.workspaceItems;
+            final ArrayList<LauncherAppWidgetInfo> appWidgets = snapshot.appWidgets;
+            final HashMap<Long, FolderInfo> folders = snapshot.folders;
+            final HashMap<Long, ItemInfo> itemsIdMap = snapshot.itemsIdMap;
 
             ArrayList<ItemInfo> currentWorkspaceItems = new ArrayList<ItemInfo>();
             ArrayList<ItemInfo> otherWorkspaceItems = new ArrayList<ItemInfo>();
@@ -2030,45 +2474,46 @@ public class LauncherModel extends BroadcastReceiver {
             sortWorkspaceItemsSpatially(currentWorkspaceItems);
             sortWorkspaceItemsSpatially(otherWorkspaceItems);
 
-            // Tell the workspace that we're about to start binding items
-            r = new Runnable() {
-                public void run() {
-                    Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                    if (callbacks != null) {
-                        callbacks.startBinding();
-                    }
-                }
-            };
-            runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+            // Keep the icons of everything we are about to bind in the icon cache
+            pinWorkspaceIcons(workspaceItems, folders);
 
-            // Load items on the current page
-            bindWorkspaceItems(oldCallbacks, currentWorkspaceItems, currentAppWidgets,
-                    currentFolders, null);
-            if (isLoadingSynchronously) {
-                r = new Runnable() {
-                    public void run() {
-                        Callbacks callbacks = tryGetCallbacks(oldCallbacks);
-                        if (callbacks != null) {
-                            callbacks.onPageBoundSynchronously(currentScreen);
+            if (bindCurrent) {
+                // Load items on the current page
+                bindWorkspaceItems(oldCallbacks, currentWorkspaceItems, currentAppWidgets,
+                        currentFolders, true, null);
+                if (isLoadingSynchronously) {
+                    r = new Runnable() {
+                        public void run() {
+                            Callbacks callbacks = tryGetCallbacks(oldCallbacks);
+                            if (callbacks != null) {
+                                callbacks.onPageBoundSynchronously(currentScreen);
+                            }
                         }
-                    }
-                };
-                runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+                    };
+                    runOnMainThread(r, MAIN_THREAD_BINDING_RUNNABLE);
+                }
             }
 
-            // Load all the remaining pages (if we are loading synchronously, we want to defer this
-            // work until after the first render)
-            mDeferredBindRunnables.clear();
-            bindWorkspaceItems(oldCallbacks, otherWorkspaceItems, otherAppWidgets, otherFolders,
-                    (isLoadingSynchronously ? mDeferredBindRunnables : null));
+            if (bindOthers) {
+                // Load all the remaining pages (if we are loading synchronously, we want to defer
+                // this work until after the first render)
+                mDeferredBindRunnables.clear();
+                bindWorkspaceItems(oldCallbacks, otherWorkspaceItems, otherAppWidgets,
+                        otherFolders, false,
+                        (isLoadingSynchronously ? mDeferredBindRunnables : null));
+            }
+        }
 
-            // Tell the workspace that we're done binding items
-            r = new Runnable() {
+        /** Tells the workspace that we're done binding items. */
+        private void bindWorkspaceFinished(final Callbacks oldCallbacks, final long t,
+                boolean isLoadingSynchronously) {
+            final Runnable r = new Runnable() {
                 public void run() {
                     Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                     if (callbacks != null) {
                         callbacks.finishBindingItems();
                     }
+                    mBindScheduler.onBindFinished();
 
                     /// M: Binding workspace is done, reset the installing shortcut flag too
                     InstallShortcutHelper.setInstallingShortcut(false);
@@ -2095,7 +2540,13 @@ public class LauncherModel extends BroadcastReceiver {
                         + ", mStopped = " + mStopped + ", this = " + this);
             }
             if (!mAllAppsLoaded) {
-                loadAllAppsByBatch();
+                // Icons rendered during the load reach the disk cache in one transaction.
+                mIconCache.beginDiskCacheBatch();
+                try {
+                    loadAllAppsByBatch();
+                } finally {
+                    mIconCache.endDiskCacheBatch();
+                }
                 synchronized (LoaderTask.this) {
                     if (mStopped) {
                         LauncherLog.d(TAG, "loadAndBindAllApps returned by stop flag.");
@@ -2163,14 +2614,16 @@ public class LauncherModel extends BroadcastReceiver {
             final PackageManager packageManager = mContext.getPackageManager();
             List<ResolveInfo> apps = null;
 
-            final ArrayList<ShortcutInfo> launchFreqAppsItems = new ArrayList<ShortcutInfo>(sBgLaunchFreqAppsItems);
-            //launchFreqAppsItems.addAll(sBgLaunchFreqAppsItems);
+            final HashMap<ComponentName, ShortcutInfo> launchFreqAppsItems =
+                    new HashMap<ComponentName, ShortcutInfo>(getBgSnapshot().launchFreqApps);
             
             int N = Integer.MAX_VALUE;
 
             int startIndex;
             int i = 0;
             int batchSize = -1;
+            ArrayList<Future<ApplicationInfo>> pending = null;
+            long firstBindTime = 0;
             while (i < N && !mStopped) {
                 if (i == 0) {
                     mBgAllAppsList.clear();
@@ -2206,29 +2659,38 @@ public class LauncherModel extends BroadcastReceiver {
                      */
                     flushCacheIfNeeded(mLabelCache);
                     final long sortTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
-                    Collections.sort(apps,
-                            new LauncherModel.ShortcutNameComparator(packageManager, mLabelCache));
+                    sortResolveInfosByLabel(apps, packageManager, mLabelCache);
                     if (DEBUG_LOADERS) {
                         Log.d(TAG, "sort took " + (SystemClock.uptimeMillis() - sortTime) + "ms"
                                 + ", this = " + this);
                     }
+
+                    if (mAllAppsParallelLoad) {
+                        pending = submitApplicationInfoLoads(packageManager, apps);
+                    }
                 }
 
                 final long t2 = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
 
+                // In the parallel mode the first batch is just enough to fill the first page,
+                // so that it can be bound while the other apps are still being resolved.
+                final int currentBatchSize = (pending != null && i == 0 && mAllAppsFirstBindCount > 0)
+                        ? Math.min(mAllAppsFirstBindCount, batchSize) : batchSize;
                 startIndex = i;
-                for (int j=0; i<N && j<batchSize; j++) {
+                for (int j=0; i<N && j<currentBatchSize && !mStopped; j++) {
                     // This builds the icon bitmaps.
-                	final ApplicationInfo appInfo = new ApplicationInfo(packageManager, apps.get(i),
-                            mIconCache, mLabelCache);
+                	final ApplicationInfo appInfo = (pending != null)
+                	        ? waitForApplicationInfo(pending.get(i))
+                	        : new ApplicationInfo(packageManager, apps.get(i), mIconCache, mLabelCache);
+                	if (appInfo == null) {
+                	    i++;
+                	    continue;
+                	}
                 	if(appInfo.componentName != null){
-	                	for(ShortcutInfo sInfo : launchFreqAppsItems){
-	                		if(appInfo.componentName.equals(sInfo.getComponentName())){
-	                			appInfo.launchedFreq = sInfo.launchedFreq;
-	                			appInfo.lastLaunchTime = sInfo.lastLaunchTime;
-	                			launchFreqAppsItems.remove(sInfo);
-	                			break;
-	                		}
+	                	final ShortcutInfo sInfo = launchFreqAppsItems.remove(appInfo.componentName);
+	                	if(sInfo != null){
+	                		appInfo.launchedFreq = sInfo.launchedFreq;
+	                		appInfo.lastLaunchTime = sInfo.lastLaunchTime;
 	                	}
                 	}
                     mBgAllAppsList.add(appInfo);
@@ -2241,7 +2703,7 @@ public class LauncherModel extends BroadcastReceiver {
 
                 mBgAllAppsList.reorderApplist();
 
-                final boolean first = i <= batchSize;
+                final boolean first = startIndex == 0;
                 final Callbacks callbacks = tryGetCallbacks(oldCallbacks);
                 final ArrayList<ApplicationInfo> added = mBgAllAppsList.added;
                 mBgAllAppsList.added = new ArrayList<ApplicationInfo>();
@@ -2268,9 +2730,14 @@ public class LauncherModel extends BroadcastReceiver {
                 if (DEBUG_LOADERS) {
                     Log.d(TAG, "batch of " + (i-startIndex) + " icons processed in "
                             + (SystemClock.uptimeMillis()-t2) + "ms");
+                    if (first) {
+                        firstBindTime = SystemClock.uptimeMillis() - t;
+                    }
                 }
 
-                if (mAllAppsLoadDelay > 0 && i < N) {
+                // The delay only exists to keep the single loader thread from hogging the CPU,
+                // the parallel mode runs its workers at background priority instead.
+                if (pending == null && mAllAppsLoadDelay > 0 && i < N) {
                     try {
                         if (DEBUG_LOADERS) {
                             Log.d(TAG, "sleeping for " + mAllAppsLoadDelay + "ms");
@@ -2280,21 +2747,69 @@ public class LauncherModel extends BroadcastReceiver {
                 }
             }
 
+            if (pending != null && mStopped) {
+                for (Future<ApplicationInfo> f : pending) {
+                    f.cancel(false);
+                }
+            }
+
             if (DEBUG_LOADERS) {
                 Log.d(TAG, "cached all " + N + " apps in "
                         + (SystemClock.uptimeMillis() - t) + "ms"
-                        + (mAllAppsLoadDelay > 0 ? " (including delay)" : ""));
+                        + (pending != null ? " (parallel, " + ALL_APPS_LOADER_THREADS + " threads)"
+                                : (mAllAppsLoadDelay > 0 ? " (serial, including delay)" : " (serial)"))
+                        + ", first apps bound after " + firstBindTime + "ms");
             }
         }
 
-        public void dumpState() {
-            synchronized (sBgLock) {
-                Log.d(TAG, "mLoaderTask.mContext=" + mContext);
-                Log.d(TAG, "mLoaderTask.mIsLaunching=" + mIsLaunching);
-                Log.d(TAG, "mLoaderTask.mStopped=" + mStopped);
-                Log.d(TAG, "mLoaderTask.mLoadAndBindStepFinished=" + mLoadAndBindStepFinished);
-                Log.d(TAG, "mItems size=" + sBgWorkspaceItems.size());
+        /**
+         * Queues the construction of an ApplicationInfo for every app on sAllAppsLoaderPool.
+         * The returned futures are in the same order as apps.
+         */
+        private ArrayList<Future<ApplicationInfo>> submitApplicationInfoLoads(
+                final PackageManager packageManager, List<ResolveInfo> apps) {
+            final int N = apps.size();
+            final ArrayList<Future<ApplicationInfo>> pending =
+                    new ArrayList<Future<ApplicationInfo>>(N);
+            for (int i = 0; i < N; i++) {
+                final ResolveInfo info = apps.get(i);
+                // Hand each task the one label it needs so the pool doesn't contend on
+                // mLabelCache. The sort above has already put every app's label in it.
+                final HashMap<Object, CharSequence> labelCache =
+                        new HashMap<Object, CharSequence>(2);
+                final ComponentName key = getComponentNameFromResolveInfo(info);
+                final CharSequence label = IconCache.getLabel(mLabelCache, key);
+                if (label != null) {
+                    labelCache.put(key, label);
+                }
+                pending.add(sAllAppsLoaderPool.submit(new Callable<ApplicationInfo>() {
+                    public ApplicationInfo call() {
+                        return new ApplicationInfo(packageManager, info, mIconCache, labelCache);
+                    }
+                }));
             }
+            return pending;
+        }
+
+        private ApplicationInfo waitForApplicationInfo(Future<ApplicationInfo> future) {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // Ignore, the loader is stopped through mStopped
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Failed to load application info", e.getCause());
+                    return null;
+                }
+            }
+        }
+
+        public void dumpState() {
+            Log.d(TAG, "mLoaderTask.mContext=" + mContext);
+            Log.d(TAG, "mLoaderTask.mIsLaunching=" + mIsLaunching);
+            Log.d(TAG, "mLoaderTask.mStopped=" + mStopped);
+            Log.d(TAG, "mLoaderTask.mLoadAndBindStepFinished=" + mLoadAndBindStepFinished);
+            Log.d(TAG, "mItems size=" + getBgSnapshot().workspaceItems.size());
         }
     }
 
@@ -2333,6 +2848,7 @@ public class LauncherModel extends BroadcastReceiver {
                 case OP_UPDATE:
                     for (int i=0; i<N; i++) {
                         if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.updatePackage " + packages[i]);
+                        mIconCache.removePackage(packages[i]);
                         mBgAllAppsList.updatePackage(context, packages[i]/*, sBgLaunchFreqAppsItems*/);
                     }
                     break;
@@ -2340,6 +2856,9 @@ public class LauncherModel extends BroadcastReceiver {
                 case OP_UNAVAILABLE:
                     for (int i=0; i<N; i++) {
                         if (DEBUG_LOADERS) Log.d(TAG, "mAllAppsList.removePackage " + packages[i]);
+                        if (mOp == OP_REMOVE) {
+                            mIconCache.removePackage(packages[i]);
+                        }
                         mBgAllAppsList.removePackage(packages[i]);
                     }
                     break;
@@ -2512,29 +3031,31 @@ public class LauncherModel extends BroadcastReceiver {
         if (resolveInfo != null) {
             icon = mIconCache.getIcon(componentName, resolveInfo, labelCache);
         }
-        // the db
+        // the db, decoded when the item is first bound
+        byte[] iconData = null;
         if (icon == null) {
             if (c != null) {
-                icon = getIconFromCursor(c, iconIndex, context);
+                iconData = c.getBlob(iconIndex);
             }
         }
-        // the fallback icon
-        if (icon == null) {
-            icon = getFallbackIcon();
-            info.usingFallbackIcon = true;
+        if (iconData != null) {
+            info.setIconData(iconData);
+        } else {
+            // the fallback icon
+            if (icon == null) {
+                icon = getFallbackIcon();
+                info.usingFallbackIcon = true;
+            }
+            info.setIcon(icon);
         }
-        info.setIcon(icon);
 
         // from the resource
         if (resolveInfo != null) {
             ComponentName key = LauncherModel.getComponentNameFromResolveInfo(resolveInfo);
-            if (labelCache != null && labelCache.containsKey(key)) {
-                info.title = labelCache.get(key);
-            } else {
+            info.title = IconCache.getLabel(labelCache, key);
+            if (info.title == null) {
                 info.title = resolveInfo.activityInfo.loadLabel(manager);
-                if (labelCache != null) {
-                    labelCache.put(key, info.title);
-                }
+                IconCache.putLabel(labelCache, key, info.title);
             }
         }
         // from the db
@@ -2556,13 +3077,12 @@ public class LauncherModel extends BroadcastReceiver {
      */
     static ArrayList<ItemInfo> getWorkspaceShortcutItemInfosWithIntent(Intent intent) {
         ArrayList<ItemInfo> items = new ArrayList<ItemInfo>();
-        synchronized (sBgLock) {
-            for (ItemInfo info : sBgWorkspaceItems) {
-                if (info instanceof ShortcutInfo) {
-                    ShortcutInfo shortcut = (ShortcutInfo) info;
-                    if (shortcut.intent.toUri(0).equals(intent.toUri(0))) {
-                        items.add(shortcut);
-                    }
+        final String uri = intent.toUri(0);
+        for (ItemInfo info : getBgSnapshot().workspaceItems) {
+            if (info instanceof ShortcutInfo) {
+                ShortcutInfo shortcut = (ShortcutInfo) info;
+                if (shortcut.intent.toUri(0).equals(uri)) {
+                    items.add(shortcut);
                 }
             }
         }
@@ -2577,6 +3097,7 @@ public class LauncherModel extends BroadcastReceiver {
             int titleIndex) {
 
         Bitmap icon = null;
+        byte[] iconData = null;
         final ShortcutInfo info = new ShortcutInfo();
         info.itemType = LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT;
 
@@ -2604,17 +3125,17 @@ public class LauncherModel extends BroadcastReceiver {
             }
             // the db
             if (icon == null) {
-                icon = getIconFromCursor(c, iconIndex, context);
+                iconData = c.getBlob(iconIndex);
             }
             // the fallback icon
-            if (icon == null) {
+            if (icon == null && iconData == null) {
                 icon = getFallbackIcon();
                 info.usingFallbackIcon = true;
             }
             break;
         case LauncherSettings.Favorites.ICON_TYPE_BITMAP:
-            icon = getIconFromCursor(c, iconIndex, context);
-            if (icon == null) {
+            iconData = c.getBlob(iconIndex);
+            if (iconData == null) {
                 icon = getFallbackIcon();
                 info.customIcon = false;
                 info.usingFallbackIcon = true;
@@ -2628,7 +3149,12 @@ public class LauncherModel extends BroadcastReceiver {
             info.customIcon = false;
             break;
         }
-        info.setIcon(icon);
+        if (iconData != null) {
+            // Decoded when the item is first bound
+            info.setIconData(iconData);
+        } else {
+            info.setIcon(icon);
+        }
         return info;
     }
 
@@ -2640,12 +3166,7 @@ public class LauncherModel extends BroadcastReceiver {
                     + c.getString(c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE)));
         }
         byte[] data = c.getBlob(iconIndex);
-        try {
-            return Utilities.createIconBitmap(
-                    BitmapFactory.decodeByteArray(data, 0, data.length), context);
-        } catch (Exception e) {
-            return null;
-        }
+        return data != null ? mIconCache.decodeIcon(data) : null;
     }
 
     ShortcutInfo addShortcut(Context context, Intent data, long container, int screen,
@@ -2767,8 +3288,8 @@ public class LauncherModel extends BroadcastReceiver {
         return info;
     }
 
-    boolean queueIconToBeChecked(HashMap<Object, byte[]> cache, ShortcutInfo info, Cursor c,
-            int iconIndex) {
+    boolean queueIconToBeChecked(HashMap<Object, Long> cache, ShortcutInfo info, Cursor c,
+            int iconHashIndex) {
         // If apps can't be on SD, don't even bother.
         if (!mAppsCanBeOnExternalStorage) {
             return false;
@@ -2779,19 +3300,19 @@ public class LauncherModel extends BroadcastReceiver {
         // into the DB.  We do this so when we're loading, if the
         // package manager can't find an icon (for example because
         // the app is on SD) then we can use that instead.
-        if (!info.customIcon && !info.usingFallbackIcon) {
-            cache.put(info, c.getBlob(iconIndex));
+        // The saved icon is compared through its hash, so that it doesn't have to be decoded.
+        if (!info.customIcon && !info.usingFallbackIcon && !info.isIconFromDatabase()) {
+            cache.put(info, c.isNull(iconHashIndex) ? null : c.getLong(iconHashIndex));
             return true;
         }
         return false;
     }
-    void updateSavedIcon(Context context, ShortcutInfo info, byte[] data) {
+    void updateSavedIcon(Context context, ShortcutInfo info, Long savedHash) {
         boolean needSave = false;
         try {
-            if (data != null) {
-                Bitmap saved = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (savedHash != null) {
                 Bitmap loaded = info.getIcon(mIconCache);
-                needSave = !saved.sameAs(loaded);
+                needSave = savedHash.longValue() != ItemInfo.hashBitmap(loaded);
             } else {
                 needSave = true;
             }
@@ -2821,18 +3342,114 @@ public class LauncherModel extends BroadcastReceiver {
         return folderInfo;
     }
 
-    public static final Comparator<ApplicationInfo> getAppNameComparator() {
-        final Collator collator = Collator.getInstance();
-        return new Comparator<ApplicationInfo>() {
-            public final int compare(ApplicationInfo a, ApplicationInfo b) {
-                int result = collator.compare(a.title.toString(), b.title.toString());
-                if (result == 0) {
-                    result = a.componentName.compareTo(b.componentName);
-                }
-                return result;
+    // Shared by every label sort so that the CollationKeys cached on items stay comparable.
+    private static Collator sCollator;
+    private static Locale sCollatorLocale;
+
+    /**
+     * Returns the collator for the current locale.  A new instance is made when the locale
+     * changes, which invalidates the keys made by the previous one.
+     */
+    static Collator getCollator() {
+        synchronized (LauncherModel.class) {
+            final Locale locale = Locale.getDefault();
+            if (sCollator == null || !locale.equals(sCollatorLocale)) {
+                sCollator = Collator.getInstance(locale);
+                sCollatorLocale = locale;
             }
-        };
+            return sCollator;
+        }
     }
+
+    /**
+     * Returns the collation key of the label, made by the shared collator.
+     */
+    static CollationKey getCollationKey(CharSequence label) {
+        final Collator collator = getCollator();
+        synchronized (collator) {
+            return collator.getCollationKey(label != null ? label.toString() : "");
+        }
+    }
+
+    /**
+     * Sorts items in place given one precomputed key per item, keys[i] being the key of
+     * items.get(i).  The sort is stable.
+     */
+    private static <T> void sortByCollationKeys(List<T> items, final CollationKey[] keys) {
+        final int N = items.size();
+        final Integer[] order = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+        final ArrayList<T> sorted = new ArrayList<T>(N);
+        for (int i = 0; i < N; i++) {
+            sorted.add(items.get(order[i]));
+        }
+        for (int i = 0; i < N; i++) {
+            items.set(i, sorted.get(i));
+        }
+    }
+
+    /**
+     * Sorts activities by label.  Each label is resolved once, through labelCache when it has
+     * it, and the labels it had to load are added to labelCache.
+     */
+    static void sortResolveInfosByLabel(List<ResolveInfo> infos, PackageManager pm,
+            HashMap<Object, CharSequence> labelCache) {
+        final int N = infos.size();
+        final CollationKey[] keys = new CollationKey[N];
+        for (int i = 0; i < N; i++) {
+            final ResolveInfo info = infos.get(i);
+            final ComponentName key = getComponentNameFromResolveInfo(info);
+            CharSequence label = IconCache.getLabel(labelCache, key);
+            if (label == null) {
+                label = info.loadLabel(pm).toString();
+                IconCache.putLabel(labelCache, key, label);
+            }
+            keys[i] = getCollationKey(label);
+        }
+        sortByCollationKeys(infos, keys);
+    }
+
+    /**
+     * Sorts a list of AppWidgetProviderInfos and shortcut ResolveInfos by label, resolving
+     * each label once.
+     */
+    static void sortWidgetsAndShortcutsByLabel(List<?> items, PackageManager pm) {
+        final int N = items.size();
+        final CollationKey[] keys = new CollationKey[N];
+        for (int i = 0; i < N; i++) {
+            final Object item = items.get(i);
+            final CharSequence label = (item instanceof AppWidgetProviderInfo) ?
+                    ((AppWidgetProviderInfo) item).label :
+                    ((ResolveInfo) item).loadLabel(pm);
+            keys[i] = getCollationKey(label);
+        }
+        sortByCollationKeys(items, keys);
+    }
+
+    /**
+     * Orders apps by title, then component.  Compares the collation keys cached on the
+     * ApplicationInfos, so a sort or binary search never goes through the collator.
+     */
+    public static final Comparator<ApplicationInfo> getAppNameComparator() {
+        return APP_NAME_COMPARATOR;
+    }
+    private static final Comparator<ApplicationInfo> APP_NAME_COMPARATOR
+            = new Comparator<ApplicationInfo>() {
+        public final int compare(ApplicationInfo a, ApplicationInfo b) {
+            int result = a.getTitleKey().compareTo(b.getTitleKey());
+            if (result == 0) {
+                result = a.componentName.compareTo(b.componentName);
+            }
+            return result;
+        }
+    };
     public static final Comparator<ApplicationInfo> APP_INSTALL_TIME_COMPARATOR
             = new Comparator<ApplicationInfo>() {
         public final int compare(ApplicationInfo a, ApplicationInfo b) {
@@ -2842,10 +3459,19 @@ public class LauncherModel extends BroadcastReceiver {
         }
     };
     public static final Comparator<AppWidgetProviderInfo> getWidgetNameComparator() {
-        final Collator collator = Collator.getInstance();
+        final HashMap<AppWidgetProviderInfo, CollationKey> keys =
+                new HashMap<AppWidgetProviderInfo, CollationKey>();
         return new Comparator<AppWidgetProviderInfo>() {
+            private CollationKey getKey(AppWidgetProviderInfo info) {
+                CollationKey key = keys.get(info);
+                if (key == null) {
+                    key = getCollationKey(info.label);
+                    keys.put(info, key);
+                }
+                return key;
+            }
             public final int compare(AppWidgetProviderInfo a, AppWidgetProviderInfo b) {
-                return collator.compare(a.label.toString(), b.label.toString());
+                return getKey(a).compareTo(getKey(b));
             }
         };
     }
@@ -2856,71 +3482,6 @@ public class LauncherModel extends BroadcastReceiver {
             return new ComponentName(info.serviceInfo.packageName, info.serviceInfo.name);
         }
     }
-    public static class ShortcutNameComparator implements Comparator<ResolveInfo> {
-        private Collator mCollator;
-        private PackageManager mPackageManager;
-        private HashMap<Object, CharSequence> mLabelCache;
-        ShortcutNameComparator(PackageManager pm) {
-            mPackageManager = pm;
-            mLabelCache = new HashMap<Object, CharSequence>();
-            mCollator = Collator.getInstance();
-        }
-        ShortcutNameComparator(PackageManager pm, HashMap<Object, CharSequence> labelCache) {
-            mPackageManager = pm;
-            mLabelCache = labelCache;
-            mCollator = Collator.getInstance();
-        }
-        public final int compare(ResolveInfo a, ResolveInfo b) {
-            CharSequence labelA, labelB;
-            ComponentName keyA = LauncherModel.getComponentNameFromResolveInfo(a);
-            ComponentName keyB = LauncherModel.getComponentNameFromResolveInfo(b);
-            if (mLabelCache.containsKey(keyA)) {
-                labelA = mLabelCache.get(keyA);
-            } else {
-                labelA = a.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyA, labelA);
-            }
-            if (mLabelCache.containsKey(keyB)) {
-                labelB = mLabelCache.get(keyB);
-            } else {
-                labelB = b.loadLabel(mPackageManager).toString();
-
-                mLabelCache.put(keyB, labelB);
-            }
-            return mCollator.compare(labelA, labelB);
-        }
-    };
-    public static class WidgetAndShortcutNameComparator implements Comparator<Object> {
-        private Collator mCollator;
-        private PackageManager mPackageManager;
-        private HashMap<Object, String> mLabelCache;
-        WidgetAndShortcutNameComparator(PackageManager pm) {
-            mPackageManager = pm;
-            mLabelCache = new HashMap<Object, String>();
-            mCollator = Collator.getInstance();
-        }
-        public final int compare(Object a, Object b) {
-            String labelA, labelB;
-            if (mLabelCache.containsKey(a)) {
-                labelA = mLabelCache.get(a);
-            } else {
-                labelA = (a instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) a).label :
-                    ((ResolveInfo) a).loadLabel(mPackageManager).toString();
-                mLabelCache.put(a, labelA);
-            }
-            if (mLabelCache.containsKey(b)) {
-                labelB = mLabelCache.get(b);
-            } else {
-                labelB = (b instanceof AppWidgetProviderInfo) ?
-                    ((AppWidgetProviderInfo) b).label :
-                    ((ResolveInfo) b).loadLabel(mPackageManager).toString();
-                mLabelCache.put(b, labelB);
-            }
-            return mCollator.compare(labelA, labelB);
-        }
-    };
 
     public void dumpState() {
         Log.d(TAG, "mCallbacks=" + mCallbacks);
@@ -2933,6 +3494,14 @@ public class LauncherModel extends BroadcastReceiver {
         } else {
             Log.d(TAG, "mLoaderTask=null");
         }
+        mHandler.dumpState();
+        mBindScheduler.dumpState();
+        Log.d(TAG, "bg model version=" + sBgSnapshot.version + " snapshot reads="
+                + sBgSnapshotReads.get());
+        Log.d(TAG, "db updates queued=" + sDbUpdatesQueued + " coalesced=" + sDbUpdatesCoalesced
+                + " flushes=" + sDbFlushCount + " rows=" + sDbFlushedRows
+                + " maxBatch=" + sDbMaxBatchSize + " flushTime=" + sDbFlushTotalTime
+                + "ms maxFlushTime=" + sDbFlushMaxTime + "ms");
     }
     
     /**
@@ -2954,7 +3523,9 @@ public class LauncherModel extends BroadcastReceiver {
                     + ", mLoaderTask = " + mLoaderTask + ", labelCache = " + labelCache);
         }        
         if (mForceFlushCache) {
-            labelCache.clear();
+            synchronized (labelCache) {
+                labelCache.clear();
+            }
             mIconCache.flush();
             mForceFlushCache = false;
         }   
@@ -2983,6 +3554,7 @@ public class LauncherModel extends BroadcastReceiver {
      * @param sceneName The name of the scene if exists or not.
      */
     public static boolean exists(final Context context, final String sceneName) {
+        flushPendingDbUpdates();
         final ContentResolver contentResolver = context.getContentResolver();
 
         final Cursor c = contentResolver.query(LauncherSettings.Favorites.CONTENT_URI,
@@ -3004,21 +3576,25 @@ public class LauncherModel extends BroadcastReceiver {
         return false;
     }
     
-    public static boolean addOrReplaceFreqAppInfo(ShortcutInfo info){
+    /**
+     * Adds a launch frequency item loaded from the database, or raises the frequency of the
+     * one already known.  Called by the loader with sBgLock held, which publishes the
+     * snapshot once the load is done.
+     */
+    static boolean addOrReplaceFreqAppInfoLocked(ShortcutInfo info){
     	if(sBgLaunchFreqAppsItems != null && info != null){
     		ComponentName cmp = info.getComponentName();
     		if(cmp != null){
-	    		for(ShortcutInfo item : sBgLaunchFreqAppsItems){
-	    			if(cmp.equals(item.getComponentName())){
-	    				if(item.launchedFreq < info.launchedFreq){
-	    					item.launchedFreq = info.launchedFreq;
-	    					return true;
-	    				}
-	    				return false;
+	    		final ShortcutInfo item = sBgLaunchFreqAppsIndex.get(cmp);
+	    		if(item != null){
+	    			if(item.launchedFreq < info.launchedFreq){
+	    				item.launchedFreq = info.launchedFreq;
+	    				return true;
 	    			}
+	    			return false;
 	    		}
 	    		
-	    		sBgLaunchFreqAppsItems.add(info);
+	    		addLaunchFreqItem(info);
 	    		return true;
     		}
     	}
@@ -3027,16 +3603,27 @@ public class LauncherModel extends BroadcastReceiver {
     
     public static boolean addOrReplaceFreqAppInfo(ApplicationInfo info){
     	if(sBgLaunchFreqAppsItems != null && info != null && info.componentName != null){
-    		for(ShortcutInfo sInfo : sBgLaunchFreqAppsItems){
-        		if(info.componentName.equals(sInfo.getComponentName())){
-        			info.launchedFreq = sInfo.launchedFreq;
-        			info.lastLaunchTime = sInfo.lastLaunchTime;
-        			return true;
-        		}
-        	}
-    		sBgLaunchFreqAppsItems.add(info.makeShortcut());
+    		synchronized (sBgLock) {
+	    		final ShortcutInfo sInfo = sBgLaunchFreqAppsIndex.get(info.componentName);
+	    		if(sInfo != null){
+	    			info.launchedFreq = sInfo.launchedFreq;
+	    			info.lastLaunchTime = sInfo.lastLaunchTime;
+	    			return true;
+	    		}
+	    		addLaunchFreqItem(info.makeShortcut());
+	    		publishBgSnapshotLocked();
+    		}
     		return true;
     	}
     	return false;
     }
+
+    /**
+     * Adds a launch frequency item to sBgLaunchFreqAppsItems and its component index, the
+     * caller must hold sBgLock.
+     */
+    private static void addLaunchFreqItem(ShortcutInfo item) {
+        sBgLaunchFreqAppsItems.add(item);
+        sBgLaunchFreqAppsIndex.put(item.getComponentName(), item);
+    }
 }
@@ -23,11 +23,14 @@ import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
@@ -69,7 +72,7 @@ public class LauncherProvider extends ContentProvider {
 
     private static final String DATABASE_NAME = "launcher.db";
 
-    private static final int DATABASE_VERSION = 13;
+    private static final int DATABASE_VERSION = 15;
 
     static final String AUTHORITY = "com.android.qshtclauncher2.settings";
 
@@ -179,6 +182,20 @@ public class LauncherProvider extends ContentProvider {
         return values.length;
     }
 
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = sOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         SqlArguments args = new SqlArguments(uri, selection, selectionArgs);
@@ -337,8 +354,10 @@ public class LauncherProvider extends ContentProvider {
                     "displayMode INTEGER," +
                     "scene TEXT, " +	/// M: Add for scene feature, add the new column "scnee".
                     "launchfreq INTEGER NOT NULL DEFAULT 0," +
-                    "lastlaunchtime " +
+                    "lastlaunchtime, " +
+                    "iconHash INTEGER" +
                     ");");
+            createFavoritesScreenIndex(db);
             
             // Database was just created, so wipe any previous widgets
             if (mAppWidgetHost != null) {
@@ -352,6 +371,11 @@ public class LauncherProvider extends ContentProvider {
             }
         }
 
+        private void createFavoritesScreenIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS favorites_scene_container_screen ON "
+                    + TABLE_FAVORITES + " (scene, container, screen);");
+        }
+
         private void setFlagToLoadDefaultWorkspaceLater() {
             String spKey = LauncherApplication.getSharedPreferencesKey();
             SharedPreferences sp = mContext.getSharedPreferences(spKey, Context.MODE_PRIVATE);
@@ -599,6 +623,60 @@ public class LauncherProvider extends ContentProvider {
                 version = 12;
             }
 
+            if (version < 13) {
+                // Version 13 records how often and when each item was last launched
+                db.beginTransaction();
+                try {
+                    db.execSQL("ALTER TABLE favorites " +
+                        "ADD COLUMN launchfreq INTEGER NOT NULL DEFAULT 0;");
+                    db.execSQL("ALTER TABLE favorites " +
+                        "ADD COLUMN lastlaunchtime;");
+                    db.setTransactionSuccessful();
+                    version = 13;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    LauncherLog.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (version < 14) {
+                // Version 14 indexes the favorites by scene, container and screen so that the
+                // loader can read the current screen on its own
+                db.beginTransaction();
+                try {
+                    createFavoritesScreenIndex(db);
+                    db.setTransactionSuccessful();
+                    version = 14;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    LauncherLog.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (version < 15) {
+                // Version 15 stores a hash of the icon pixels next to each icon
+                db.beginTransaction();
+                try {
+                    db.execSQL("ALTER TABLE favorites " +
+                        "ADD COLUMN iconHash INTEGER;");
+                    db.setTransactionSuccessful();
+                    version = 15;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    LauncherLog.e(TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (version == 15) {
+                    hashIcons(db);
+                }
+            }
+
             if (version != DATABASE_VERSION) {
                 Log.w(TAG, "Destroying all old data.");
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVORITES);
@@ -686,6 +764,61 @@ public class LauncherProvider extends ContentProvider {
             return true;
         }
 
+        /**
+         * Fills in the hash of every stored icon, leaving the icons themselves as they are.
+         * An icon that can't be decoded gets no hash, the loader saves it again the next time
+         * it loads that item.
+         */
+        private void hashIcons(SQLiteDatabase db) {
+            Log.d(TAG, "hashing icons");
+
+            db.beginTransaction();
+            Cursor c = null;
+            SQLiteStatement update = null;
+            try {
+                boolean logged = false;
+                update = db.compileStatement("UPDATE favorites "
+                        + "SET iconHash=? WHERE _id=?");
+
+                c = db.rawQuery("SELECT _id, icon FROM favorites WHERE icon IS NOT NULL", null);
+
+                final int idIndex = c.getColumnIndexOrThrow(Favorites._ID);
+                final int iconIndex = c.getColumnIndexOrThrow(Favorites.ICON);
+
+                while (c.moveToNext()) {
+                    long id = c.getLong(idIndex);
+                    byte[] data = c.getBlob(iconIndex);
+                    try {
+                        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+                        if (bitmap != null) {
+                            update.bindLong(1, ItemInfo.hashBitmap(bitmap));
+                            update.bindLong(2, id);
+                            update.execute();
+                            bitmap.recycle();
+                        }
+                    } catch (Exception e) {
+                        if (!logged) {
+                            Log.e(TAG, "Failed hashing icon " + id, e);
+                        } else {
+                            Log.e(TAG, "Also failed hashing icon " + id);
+                        }
+                        logged = true;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } catch (SQLException ex) {
+                Log.w(TAG, "Problem while hashing icons", ex);
+            } finally {
+                db.endTransaction();
+                if (update != null) {
+                    update.close();
+                }
+                if (c != null) {
+                    c.close();
+                }
+            }
+        }
+
         private void normalizeIcons(SQLiteDatabase db) {
             Log.d(TAG, "normalizing icons");
 
@@ -88,6 +88,12 @@ class LauncherSettings {
          * <P>Type: BLOB</P>
          */
         static final String ICON = "icon";
+
+        /**
+         * Hash of the pixels of the icon bitmap, see ItemInfo.hashBitmap().
+         * <P>Type: INTEGER</P>
+         */
+        static final String ICON_HASH = "iconHash";
         
         /**
          * M: The scene, describing the item belongs to which scene.
@@ -74,6 +74,7 @@ public class MTKShortcut extends RelativeLayout {
      */
     public void setIcon(Drawable paramDrawable) {
         mFavorite.setCompoundDrawablesWithIntrinsicBounds(null, paramDrawable, null, null);
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     /**
@@ -83,6 +84,7 @@ public class MTKShortcut extends RelativeLayout {
      */
     public void setTitle(CharSequence title) {
         mFavorite.setText(title);
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     /**
@@ -121,6 +123,7 @@ public class MTKShortcut extends RelativeLayout {
                 mUnread.setText(String.valueOf(mInfo.unreadNum));
             }
         }
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     /**
@@ -146,6 +149,7 @@ public class MTKShortcut extends RelativeLayout {
             }
         }
         setTag(mInfo);
+        ShortcutAndWidgetContainer.onItemContentChanged(this);
     }
 
     /**
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.graphics.Matrix;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Inverse transforms and centers of the workspace pages and the hotseat layout, so mapping a
+ * drag point into a page does not invert the page matrix on every move.  An entry is kept
+ * until the page is laid out somewhere else, resized, or its scale, rotation, translation,
+ * pivot or camera distance change, which is checked on every lookup against the values the
+ * entry was computed from.  Scrolling does not touch the page matrices, callers apply the
+ * scroll offset themselves.
+ *
+ * Everything here runs on the main thread.
+ */
+class PageTransformCache {
+    private static class Entry {
+        View view;
+        final Matrix inverse = new Matrix();
+        // Center of the page in its parent's coordinates, before scrolling
+        final float[] center = new float[2];
+
+        int left;
+        int top;
+        int width;
+        int height;
+        float scaleX;
+        float scaleY;
+        float rotation;
+        float rotationX;
+        float rotationY;
+        float translationX;
+        float translationY;
+        float pivotX;
+        float pivotY;
+        float cameraDistance;
+
+        boolean matches(View v) {
+            return left == v.getLeft() && top == v.getTop()
+                    && width == v.getWidth() && height == v.getHeight()
+                    && scaleX == v.getScaleX() && scaleY == v.getScaleY()
+                    && rotation == v.getRotation() && rotationX == v.getRotationX()
+                    && rotationY == v.getRotationY()
+                    && translationX == v.getTranslationX()
+                    && translationY == v.getTranslationY()
+                    && pivotX == v.getPivotX() && pivotY == v.getPivotY()
+                    && cameraDistance == v.getCameraDistance();
+        }
+
+        void capture(View v) {
+            left = v.getLeft();
+            top = v.getTop();
+            width = v.getWidth();
+            height = v.getHeight();
+            scaleX = v.getScaleX();
+            scaleY = v.getScaleY();
+            rotation = v.getRotation();
+            rotationX = v.getRotationX();
+            rotationY = v.getRotationY();
+            translationX = v.getTranslationX();
+            translationY = v.getTranslationY();
+            pivotX = v.getPivotX();
+            pivotY = v.getPivotY();
+            cameraDistance = v.getCameraDistance();
+        }
+    }
+
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+    // Drag trace, reset when a drag starts
+    private int mLookups;
+    private int mInversions;
+
+    /** Returns the inverse of the page's matrix, computing it only if the page changed. */
+    Matrix getInverseMatrix(View v) {
+        return getEntry(v).inverse;
+    }
+
+    /**
+     * Stores the center of the page in its parent's coordinates, without the parent's scroll,
+     * in center.
+     */
+    void getCenter(View v, float[] center) {
+        final Entry e = getEntry(v);
+        center[0] = e.center[0];
+        center[1] = e.center[1];
+    }
+
+    /** Drops every entry, called when the pages are laid out, added or removed. */
+    void invalidate() {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            mEntries.get(i).view = null;
+        }
+    }
+
+    void resetTrace() {
+        mLookups = 0;
+        mInversions = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "PageTransformCache(entries=" + mEntries.size() + " lookups=" + mLookups
+                + " inversions=" + mInversions + ")";
+    }
+
+    private Entry getEntry(View v) {
+        mLookups++;
+        Entry free = null;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            final Entry e = mEntries.get(i);
+            if (e.view == v) {
+                if (!e.matches(v)) {
+                    update(e, v);
+                }
+                return e;
+            } else if (e.view == null) {
+                free = e;
+            }
+        }
+        if (free == null) {
+            free = new Entry();
+            mEntries.add(free);
+        }
+        free.view = v;
+        update(free, v);
+        return free;
+    }
+
+    private void update(Entry e, View v) {
+        e.capture(v);
+        final Matrix matrix = v.getMatrix();
+        matrix.invert(e.inverse);
+        mInversions++;
+        e.center[0] = e.width / 2;
+        e.center[1] = e.height / 2;
+        matrix.mapPoints(e.center);
+        e.center[0] += e.left;
+        e.center[1] += e.top;
+    }
+}
@@ -17,20 +17,33 @@
 package com.android.qshtclauncher2;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.pm.ComponentInfo;
 import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 
 /**
- * Simple cache mechanism for PagedView outlines.
+ * In-memory tier of the widget and shortcut previews of the apps customize pane, in front of
+ * the WidgetPreviewDiskCache.  The cache is bounded by a byte budget and evicts the least
+ * recently used previews first; evicted bitmaps go back to the bitmap pool.
+ *
+ * The cache keeps its own copy of every preview and hands out copies, since the pages give
+ * their previews back to the bitmap pool when they are unloaded.  It is used from the
+ * preview worker threads, so every method is synchronized.
  */
 public class PagedViewIconCache {
+    private static final String TAG = "PagedViewIconCache";
+
     public static class Key {
         public enum Type {
             ApplicationInfoKey,
@@ -39,20 +52,36 @@ public class PagedViewIconCache {
         }
         private final ComponentName mComponentName;
         private final Type mType;
+        // Size the preview was rendered to fit, 0 when it does not matter
+        private final int mWidth;
+        private final int mHeight;
 
         public Key(ApplicationInfo info) {
-            mComponentName = info.componentName;
-            mType = Type.ApplicationInfoKey;
+            this(info.componentName, Type.ApplicationInfoKey, 0, 0);
         }
         public Key(ResolveInfo info) {
-            final ComponentInfo ci = info.activityInfo != null ? info.activityInfo :
-                info.serviceInfo;
-            mComponentName = new ComponentName(ci.packageName, ci.name);
-            mType = Type.ResolveInfoKey;
+            this(info, 0, 0);
+        }
+        public Key(ResolveInfo info, int width, int height) {
+            this(getComponentName(info), Type.ResolveInfoKey, width, height);
         }
         public Key(AppWidgetProviderInfo info) {
-            mComponentName = info.provider;
-            mType = Type.AppWidgetProviderInfoKey;
+            this(info.provider, Type.AppWidgetProviderInfoKey, 0, 0);
+        }
+        public Key(ComponentName provider, int width, int height) {
+            this(provider, Type.AppWidgetProviderInfoKey, width, height);
+        }
+        private Key(ComponentName componentName, Type type, int width, int height) {
+            mComponentName = componentName;
+            mType = type;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        private static ComponentName getComponentName(ResolveInfo info) {
+            final ComponentInfo ci = info.activityInfo != null ? info.activityInfo :
+                info.serviceInfo;
+            return new ComponentName(ci.packageName, ci.name);
         }
 
         private ComponentName getComponentName() {
@@ -66,68 +95,178 @@ public class PagedViewIconCache {
         public boolean equals(Object o) {
             if (o instanceof Key) {
                 Key k = (Key) o;
-                return mComponentName.equals(k.mComponentName);
+                return mComponentName.equals(k.mComponentName) && mType == k.mType
+                        && mWidth == k.mWidth && mHeight == k.mHeight;
             }
             return super.equals(o);
         }
         @Override
         public int hashCode() {
-            return getComponentName().hashCode();
+            return getComponentName().hashCode() * 31 + mWidth * 17 + mHeight;
+        }
+    }
+
+    private static class Entry {
+        final Bitmap bitmap;
+        // Last update time of the package the preview was rendered for
+        final long version;
+
+        Entry(Bitmap b, long v) {
+            bitmap = b;
+            version = v;
         }
     }
 
-    private final HashMap<Key, Bitmap> mIconOutlineCache = new HashMap<Key, Bitmap>();
+    // Access ordered, so iteration starts at the least recently used preview
+    private final LinkedHashMap<Key, Entry> mPreviews =
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final long mMaxBytes;
+    private long mBytes;
 
-    public void clear() {
-        for (Key key : mIconOutlineCache.keySet()) {
-            mIconOutlineCache.get(key).recycle();
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public PagedViewIconCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public synchronized void clear() {
+        for (Entry e : mPreviews.values()) {
+            releasePreview(e);
         }
-        mIconOutlineCache.clear();
+        mPreviews.clear();
     }
-    private void retainAll(HashSet<Key> keysToKeep, Key.Type t) {
-        HashSet<Key> keysToRemove = new HashSet<Key>(mIconOutlineCache.keySet());
-        keysToRemove.removeAll(keysToKeep);
-        for (Key key : keysToRemove) {
-            if (key.isKeyType(t)) {
-                mIconOutlineCache.get(key).recycle();
-                mIconOutlineCache.remove(key);
+    private void retainAll(HashSet<ComponentName> componentsToKeep, Key.Type t) {
+        Iterator<Map.Entry<Key, Entry>> iter = mPreviews.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Entry> e = iter.next();
+            if (e.getKey().isKeyType(t)
+                    && !componentsToKeep.contains(e.getKey().getComponentName())) {
+                iter.remove();
+                releasePreview(e.getValue());
             }
         }
     }
     /** Removes all the keys to applications that aren't in the passed in collection */
-    public void retainAllApps(ArrayList<ApplicationInfo> keys) {
-        HashSet<Key> keysSet = new HashSet<Key>();
+    public synchronized void retainAllApps(ArrayList<ApplicationInfo> keys) {
+        HashSet<ComponentName> keysSet = new HashSet<ComponentName>();
         for (ApplicationInfo info : keys) {
-            keysSet.add(new Key(info));
+            keysSet.add(info.componentName);
         }
         retainAll(keysSet, Key.Type.ApplicationInfoKey);
     }
     /** Removes all the keys to shortcuts that aren't in the passed in collection */
-    public void retainAllShortcuts(List<ResolveInfo> keys) {
-        HashSet<Key> keysSet = new HashSet<Key>();
+    public synchronized void retainAllShortcuts(List<ResolveInfo> keys) {
+        HashSet<ComponentName> keysSet = new HashSet<ComponentName>();
         for (ResolveInfo info : keys) {
-            keysSet.add(new Key(info));
+            keysSet.add(Key.getComponentName(info));
         }
         retainAll(keysSet, Key.Type.ResolveInfoKey);
     }
     /** Removes all the keys to widgets that aren't in the passed in collection */
-    public void retainAllAppWidgets(List<AppWidgetProviderInfo> keys) {
-        HashSet<Key> keysSet = new HashSet<Key>();
+    public synchronized void retainAllAppWidgets(List<AppWidgetProviderInfo> keys) {
+        HashSet<ComponentName> keysSet = new HashSet<ComponentName>();
         for (AppWidgetProviderInfo info : keys) {
-            keysSet.add(new Key(info));
+            keysSet.add(info.provider);
         }
         retainAll(keysSet, Key.Type.AppWidgetProviderInfoKey);
     }
-    public void addOutline(Key key, Bitmap b) {
-        mIconOutlineCache.put(key, b);
+    /**
+     * Removes the previews of the packages that were removed or updated, which is all that
+     * can go stale when a package changes; the rest of the cache is left alone.
+     */
+    public synchronized void removePackages(Collection<String> packageNames) {
+        if (packageNames.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<Key, Entry>> iter = mPreviews.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Entry> e = iter.next();
+            if (packageNames.contains(e.getKey().getComponentName().getPackageName())) {
+                iter.remove();
+                releasePreview(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Stores a copy of the preview, rendered for the given package version.  The caller
+     * keeps the preview it passed in.
+     */
+    public void putPreview(Key key, long version, Bitmap preview) {
+        if (preview == null || preview.getConfig() == null) {
+            return;
+        }
+        final Bitmap copy = copyOf(preview);
+        synchronized (this) {
+            final Entry old = mPreviews.put(key, new Entry(copy, version));
+            if (old != null) {
+                releasePreview(old);
+            }
+            mBytes += getByteCount(copy);
+            trimToSize(mMaxBytes);
+        }
     }
-    public void removeOutline(Key key) {
-        if (mIconOutlineCache.containsKey(key)) {
-            mIconOutlineCache.get(key).recycle();
-            mIconOutlineCache.remove(key);
+
+    /**
+     * Returns a copy of the stored preview, owned by the caller, or null if there is none
+     * for this version of the package.
+     */
+    public synchronized Bitmap getPreview(Key key, long version) {
+        final Entry e = mPreviews.get(key);
+        if (e != null && e.version != version) {
+            mPreviews.remove(key);
+            releasePreview(e);
+        } else if (e != null) {
+            mHitCount++;
+            return copyOf(e.bitmap);
         }
+        mMissCount++;
+        return null;
     }
-    public Bitmap getOutline(Key key) {
-        return mIconOutlineCache.get(key);
+
+    /**
+     * Shrinks the cache in proportion to the trim level, down to nothing at
+     * TRIM_MEMORY_COMPLETE.
+     */
+    public synchronized void trimMemory(int level) {
+        final long complete = ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+        final long keep = Math.max(0, complete - Math.min(level, complete));
+        trimToSize(Math.min(mBytes, mMaxBytes) * keep / complete);
+    }
+
+    public synchronized void dumpState() {
+        LauncherLog.d(TAG, "entries=" + mPreviews.size() + " bytes=" + mBytes
+                + " maxBytes=" + mMaxBytes + " hits=" + mHitCount + " misses=" + mMissCount
+                + " evictions=" + mEvictionCount);
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Entry> iter = mPreviews.values().iterator();
+        while (mBytes > maxBytes && iter.hasNext()) {
+            final Entry e = iter.next();
+            iter.remove();
+            releasePreview(e);
+            mEvictionCount++;
+        }
+    }
+
+    private void releasePreview(Entry e) {
+        mBytes -= getByteCount(e.bitmap);
+        LauncherApplication.getBitmapPool().put(e.bitmap);
+    }
+
+    private static Bitmap copyOf(Bitmap b) {
+        final Bitmap copy = LauncherApplication.getBitmapPool().get(b.getWidth(), b.getHeight(),
+                b.getConfig());
+        final Canvas c = new Canvas(copy);
+        c.drawBitmap(b, 0, 0, null);
+        c.setBitmap(null);
+        return copy;
+    }
+
+    private static int getByteCount(Bitmap b) {
+        return b.getRowBytes() * b.getHeight();
     }
 }
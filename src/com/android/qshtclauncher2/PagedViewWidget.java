@@ -90,7 +90,7 @@ public class PagedViewWidget extends LinearLayout {
             if (image != null) {
                 FastBitmapDrawable preview = (FastBitmapDrawable) image.getDrawable();
                 if (preview != null && preview.getBitmap() != null) {
-                    preview.getBitmap().recycle();
+                    LauncherApplication.getBitmapPool().put(preview.getBitmap());
                 }
                 image.setImageDrawable(null);
             }
@@ -155,16 +155,28 @@ public class QsPreviewScreen extends LinearLayout{
     	if(mPreviewImageView != null){
 	    	int size = mPreviewImageView.length;
 	    	for(int i=0; i<size; i++){
+	    		releasePreviewBitmap(mPreviewImageView[i]);
 	    		mPreviewImageView[i] = null;
 	    	}
     	}
 
     	if(mPressPreviewImage != null){
-    		mPressPreviewImage.recycle();
+    		LauncherApplication.getBitmapPool().put(mPressPreviewImage);
     		mPressPreviewImage = null;
     	}
     }
 
+    /**
+     * Detaches the screen preview from the image.  The bitmap belongs to the workspace
+     * thumbnail cache, which keeps it for the next time the previews are shown.
+     */
+    private void releasePreviewBitmap(ImageView image){
+    	if(image == null || image == mPreviewImageViewForAdd)
+    		return;
+    	
+    	image.setImageDrawable(null);
+    }
+
     private void initScreenPreviewBmp(Launcher context){
 
     	final CellLayout cell = ((CellLayout) mWorkspace.getChildAt(0));
@@ -199,6 +211,8 @@ public class QsPreviewScreen extends LinearLayout{
     				scale, -x, -y, sWidth, sHeight);
     		
     		ImageView image = mPreviewImageView[i] = createPreviewImageView(context, bitmap);
+    		if(bitmap != null)
+    			mWorkspace.getThumbnailCache().addViewer(bitmap, image);
     		image.setTag(i);
     		
     		image.setPressed((i == nPressedIndex ? true : false));
@@ -478,7 +492,7 @@ public class QsPreviewScreen extends LinearLayout{
     private boolean removeScreen(int index){
     	if(mPreviewImageView[index] != null && mWorkspace.removeScreen(index, true)){
     		
-    		mPreviewImageView[index].setImageDrawable(null);
+    		releasePreviewBitmap(mPreviewImageView[index]);
     		ViewGroup parent = (ViewGroup)mPreviewImageView[index].getParent();
 			parent.removeViewInLayout(mPreviewImageView[index]);
 			
@@ -622,15 +636,7 @@ public class QsPreviewScreen extends LinearLayout{
 //    }
     
     private Bitmap createPreviewBitmap(CellLayout cell, float scale, int x, int y, int width, int height){
-    	final Bitmap bitmap = Bitmap.createBitmap((int) width, (int) height,
-				Bitmap.Config.ARGB_8888);
-
-		final Canvas c = new Canvas(bitmap);
-		c.scale(scale, scale);
-		c.translate(x, y);
-		cell.dispatchDraw(c);
-		
-		return bitmap;
+    	return mWorkspace.getThumbnailCache().getThumbnail(cell, scale, x, y, width, height);
     }
     
     private boolean mQsLongPressed = false;
@@ -645,7 +651,8 @@ public class QsPreviewScreen extends LinearLayout{
         	int width = (int)(mPreviewBmpWidth * QS_PRESSED_PREVIEW_SCALE);
         	int height = (int)(mPreviewBmpHeight * QS_PRESSED_PREVIEW_SCALE);
         	
-        	final Bitmap bitmap = Bitmap.createBitmap((int) width, (int) height,
+        	final BitmapPool pool = LauncherApplication.getBitmapPool();
+        	final Bitmap bitmap = pool.get((int) width, (int) height,
     				Bitmap.Config.ARGB_8888);
         	
         	final Canvas c = new Canvas(bitmap);
@@ -655,12 +662,14 @@ public class QsPreviewScreen extends LinearLayout{
         		mPreviewImageView[mDownImageViewIndex].draw(c);
 	        	
 	        	if(mPressPreviewImage != null){
-	        		mPressPreviewImage.recycle();
+	        		pool.put(mPressPreviewImage);
 	        	}
 	        	
 	        	mPressPreviewImage = bitmap;
 				
 				mPreviewImageView[mDownImageViewIndex].setVisibility(View.INVISIBLE);
+        	} else {
+        		pool.put(bitmap);
         	}
         	
         	invalidate();
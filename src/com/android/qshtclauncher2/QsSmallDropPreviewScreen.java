@@ -8,7 +8,6 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
@@ -109,6 +108,7 @@ public class QsSmallDropPreviewScreen extends LinearLayout implements DropTarget
 
 		final CellLayout cell = ((CellLayout) mWorkspace.getPageAt(index));
 		cell.invalidate();
+		mWorkspace.getThumbnailCache().invalidate(cell);
 		
 		if(!mRefreshPageCache.contains(index))
 			mRefreshPageCache.add(index);
@@ -165,6 +165,7 @@ public class QsSmallDropPreviewScreen extends LinearLayout implements DropTarget
     		ImageView image = (ImageView)inflater.inflate(R.layout.small_drop_preview_image, this, false);
     		image.setTag(i);
     		image.setImageBitmap(bitmap);
+    		mWorkspace.getThumbnailCache().addViewer(bitmap, image);
     		image.setSelected((i == nPressedIndex ? true : false));
     		image.setOnClickListener(this);
     		//image.set
@@ -249,15 +250,7 @@ public class QsSmallDropPreviewScreen extends LinearLayout implements DropTarget
 	}
  
     private Bitmap createPreviewBitmap(CellLayout cell, float scale, int x, int y, int width, int height){
-    	final Bitmap bitmap = Bitmap.createBitmap((int) width, (int) height,
-				Bitmap.Config.ARGB_8888);
-
-		final Canvas c = new Canvas(bitmap);
-		c.scale(scale, scale);
-		c.translate(x, y);
-		cell.draw(c);//.dispatchDraw(c);
-		
-		return bitmap;
+    	return mWorkspace.getThumbnailCache().getThumbnail(cell, scale, x, y, width, height);
     }
     
     public boolean acceptDrop(DragObject d) {
@@ -435,6 +428,7 @@ public class QsSmallDropPreviewScreen extends LinearLayout implements DropTarget
 				sHeight);
 		if (bitmap != null){			
 			imgview.setImageBitmap(bitmap);
+			mWorkspace.getThumbnailCache().addViewer(bitmap, imgview);
 			//super.invalidate();
 		}
     }
@@ -23,6 +23,7 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 public class ShortcutAndWidgetContainer extends ViewGroup {
     static final String TAG = "CellLayoutChildren";
@@ -39,9 +40,43 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
     private int mWidthGap;
     private int mHeightGap;
 
+    // Set when items moved while a reorder animation was running
+    private boolean mMovedWhileAnimating;
+
     public ShortcutAndWidgetContainer(Context context) {
         super(context);
         mWallpaperManager = WallpaperManager.getInstance(context);
+        setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+            public void onChildViewAdded(View parent, View child) {
+                notifyContentChanged();
+            }
+
+            public void onChildViewRemoved(View parent, View child) {
+                notifyContentChanged();
+            }
+        });
+    }
+
+    private void notifyContentChanged() {
+        if (getParent() instanceof CellLayout) {
+            ((CellLayout) getParent()).onContentChanged();
+        }
+    }
+
+    /**
+     * Called by the views showing an item when what they draw changes while the item stays
+     * in place, e.g. a new icon, title or unread count, so that snapshots of the page are
+     * redrawn.
+     */
+    static void onItemContentChanged(View view) {
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            if (parent instanceof ShortcutAndWidgetContainer) {
+                ((ShortcutAndWidgetContainer) parent).notifyContentChanged();
+                return;
+            }
+            parent = parent.getParent();
+        }
     }
 
     public void setCellDimensions(int cellWidth, int cellHeight, int widthGap, int heightGap ) {
@@ -113,6 +148,8 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        boolean moved = changed;
+        boolean animating = false;
         int count = getChildCount();
         for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
@@ -121,6 +158,11 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
 
                 int childLeft = lp.x;
                 int childTop = lp.y;
+                animating |= !lp.isLockedToGrid;
+                if (!moved && (child.getLeft() != childLeft || child.getTop() != childTop
+                        || child.getWidth() != lp.width || child.getHeight() != lp.height)) {
+                    moved = true;
+                }
                 child.layout(childLeft, childTop, childLeft + lp.width, childTop + lp.height);
 
                 if (lp.dropped) {
@@ -135,6 +177,14 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
                 }
             }
         }
+        // Layout runs on every frame of a reorder animation, only tell the page when items
+        // were actually moved or resized, and once they have settled
+        if (animating) {
+            mMovedWhileAnimating |= moved;
+        } else if (moved || mMovedWhileAnimating) {
+            mMovedWhileAnimating = false;
+            notifyContentChanged();
+        }
     }
 
     @Override
@@ -57,6 +57,17 @@ class ShortcutInfo extends ItemInfo {
      */
     private Bitmap mIcon;
 
+    /**
+     * The flattened icon read from the database, only decoded into mIcon by the first
+     * getIcon() so that items which are never bound never pay for it.
+     */
+    private byte[] mIconData;
+
+    /**
+     * Whether mIcon, or mIconData, is the icon that was read from the database.
+     */
+    private boolean mIconFromDatabase;
+
     ShortcutInfo() {
         itemType = LauncherSettings.BaseLauncherColumns.ITEM_TYPE_SHORTCUT;
     }
@@ -71,6 +82,8 @@ class ShortcutInfo extends ItemInfo {
             iconResource.resourceName = info.iconResource.resourceName;
         }
         mIcon = info.mIcon; // TODO: should make a copy here.  maybe we don't need this ctor at all
+        mIconData = info.mIconData;
+        mIconFromDatabase = info.mIconFromDatabase;
         customIcon = info.customIcon;
     }
 
@@ -84,9 +97,38 @@ class ShortcutInfo extends ItemInfo {
 
     public void setIcon(Bitmap b) {
         mIcon = b;
+        mIconData = null;
+        mIconFromDatabase = false;
+    }
+
+    /**
+     * Sets the icon from its flattened form in the database, it is decoded on first use.
+     */
+    void setIconData(byte[] data) {
+        mIcon = null;
+        mIconData = data;
+        mIconFromDatabase = true;
+    }
+
+    /**
+     * Returns whether the icon is the one read from the database, in which case there is
+     * nothing newer to save back.
+     */
+    boolean isIconFromDatabase() {
+        return mIconFromDatabase;
     }
 
     public Bitmap getIcon(IconCache iconCache) {
+        if (mIcon == null && mIconData != null) {
+            mIcon = iconCache.decodeIcon(mIconData);
+            mIconData = null;
+            if (mIcon == null) {
+                // Same as an unreadable icon at load time
+                mIcon = iconCache.getFallbackIcon();
+                customIcon = false;
+                usingFallbackIcon = true;
+            }
+        }
         if (mIcon == null) {
             updateIcon(iconCache);
         }
@@ -108,6 +150,8 @@ class ShortcutInfo extends ItemInfo {
 
     public void updateIcon(IconCache iconCache) {
         mIcon = iconCache.getIcon(intent);
+        mIconData = null;
+        mIconFromDatabase = false;
         usingFallbackIcon = iconCache.isDefaultIcon(mIcon);
     }
 
@@ -139,7 +183,12 @@ class ShortcutInfo extends ItemInfo {
         if (customIcon) {
             values.put(LauncherSettings.BaseLauncherColumns.ICON_TYPE,
                     LauncherSettings.BaseLauncherColumns.ICON_TYPE_BITMAP);
-            writeBitmap(values, mIcon);
+            if (mIcon == null && mIconData != null) {
+                // Not decoded yet, the stored form is still current
+                values.put(LauncherSettings.BaseLauncherColumns.ICON, mIconData);
+            } else {
+                writeBitmap(values, mIcon);
+            }
         } else {
             if (!usingFallbackIcon) {
                 writeBitmap(values, mIcon);
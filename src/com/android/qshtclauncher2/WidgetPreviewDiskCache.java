@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Persistent store of rendered widget and shortcut previews.  Entries are keyed by the
+ * component and the preview size they were rendered at, and are only handed back if they
+ * were rendered for the same package update time, locale and screen density.
+ */
+class WidgetPreviewDiskCache {
+    private static final String TAG = "WidgetPreviewDiskCache";
+
+    static final int TYPE_WIDGET = 0;
+    static final int TYPE_SHORTCUT = 1;
+
+    private static final String DATABASE_NAME = "widget_previews.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_PREVIEWS = "previews";
+    private static final String COMPONENT = "componentName";
+    private static final String TYPE = "type";
+    private static final String SIZE = "size";
+    private static final String PACKAGE = "packageName";
+    private static final String LAST_UPDATED = "lastUpdated";
+    private static final String LOCALE = "locale";
+    private static final String DENSITY = "density";
+    private static final String PREVIEW = "preview";
+
+    private static final String[] ENTRY_COLUMNS = new String[] {
+            LAST_UPDATED, LOCALE, DENSITY, PREVIEW
+    };
+
+    private final DatabaseHelper mOpenHelper;
+    private final PackageManager mPackageManager;
+    private final int mDensity;
+
+    // Package update times looked up since the packages last changed, so that a page of
+    // previews from the same package only asks the package manager once.
+    private final HashMap<String, Long> mLastUpdated = new HashMap<String, Long>();
+
+    private int mHitCount;
+    private int mMissCount;
+
+    WidgetPreviewDiskCache(Context context) {
+        mOpenHelper = new DatabaseHelper(context);
+        mPackageManager = context.getPackageManager();
+        mDensity = context.getResources().getDisplayMetrics().densityDpi;
+    }
+
+    /**
+     * Returns the stored preview, or null if there is no entry for this size or the entry
+     * was rendered for a different package version, locale or density.
+     */
+    Bitmap get(ComponentName component, int type, int width, int height, String locale) {
+        final long lastUpdated = getLastUpdateTime(component.getPackageName());
+        if (lastUpdated == 0) {
+            return null;
+        }
+        Cursor c = null;
+        try {
+            c = mOpenHelper.getReadableDatabase().query(TABLE_PREVIEWS, ENTRY_COLUMNS,
+                    COMPONENT + "=? AND " + TYPE + "=? AND " + SIZE + "=?",
+                    new String[] { component.flattenToString(), String.valueOf(type),
+                            getSizeKey(width, height) },
+                    null, null, null);
+            if (c == null || !c.moveToFirst()) {
+                onMiss();
+                return null;
+            }
+            if (c.getLong(0) != lastUpdated || !locale.equals(c.getString(1))
+                    || c.getInt(2) != mDensity) {
+                if (LauncherLog.DEBUG) {
+                    LauncherLog.d(TAG, "Stale preview entry for " + component);
+                }
+                onMiss();
+                return null;
+            }
+            final byte[] data = c.getBlob(3);
+            // Decoded mutable so that the preview can go back to the bitmap pool
+            final BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inMutable = true;
+            final Bitmap preview = data == null ? null
+                    : BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+            if (preview == null) {
+                onMiss();
+                return null;
+            }
+            synchronized (this) {
+                mHitCount++;
+            }
+            return preview;
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not read preview entry for " + component, e);
+            return null;
+        } catch (IllegalStateException e) {
+            // The database was closed under us
+            LauncherLog.w(TAG, "Could not read preview entry for " + component, e);
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    /**
+     * Stores the rendered preview, replacing any previous entry for this size.
+     */
+    void put(ComponentName component, int type, int width, int height, String locale,
+            Bitmap preview) {
+        final long lastUpdated = getLastUpdateTime(component.getPackageName());
+        if (lastUpdated == 0 || preview == null) {
+            return;
+        }
+        final byte[] data = ItemInfo.flattenBitmap(preview);
+        if (data == null) {
+            return;
+        }
+        final ContentValues values = new ContentValues();
+        values.put(COMPONENT, component.flattenToString());
+        values.put(TYPE, type);
+        values.put(SIZE, getSizeKey(width, height));
+        values.put(PACKAGE, component.getPackageName());
+        values.put(LAST_UPDATED, lastUpdated);
+        values.put(LOCALE, locale);
+        values.put(DENSITY, mDensity);
+        values.put(PREVIEW, data);
+        try {
+            mOpenHelper.getWritableDatabase().insertWithOnConflict(TABLE_PREVIEWS, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not store preview entry for " + component, e);
+        } catch (IllegalStateException e) {
+            LauncherLog.w(TAG, "Could not store preview entry for " + component, e);
+        }
+    }
+
+    /**
+     * Forgets the package update times looked up so far, so that entries rendered for a
+     * package that has since been updated are no longer handed back.  Called when the
+     * installed packages change, before any preview is loaded again.
+     */
+    synchronized void onPackagesChanged() {
+        mLastUpdated.clear();
+    }
+
+    /**
+     * Drops every entry whose package has been removed or updated since it was rendered.
+     * This touches the database and should not be called on the main thread.
+     */
+    void purgeStalePackages() {
+        onPackagesChanged();
+        final ArrayList<String> stale = new ArrayList<String>();
+        Cursor c = null;
+        try {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            c = db.query(true, TABLE_PREVIEWS, new String[] { PACKAGE, LAST_UPDATED },
+                    null, null, null, null, null, null);
+            while (c != null && c.moveToNext()) {
+                final String packageName = c.getString(0);
+                if (c.getLong(1) != getLastUpdateTime(packageName)) {
+                    stale.add(packageName);
+                }
+            }
+            for (String packageName : stale) {
+                db.delete(TABLE_PREVIEWS, PACKAGE + "=?", new String[] { packageName });
+            }
+        } catch (SQLException e) {
+            LauncherLog.w(TAG, "Could not purge stale preview entries", e);
+        } catch (IllegalStateException e) {
+            LauncherLog.w(TAG, "Could not purge stale preview entries", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "purgeStalePackages: removed " + stale.size() + " packages");
+        }
+    }
+
+    /**
+     * Closes the database.  It is opened again by the next call that needs it.
+     */
+    void close() {
+        mOpenHelper.close();
+    }
+
+    synchronized void dumpState() {
+        LauncherLog.d(TAG, "hits=" + mHitCount + " misses=" + mMissCount
+                + " packages=" + mLastUpdated.size());
+    }
+
+    private synchronized void onMiss() {
+        mMissCount++;
+    }
+
+    private static String getSizeKey(int width, int height) {
+        return width + "x" + height;
+    }
+
+    /**
+     * Returns the last time the package was installed or updated, or 0 if it is unknown.
+     * The memory tier in front of this cache checks its previews against it as well.
+     */
+    long getLastUpdateTime(String packageName) {
+        synchronized (this) {
+            final Long cached = mLastUpdated.get(packageName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long lastUpdated;
+        try {
+            PackageInfo pi = mPackageManager.getPackageInfo(packageName, 0);
+            lastUpdated = pi.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            lastUpdated = 0;
+        }
+        synchronized (this) {
+            mLastUpdated.put(packageName, lastUpdated);
+        }
+        return lastUpdated;
+    }
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_PREVIEWS + " (" +
+                    COMPONENT + " TEXT NOT NULL," +
+                    TYPE + " INTEGER NOT NULL DEFAULT 0," +
+                    SIZE + " TEXT NOT NULL," +
+                    PACKAGE + " TEXT NOT NULL," +
+                    LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0," +
+                    LOCALE + " TEXT," +
+                    DENSITY + " INTEGER NOT NULL DEFAULT 0," +
+                    PREVIEW + " BLOB," +
+                    "PRIMARY KEY (" + COMPONENT + ", " + TYPE + ", " + SIZE + ")" +
+                    ");");
+            db.execSQL("CREATE INDEX previews_package ON " + TABLE_PREVIEWS
+                    + " (" + PACKAGE + ");");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // This is only a cache, it is always safe to throw it away.
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_PREVIEWS);
+            onCreate(db);
+        }
+
+        @Override
+        public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            onUpgrade(db, oldVersion, newVersion);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Loads widget and shortcut previews on a small pool of worker threads.  Work is queued per
+ * item and handed out in order of distance from the page the user is looking at (or snapping
+ * to), so the visible page is always filled first and pages that scroll out of range can be
+ * dropped without waiting for the rest of their previews.
+ *
+ * The workers are started by the first submit and stopped by {@link #quit}, which the owner
+ * must call when it goes away so the threads don't keep it alive.
+ */
+class WidgetPreviewScheduler {
+    private static final String TAG = "WidgetPreviewScheduler";
+
+    private static final int MAX_WORKERS = 4;
+
+    interface Callbacks {
+        /** Renders a single preview, called on a worker thread. */
+        Bitmap loadPreview(Object info, int maxWidth, int maxHeight);
+        /** Called on the main thread once every preview of a page is ready. */
+        void onPagePreviewsLoaded(AsyncTaskPageData data);
+    }
+
+    private static class PageRequest {
+        final AsyncTaskPageData data;
+        final Bitmap[] previews;
+        final long submitTime;
+        int remaining;
+        boolean firstPreviewLoaded;
+        boolean cancelled;
+
+        PageRequest(AsyncTaskPageData d) {
+            data = d;
+            previews = new Bitmap[d.items.size()];
+            remaining = previews.length;
+            submitTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    private static class WorkItem {
+        final PageRequest request;
+        final int index;
+
+        WorkItem(PageRequest r, int i) {
+            request = r;
+            index = i;
+        }
+    }
+
+    private final Callbacks mCallbacks;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object mLock = new Object();
+
+    // Guarded by mLock
+    private final HashMap<Integer, PageRequest> mRequests = new HashMap<Integer, PageRequest>();
+    private PriorityQueue<WorkItem> mQueue;
+    private final ArrayList<Thread> mWorkers = new ArrayList<Thread>();
+    private int mTargetPage;
+    private int mDirection;
+
+    // Stats, guarded by mLock
+    private int mItemsLoaded;
+    private int mItemsCancelled;
+    private int mPagesDelivered;
+    private int mFirstPreviewCount;
+    private long mFirstPreviewTotalTime;
+    private long mFirstPreviewMaxTime;
+    private int mVisiblePageCount;
+    private long mVisiblePageTotalTime;
+    private long mVisiblePageMaxTime;
+
+    private final Comparator<WorkItem> mComparator = new Comparator<WorkItem>() {
+        public int compare(WorkItem a, WorkItem b) {
+            final int pageA = a.request.data.page;
+            final int pageB = b.request.data.page;
+            if (pageA != pageB) {
+                final int diff = Math.abs(pageA - mTargetPage) - Math.abs(pageB - mTargetPage);
+                if (diff != 0) {
+                    return diff;
+                }
+                // Same distance on either side, favour the direction we are moving in
+                return mDirection >= 0 ? pageB - pageA : pageA - pageB;
+            }
+            return a.index - b.index;
+        }
+    };
+
+    WidgetPreviewScheduler(Callbacks callbacks) {
+        mCallbacks = callbacks;
+        mQueue = new PriorityQueue<WorkItem>(16, mComparator);
+    }
+
+    /**
+     * Drops every outstanding request and stops the workers.  A later submit starts them
+     * again.
+     */
+    void quit() {
+        synchronized (mLock) {
+            for (PageRequest request : mRequests.values()) {
+                cancelLocked(request);
+            }
+            mRequests.clear();
+            for (Thread t : mWorkers) {
+                t.interrupt();
+            }
+            if (LauncherLog.DEBUG) {
+                LauncherLog.d(TAG, "Stopped " + mWorkers.size() + " preview workers");
+            }
+            mWorkers.clear();
+            mLock.notifyAll();
+        }
+    }
+
+    private void startWorkersLocked() {
+        if (!mWorkers.isEmpty()) {
+            return;
+        }
+        final int workers = Math.max(1, Math.min(MAX_WORKERS,
+                Runtime.getRuntime().availableProcessors() - 1));
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(mWorker, "launcher-preview-" + i);
+            t.setDaemon(true);
+            mWorkers.add(t);
+            t.start();
+        }
+        if (LauncherLog.DEBUG) {
+            LauncherLog.d(TAG, "Started " + workers + " preview workers");
+        }
+    }
+
+    /**
+     * Sets the page whose previews should be loaded first, typically the page we are on or
+     * the page we are snapping to.
+     */
+    void setTargetPage(int page) {
+        synchronized (mLock) {
+            if (page == mTargetPage) {
+                return;
+            }
+            mDirection = page - mTargetPage;
+            mTargetPage = page;
+            // The ordering of everything queued has changed, so rebuild the heap
+            if (mQueue.size() > 1) {
+                PriorityQueue<WorkItem> queue =
+                        new PriorityQueue<WorkItem>(mQueue.size(), mComparator);
+                queue.addAll(mQueue);
+                mQueue = queue;
+            }
+        }
+    }
+
+    /**
+     * Queues every preview of the page, replacing any earlier request for the same page.
+     */
+    void submit(AsyncTaskPageData data) {
+        synchronized (mLock) {
+            final PageRequest old = mRequests.get(data.page);
+            if (old != null) {
+                cancelLocked(old);
+            }
+            final PageRequest request = new PageRequest(data);
+            mRequests.put(data.page, request);
+            if (request.remaining == 0) {
+                deliverLocked(request);
+                return;
+            }
+            for (int i = 0; i < request.previews.length; i++) {
+                mQueue.add(new WorkItem(request, i));
+            }
+            startWorkersLocked();
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Drops the requests of every page outside [lower, upper], including their queued items.
+     */
+    void cancelOutside(int lower, int upper) {
+        synchronized (mLock) {
+            Iterator<PageRequest> iter = mRequests.values().iterator();
+            while (iter.hasNext()) {
+                PageRequest request = iter.next();
+                if (request.data.page < lower || request.data.page > upper) {
+                    iter.remove();
+                    cancelLocked(request);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every outstanding request, returning the pages that had not been delivered yet.
+     */
+    ArrayList<Integer> cancelAll() {
+        final ArrayList<Integer> pages = new ArrayList<Integer>();
+        synchronized (mLock) {
+            for (PageRequest request : mRequests.values()) {
+                pages.add(request.data.page);
+                cancelLocked(request);
+            }
+            mRequests.clear();
+        }
+        return pages;
+    }
+
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mRequests.size();
+        }
+    }
+
+    void dumpState() {
+        synchronized (mLock) {
+            LauncherLog.d(TAG, "pending pages=" + mRequests.size() + " queued items="
+                    + mQueue.size() + " loaded=" + mItemsLoaded + " cancelled=" + mItemsCancelled
+                    + " delivered=" + mPagesDelivered);
+            LauncherLog.d(TAG, "first preview on visible page: count=" + mFirstPreviewCount
+                    + " avg=" + (mFirstPreviewCount > 0
+                            ? mFirstPreviewTotalTime / mFirstPreviewCount : 0)
+                    + "ms max=" + mFirstPreviewMaxTime + "ms");
+            LauncherLog.d(TAG, "visible page complete: count=" + mVisiblePageCount
+                    + " avg=" + (mVisiblePageCount > 0
+                            ? mVisiblePageTotalTime / mVisiblePageCount : 0)
+                    + "ms max=" + mVisiblePageMaxTime + "ms");
+        }
+    }
+
+    private void cancelLocked(PageRequest request) {
+        request.cancelled = true;
+        Iterator<WorkItem> iter = mQueue.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().request == request) {
+                iter.remove();
+                mItemsCancelled++;
+            }
+        }
+        for (int i = 0; i < request.previews.length; i++) {
+            if (request.previews[i] != null) {
+                LauncherApplication.getBitmapPool().put(request.previews[i]);
+                request.previews[i] = null;
+            }
+        }
+    }
+
+    private void onItemLoaded(WorkItem item, Bitmap preview) {
+        synchronized (mLock) {
+            final PageRequest request = item.request;
+            if (request.cancelled) {
+                LauncherApplication.getBitmapPool().put(preview);
+                mItemsCancelled++;
+                return;
+            }
+            mItemsLoaded++;
+            request.previews[item.index] = preview;
+            if (!request.firstPreviewLoaded) {
+                request.firstPreviewLoaded = true;
+                if (request.data.page == mTargetPage) {
+                    final long elapsed = SystemClock.uptimeMillis() - request.submitTime;
+                    mFirstPreviewCount++;
+                    mFirstPreviewTotalTime += elapsed;
+                    mFirstPreviewMaxTime = Math.max(mFirstPreviewMaxTime, elapsed);
+                }
+            }
+            if (--request.remaining == 0) {
+                deliverLocked(request);
+            }
+        }
+    }
+
+    private void deliverLocked(final PageRequest request) {
+        mHandler.post(new Runnable() {
+            public void run() {
+                synchronized (mLock) {
+                    if (request.cancelled) {
+                        return;
+                    }
+                    mRequests.remove(request.data.page);
+                    mPagesDelivered++;
+                    if (request.data.page == mTargetPage) {
+                        final long elapsed = SystemClock.uptimeMillis() - request.submitTime;
+                        mVisiblePageCount++;
+                        mVisiblePageTotalTime += elapsed;
+                        mVisiblePageMaxTime = Math.max(mVisiblePageMaxTime, elapsed);
+                    }
+                }
+                for (Bitmap b : request.previews) {
+                    request.data.generatedImages.add(b);
+                }
+                mCallbacks.onPagePreviewsLoaded(request.data);
+            }
+        });
+    }
+
+    private final Runnable mWorker = new Runnable() {
+        public void run() {
+            final Thread self = Thread.currentThread();
+            while (true) {
+                WorkItem item;
+                int priority;
+                synchronized (mLock) {
+                    while (mQueue.isEmpty()) {
+                        try {
+                            mLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!mWorkers.contains(self)) {
+                        // Stopped by quit() while the work was being started again
+                        return;
+                    }
+                    item = mQueue.poll();
+                    // Only the page we are looking at gets to compete with the UI
+                    priority = item.request.data.page == mTargetPage
+                            ? Process.THREAD_PRIORITY_LESS_FAVORABLE
+                            : Process.THREAD_PRIORITY_LOWEST;
+                }
+                Process.setThreadPriority(priority);
+
+                final AsyncTaskPageData data = item.request.data;
+                Bitmap preview = null;
+                try {
+                    preview = mCallbacks.loadPreview(data.items.get(item.index),
+                            data.maxImageWidth, data.maxImageHeight);
+                } catch (RuntimeException e) {
+                    LauncherLog.w(TAG, "Could not load preview for page " + data.page, e);
+                }
+                onItemLoaded(item, preview);
+            }
+        }
+    };
+}
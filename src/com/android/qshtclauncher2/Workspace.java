@@ -159,7 +159,13 @@ public class Workspace extends SmoothPagedView
     private float[] mTempDragCoordinates = new float[2];
     private float[] mTempCellLayoutCenterCoordinates = new float[2];
     private float[] mTempDragBottomRightCoordinates = new float[2];
-    private Matrix mTempInverseMatrix = new Matrix();
+    private float[] mTempTouchCoordinates = new float[2];
+    private final Rect mTempHitRect = new Rect();
+
+    // Inverse matrices of the pages and the hotseat layout used to map drag points
+    private final PageTransformCache mPageTransforms = new PageTransformCache();
+    private int mDragViewOffsetX;
+    private int mDragViewOffsetY;
 
     private SpringLoadedDragController mSpringLoadedDragController;
     private float mSpringLoadedShrinkFactor;
@@ -182,6 +188,9 @@ public class Workspace extends SmoothPagedView
     private boolean mInScrollArea = false;
 
     private final HolographicOutlineHelper mOutlineHelper = new HolographicOutlineHelper();
+
+    // Page snapshots shared by the preview screens
+    private final WorkspaceThumbnailCache mThumbnailCache = new WorkspaceThumbnailCache();
     private Bitmap mDragOutline = null;
     private final Rect mTempRect = new Rect();
     private final int[] mTempXY = new int[2];
@@ -620,6 +629,7 @@ public class Workspace extends SmoothPagedView
         }
 
         mIsDragOccuring = true;
+        mPageTransforms.resetTrace();
         updateChildrenLayersEnabled(false);
         mLauncher.lockScreenOrientation();
         setChildrenBackgroundAlphaMultipliers(1f);
@@ -633,6 +643,10 @@ public class Workspace extends SmoothPagedView
             LauncherLog.d(TAG, "onDragEnd: mIsDragOccuring = " + mIsDragOccuring);
         }
 
+        if (LauncherLog.DEBUG_DRAG) {
+            LauncherLog.d(TAG, "onDragEnd: " + mPageTransforms);
+        }
+
         mIsDragOccuring = false;
         updateChildrenLayersEnabled(false);
         mLauncher.unlockScreenOrientation(false);
@@ -668,6 +682,8 @@ public class Workspace extends SmoothPagedView
                 wallpaperTravelToScreenWidthRatio(mDisplaySize.x, mDisplaySize.y));
 
         mMaxDistanceForFolderCreation = (0.55f * res.getDimensionPixelSize(R.dimen.app_icon_size));
+        mDragViewOffsetX = res.getDimensionPixelSize(R.dimen.dragViewOffsetX);
+        mDragViewOffsetY = res.getDimensionPixelSize(R.dimen.dragViewOffsetY);
         mFlingThresholdVelocity = (int) (FLING_THRESHOLD_VELOCITY * mDensity);
     }
 
@@ -687,11 +703,13 @@ public class Workspace extends SmoothPagedView
         cl.setClickable(true);
         cl.setContentDescription(getContext().getString(
                 R.string.workspace_description_format, getChildCount()));
+        mPageTransforms.invalidate();
     }
 
     @Override
     public void onChildViewRemoved(View parent, View child) {
     	super.onChildViewRemoved(parent, child);
+        mPageTransforms.invalidate();
 		final int newcount = getPageCount()-1;
     	if(getCurrentPage() >= newcount)
     		setCurrentPage(newcount-1);
@@ -1692,6 +1710,7 @@ public class Workspace extends SmoothPagedView
         }
 
         super.onLayout(changed, left, top, right, bottom);
+        mPageTransforms.invalidate();
 
         if (LauncherLog.DEBUG_LAYOUT) {
             LauncherLog.d(TAG, "onLayout: changed = " + changed + ", left = " + left
@@ -1937,7 +1956,7 @@ public class Workspace extends SmoothPagedView
         final Canvas canvas = new Canvas();
 
         // The outline is used to visualize where the item will land if dropped
-        mDragOutline = createDragOutline(v, canvas, DRAG_BITMAP_PADDING);
+        setDragOutline(createDragOutline(v, canvas, DRAG_BITMAP_PADDING));
     }
 
     public void onDragStartedWithItem(PendingAddItemInfo info, Bitmap b, boolean clipAlpha) {
@@ -1946,8 +1965,8 @@ public class Workspace extends SmoothPagedView
         int[] size = estimateItemSize(info.spanX, info.spanY, info, false);
 
         // The outline is used to visualize where the item will land if dropped
-        mDragOutline = createDragOutline(b, canvas, DRAG_BITMAP_PADDING, size[0],
-                size[1], clipAlpha);
+        setDragOutline(createDragOutline(b, canvas, DRAG_BITMAP_PADDING, size[0],
+                size[1], clipAlpha));
     }
 
     public void exitWidgetResizeMode() {
@@ -2218,17 +2237,19 @@ public class Workspace extends SmoothPagedView
 
     /**
      * Returns a new bitmap to show when the given View is being dragged around.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Responsibility for the bitmap is transferred to the caller, which should hand it back
+     * to the bitmap pool when done.
      */
     public Bitmap createDragBitmap(View v, Canvas canvas, int padding) {
+        final BitmapPool pool = LauncherApplication.getBitmapPool();
         Bitmap b;
 
         if (v instanceof TextView) {
             Drawable d = ((TextView) v).getCompoundDrawables()[1];
-            b = Bitmap.createBitmap(d.getIntrinsicWidth() + padding,
+            b = pool.get(d.getIntrinsicWidth() + padding,
                     d.getIntrinsicHeight() + padding, Bitmap.Config.ARGB_8888);
         } else {
-            b = Bitmap.createBitmap(
+            b = pool.get(
                     v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
         }
 
@@ -2239,6 +2260,22 @@ public class Workspace extends SmoothPagedView
         return b;
     }
 
+    /**
+     * Hands the current drag outline back to the bitmap pool and replaces it.  The old outline
+     * may still be fading out in a CellLayout, so it is only released after the fade.
+     */
+    private void setDragOutline(Bitmap outline) {
+        final Bitmap old = mDragOutline;
+        mDragOutline = outline;
+        if (old != null && old != outline) {
+            postDelayed(new Runnable() {
+                public void run() {
+                    LauncherApplication.getBitmapPool().put(old);
+                }
+            }, getResources().getInteger(R.integer.config_dragOutlineFadeTime));
+        }
+    }
+
     /**
      * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
      * Responsibility for the bitmap is transferred to the caller.
@@ -2247,7 +2284,7 @@ public class Workspace extends SmoothPagedView
         /// M: added for theme feature, get different outline color for different themes.
         final int outlineColor = Launcher.getThemeColor(getResources(), android.R.color.holo_blue_light);
 
-        final Bitmap b = Bitmap.createBitmap(
+        final Bitmap b = LauncherApplication.getBitmapPool().get(
                 v.getWidth() + padding, v.getHeight() + padding, Bitmap.Config.ARGB_8888);
 
         canvas.setBitmap(b);
@@ -2266,7 +2303,7 @@ public class Workspace extends SmoothPagedView
         /// M: added for theme feature, get different outline color for different themes.
         final int outlineColor = Launcher.getThemeColor(getResources(), android.R.color.holo_blue_light);
         
-        final Bitmap b = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        final Bitmap b = LauncherApplication.getBitmapPool().get(w, h, Bitmap.Config.ARGB_8888);
         canvas.setBitmap(b);
 
         Rect src = new Rect(0, 0, orig.getWidth(), orig.getHeight());
@@ -2320,7 +2357,7 @@ public class Workspace extends SmoothPagedView
         final Canvas canvas = new Canvas();
 
         // The outline is used to visualize where the item will land if dropped
-        mDragOutline = createDragOutline(child, canvas, DRAG_BITMAP_PADDING);
+        setDragOutline(createDragOutline(child, canvas, DRAG_BITMAP_PADDING));
         beginDragShared(child, this);
     }
 
@@ -2372,7 +2409,7 @@ public class Workspace extends SmoothPagedView
 
         mDragController.startDrag(b, dragLayerX, dragLayerY, source, child.getTag(),
                 DragController.DRAG_ACTION_MOVE, dragVisualizeOffset, dragRect, scale);
-        b.recycle();
+        LauncherApplication.getBitmapPool().put(b);
 
         // Show the scrolling indicator when you pick up an item
         showScrollingIndicator(false);
@@ -3096,14 +3133,12 @@ public class Workspace extends SmoothPagedView
     * coordinate space. The argument xy is modified with the return result.
     *
     * if cachedInverseMatrix is not null, this method will just use that matrix instead of
-    * computing it itself; we use this to avoid redundant matrix inversions in
-    * findMatchingPageForDragOver
+    * looking it up in mPageTransforms, which only inverts the matrix again if the page moved
     *
     */
    void mapPointFromSelfToChild(View v, float[] xy, Matrix cachedInverseMatrix) {
        if (cachedInverseMatrix == null) {
-           v.getMatrix().invert(mTempInverseMatrix);
-           cachedInverseMatrix = mTempInverseMatrix;
+           cachedInverseMatrix = mPageTransforms.getInverseMatrix(v);
        }
        int scrollX = getScrollX();
        if (mNextPage != INVALID_PAGE) {
@@ -3115,10 +3150,10 @@ public class Workspace extends SmoothPagedView
    }
 
    void mapPointFromSelfToHotseatLayout(Hotseat hotseat, float[] xy) {
-       hotseat.getLayout().getMatrix().invert(mTempInverseMatrix);
-       xy[0] = xy[0] - hotseat.getLeft() - hotseat.getLayout().getLeft();
-       xy[1] = xy[1] - hotseat.getTop() - hotseat.getLayout().getTop();
-       mTempInverseMatrix.mapPoints(xy);
+       final CellLayout layout = hotseat.getLayout();
+       xy[0] = xy[0] - hotseat.getLeft() - layout.getLeft();
+       xy[1] = xy[1] - hotseat.getTop() - layout.getTop();
+       mPageTransforms.getInverseMatrix(layout).mapPoints(xy);
    }
 
    /*
@@ -3202,11 +3237,12 @@ public class Workspace extends SmoothPagedView
         for (int i = 0; i < screenCount; i++) {
             CellLayout cl = (CellLayout) getChildAt(i);
 
-            final float[] touchXy = {originX, originY};
+            final float[] touchXy = mTempTouchCoordinates;
+            touchXy[0] = originX;
+            touchXy[1] = originY;
             // Transform the touch coordinates to the CellLayout's local coordinates
             // If the touch point is within the bounds of the cell layout, we can return immediately
-            cl.getMatrix().invert(mTempInverseMatrix);
-            mapPointFromSelfToChild(cl, touchXy, mTempInverseMatrix);
+            mapPointFromSelfToChild(cl, touchXy, null);
 
             if (touchXy[0] >= 0 && touchXy[0] <= cl.getWidth() &&
                     touchXy[1] >= 0 && touchXy[1] <= cl.getHeight()) {
@@ -3216,9 +3252,13 @@ public class Workspace extends SmoothPagedView
             if (!exact) {
                 // Get the center of the cell layout in screen coordinates
                 final float[] cellLayoutCenter = mTempCellLayoutCenterCoordinates;
-                cellLayoutCenter[0] = cl.getWidth() / 2;
-                cellLayoutCenter[1] = cl.getHeight() / 2;
-                mapPointFromChildToSelf(cl, cellLayoutCenter);
+                mPageTransforms.getCenter(cl, cellLayoutCenter);
+                int scrollX = getScrollX();
+                if (mNextPage != INVALID_PAGE) {
+                    scrollX = mScroller.getFinalX();
+                }
+                cellLayoutCenter[0] -= scrollX;
+                cellLayoutCenter[1] -= getScrollY();
 
                 touchXy[0] = originX;
                 touchXy[1] = originY;
@@ -3251,8 +3291,8 @@ public class Workspace extends SmoothPagedView
 
         // First off, the drag view has been shifted in a way that is not represented in the
         // x and y values or the x/yOffsets. Here we account for that shift.
-        x += getResources().getDimensionPixelSize(R.dimen.dragViewOffsetX);
-        y += getResources().getDimensionPixelSize(R.dimen.dragViewOffsetY);
+        x += mDragViewOffsetX;
+        y += mDragViewOffsetY;
 
         // These represent the visual top and left of drag view if a dragRect was provided.
         // If a dragRect was not provided, then they correspond to the actual view left and
@@ -3285,7 +3325,7 @@ public class Workspace extends SmoothPagedView
         // Skip drag over events while we are dragging over side pages
         if (mInScrollArea || mIsSwitchingState || mState == State.SMALL) return;
 
-        Rect r = new Rect();
+        final Rect r = mTempHitRect;
         CellLayout layout = null;
         ItemInfo item = (ItemInfo) d.dragInfo;
 
@@ -3869,6 +3909,10 @@ public class Workspace extends SmoothPagedView
         }
     }
 
+    WorkspaceThumbnailCache getThumbnailCache() {
+        return mThumbnailCache;
+    }
+
     /**
      * Return the current {@link CellLayout}, correctly picking the destination
      * screen while a scroll is in progress.
@@ -3943,7 +3987,7 @@ public class Workspace extends SmoothPagedView
 
         /// M: Call the appropriate callback when drop the IMtkWidget completed.
         stopDragAppWidget(mCurrentPage);
-        mDragOutline = null;
+        setDragOutline(null);
         mDragInfo = null;
 
         // Hide the scrolling indicator after you pick up an item
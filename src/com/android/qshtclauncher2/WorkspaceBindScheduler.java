@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Paces the workspace bind steps posted on the main thread deferred handler.  The cost of
+ * every kind of step is measured as it runs, so the handler can pack as many steps into a
+ * frame as are expected to fit and leave the rest for the next frame.  Steps for the current
+ * page may use most of the frame, steps for the other pages only part of it so scrolling
+ * stays smooth while they bind.  Batches run after the frame is drawn, so even the current
+ * page leaves time for the next frame's layout and draw.  Janky frames are counted from start
+ * to end of each bind.
+ *
+ * Everything here runs on the main thread.
+ */
+class WorkspaceBindScheduler {
+    private static final String TAG = "WorkspaceBindScheduler";
+
+    static final int STEP_ITEM = 0;
+    static final int STEP_FOLDERS = 1;
+    static final int STEP_WIDGET = 2;
+    private static final int STEP_COUNT = 3;
+
+    // What steps for the current page may use, the rest of the frame is left for drawing
+    private static final long CURRENT_PAGE_BUDGET = 10;
+    private static final long FRAME_INTERVAL_NANOS = 16666667;
+    // A frame is janky if it took longer than one and a half vsync intervals
+    private static final long JANK_THRESHOLD_NANOS = FRAME_INTERVAL_NANOS * 3 / 2;
+    // Stop counting frames if a bind never finishes, e.g. because it was cancelled
+    private static final long MAX_TRACKING_TIME = 30000;
+
+    // Guesses, in ms, used until a step of that kind has been measured
+    private static final float[] INITIAL_COST = new float[] { 1f, 2f, 8f };
+    // Weight of the latest measurement in the running average
+    private static final float COST_SMOOTHING = 0.25f;
+
+    private final long mOffscreenBudget;
+    private final float[] mCost = new float[STEP_COUNT];
+    private final int[] mStepCount = new int[STEP_COUNT];
+    private final long[] mStepTime = new long[STEP_COUNT];
+    private final long[] mMaxStepTime = new long[STEP_COUNT];
+
+    private boolean mTracking;
+    private long mBindStartTime;
+    private long mLastFrameTime;
+    private int mFrames;
+    private int mJankyFrames;
+
+    // Results of the last finished bind
+    private int mBindCount;
+    private long mLastBindTime;
+    private int mLastBindFrames;
+    private int mLastBindJankyFrames;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        public void doFrame(long frameTimeNanos) {
+            if (!mTracking) {
+                return;
+            }
+            if (mLastFrameTime != 0) {
+                mFrames++;
+                if (frameTimeNanos - mLastFrameTime > JANK_THRESHOLD_NANOS) {
+                    mJankyFrames++;
+                }
+            }
+            mLastFrameTime = frameTimeNanos;
+            if (SystemClock.uptimeMillis() - mBindStartTime > MAX_TRACKING_TIME) {
+                onBindFinished();
+                return;
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    WorkspaceBindScheduler(long offscreenBudget) {
+        mOffscreenBudget = Math.max(1, Math.min(CURRENT_PAGE_BUDGET, offscreenBudget));
+        System.arraycopy(INITIAL_COST, 0, mCost, 0, STEP_COUNT);
+    }
+
+    /**
+     * Wraps a bind step so that the deferred handler can tell how long it will take and how
+     * much of the frame it may use.
+     */
+    Runnable newStep(final int kind, final boolean currentPage, final Runnable bind) {
+        return new DeferredHandler.FrameBudgetedRunnable() {
+            public long getEstimatedCost() {
+                return (long) Math.ceil(mCost[kind]);
+            }
+
+            public long getFrameBudget() {
+                return currentPage ? CURRENT_PAGE_BUDGET : mOffscreenBudget;
+            }
+
+            public void run() {
+                final long start = SystemClock.uptimeMillis();
+                bind.run();
+                onStepFinished(kind, SystemClock.uptimeMillis() - start);
+            }
+        };
+    }
+
+    /** Starts counting frames, called when the workspace starts binding. */
+    void onBindStarted() {
+        mBindStartTime = SystemClock.uptimeMillis();
+        mLastFrameTime = 0;
+        mFrames = 0;
+        mJankyFrames = 0;
+        if (!mTracking) {
+            mTracking = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /** Stops counting frames, called when the bind is finished or cancelled. */
+    void onBindFinished() {
+        if (!mTracking) {
+            return;
+        }
+        mTracking = false;
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        mBindCount++;
+        mLastBindTime = SystemClock.uptimeMillis() - mBindStartTime;
+        mLastBindFrames = mFrames;
+        mLastBindJankyFrames = mJankyFrames;
+        if (LauncherLog.DEBUG_LOADER) {
+            LauncherLog.d(TAG, "bind took " + mLastBindTime + "ms over " + mFrames
+                    + " frames, janky=" + mJankyFrames);
+        }
+    }
+
+    void dumpState() {
+        LauncherLog.d(TAG, "binds=" + mBindCount + " last bind: time=" + mLastBindTime
+                + "ms frames=" + mLastBindFrames + " janky=" + mLastBindJankyFrames
+                + " offscreenBudget=" + mOffscreenBudget + "ms");
+        for (int i = 0; i < STEP_COUNT; i++) {
+            LauncherLog.d(TAG, "step " + i + ": count=" + mStepCount[i] + " avg="
+                    + (mStepCount[i] > 0 ? mStepTime[i] / mStepCount[i] : 0) + "ms max="
+                    + mMaxStepTime[i] + "ms estimate=" + mCost[i] + "ms");
+        }
+    }
+
+    private void onStepFinished(int kind, long time) {
+        mCost[kind] += (time - mCost[kind]) * COST_SMOOTHING;
+        mStepCount[kind]++;
+        mStepTime[kind] += time;
+        mMaxStepTime[kind] = Math.max(mMaxStepTime[kind], time);
+    }
+}
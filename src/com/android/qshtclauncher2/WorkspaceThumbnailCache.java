@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.qshtclauncher2;
+
+import android.appwidget.AppWidgetHostView;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Snapshots of the workspace pages shared by the preview screens.  A snapshot is only
+ * re-rendered once the content generation of its page has moved on, so opening a preview
+ * screen does not redraw pages that have not changed.  Pages that changed while nobody was
+ * looking are re-rendered one at a time when the main thread goes idle.
+ */
+class WorkspaceThumbnailCache {
+    private static final String TAG = "WorkspaceThumbnailCache";
+
+    // Widgets redraw themselves without touching the page, so snapshots of pages holding
+    // widgets are re-rendered once they get this old
+    private static final long WIDGET_THUMBNAIL_MAX_AGE = 10000;
+
+    // Sizes kept per page, e.g. one for each preview screen
+    private static final int MAX_SIZES_PER_PAGE = 2;
+
+    private static class Thumbnail {
+        final Bitmap bitmap;
+        float scale;
+        int x;
+        int y;
+        int generation;
+        long renderTime;
+        boolean valid;
+        // Views showing the bitmap, invalidated when it is redrawn in place
+        final ArrayList<WeakReference<View>> viewers = new ArrayList<WeakReference<View>>();
+
+        Thumbnail(Bitmap b) {
+            bitmap = b;
+        }
+    }
+
+    private final WeakHashMap<CellLayout, ArrayList<Thumbnail>> mThumbnails =
+            new WeakHashMap<CellLayout, ArrayList<Thumbnail>>();
+    private final Paint mScalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect mTmpRect = new Rect();
+    private boolean mRefreshScheduled;
+
+    private int mReuseCount;
+    private int mRenderCount;
+    private int mScaledCount;
+    private int mIdleRenderCount;
+    private long mRenderTotalTime;
+
+    /**
+     * Returns the snapshot of the page at the given size, rendering it only if the page has
+     * changed since the last one.  The bitmap is owned by the cache and may be redrawn in
+     * place later, so callers must not recycle it or hand it to the bitmap pool.
+     */
+    Bitmap getThumbnail(CellLayout cell, float scale, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        final Thumbnail t = getOrCreate(cell, width, height);
+        if (t.valid && t.scale == scale && t.x == x && t.y == y && !isStale(cell, t)) {
+            mReuseCount++;
+            return t.bitmap;
+        }
+        t.scale = scale;
+        t.x = x;
+        t.y = y;
+        render(cell, t);
+        return t.bitmap;
+    }
+
+    /**
+     * Remembers that the view shows the given snapshot, so that it is invalidated whenever
+     * the snapshot is redrawn in place, e.g. by the idle refresh.
+     */
+    void addViewer(Bitmap thumbnail, View view) {
+        for (ArrayList<Thumbnail> thumbnails : mThumbnails.values()) {
+            for (Thumbnail t : thumbnails) {
+                if (t.bitmap != thumbnail) {
+                    continue;
+                }
+                for (int i = t.viewers.size() - 1; i >= 0; i--) {
+                    final View v = t.viewers.get(i).get();
+                    if (v == view) {
+                        return;
+                    } else if (v == null) {
+                        t.viewers.remove(i);
+                    }
+                }
+                t.viewers.add(new WeakReference<View>(view));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks every snapshot of the page as stale, whatever its content generation.
+     */
+    void invalidate(CellLayout cell) {
+        final ArrayList<Thumbnail> thumbnails = mThumbnails.get(cell);
+        if (thumbnails == null) {
+            return;
+        }
+        for (Thumbnail t : thumbnails) {
+            t.valid = false;
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Re-renders stale snapshots the next time the main thread is idle.  Must be called on
+     * the main thread.
+     */
+    void scheduleRefresh() {
+        if (mRefreshScheduled || mThumbnails.isEmpty()) {
+            return;
+        }
+        mRefreshScheduled = true;
+        Looper.myQueue().addIdleHandler(mIdleRefresh);
+    }
+
+    /**
+     * Drops every snapshot.  The bitmaps are left to the garbage collector since a preview
+     * screen may still be showing them.
+     */
+    void clear() {
+        mThumbnails.clear();
+    }
+
+    void dumpState() {
+        int count = 0;
+        long bytes = 0;
+        for (ArrayList<Thumbnail> thumbnails : mThumbnails.values()) {
+            for (Thumbnail t : thumbnails) {
+                count++;
+                bytes += t.bitmap.getRowBytes() * t.bitmap.getHeight();
+            }
+        }
+        LauncherLog.d(TAG, "thumbnails=" + count + " bytes=" + bytes + " reused=" + mReuseCount
+                + " rendered=" + mRenderCount + " scaled=" + mScaledCount
+                + " idleRendered=" + mIdleRenderCount + " avgRender="
+                + (mRenderCount > 0 ? mRenderTotalTime / mRenderCount : 0) + "ms");
+    }
+
+    private Thumbnail getOrCreate(CellLayout cell, int width, int height) {
+        ArrayList<Thumbnail> thumbnails = mThumbnails.get(cell);
+        if (thumbnails == null) {
+            thumbnails = new ArrayList<Thumbnail>(MAX_SIZES_PER_PAGE);
+            mThumbnails.put(cell, thumbnails);
+        }
+        for (Thumbnail t : thumbnails) {
+            if (t.bitmap.getWidth() == width && t.bitmap.getHeight() == height) {
+                return t;
+            }
+        }
+        if (thumbnails.size() >= MAX_SIZES_PER_PAGE) {
+            thumbnails.remove(0);
+        }
+        // Kept as ARGB_8888, the previews are drawn over the wallpaper and need the alpha
+        final Thumbnail t = new Thumbnail(
+                Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        thumbnails.add(t);
+        return t;
+    }
+
+    private boolean isStale(CellLayout cell, Thumbnail t) {
+        if (!t.valid || t.generation != cell.getContentGeneration()) {
+            return true;
+        }
+        return hasAppWidgets(cell)
+                && SystemClock.uptimeMillis() - t.renderTime > WIDGET_THUMBNAIL_MAX_AGE;
+    }
+
+    private void render(CellLayout cell, Thumbnail t) {
+        final long start = SystemClock.uptimeMillis();
+        final Bitmap b = t.bitmap;
+        b.eraseColor(0);
+        final Canvas c = new Canvas(b);
+
+        // A fresh snapshot of the same page at a larger size only needs scaling down
+        final Thumbnail source = findScaleSource(cell, t);
+        if (source != null) {
+            mTmpRect.set(0, 0, b.getWidth(), b.getHeight());
+            c.drawBitmap(source.bitmap, null, mTmpRect, mScalePaint);
+            mScaledCount++;
+        } else {
+            c.scale(t.scale, t.scale);
+            c.translate(t.x, t.y);
+            cell.dispatchDraw(c);
+        }
+
+        t.generation = cell.getContentGeneration();
+        t.renderTime = SystemClock.uptimeMillis();
+        t.valid = true;
+        mRenderCount++;
+        mRenderTotalTime += t.renderTime - start;
+
+        for (int i = t.viewers.size() - 1; i >= 0; i--) {
+            final View v = t.viewers.get(i).get();
+            if (v != null) {
+                v.invalidate();
+            } else {
+                t.viewers.remove(i);
+            }
+        }
+    }
+
+    private Thumbnail findScaleSource(CellLayout cell, Thumbnail t) {
+        for (Thumbnail other : mThumbnails.get(cell)) {
+            if (other != t && other.valid && other.x == t.x && other.y == t.y
+                    && other.bitmap.getWidth() > t.bitmap.getWidth()
+                    && other.bitmap.getHeight() > t.bitmap.getHeight()
+                    && !isStale(cell, other)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasAppWidgets(CellLayout cell) {
+        final ShortcutAndWidgetContainer container = cell.getShortcutsAndWidgets();
+        if (container == null) {
+            return false;
+        }
+        for (int i = container.getChildCount() - 1; i >= 0; i--) {
+            if (container.getChildAt(i) instanceof AppWidgetHostView) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final MessageQueue.IdleHandler mIdleRefresh = new MessageQueue.IdleHandler() {
+        public boolean queueIdle() {
+            // One page per idle pass, so a burst of changes never holds up a frame
+            for (Map.Entry<CellLayout, ArrayList<Thumbnail>> entry : mThumbnails.entrySet()) {
+                final CellLayout cell = entry.getKey();
+                if (cell == null || cell.getWindowToken() == null) {
+                    continue;
+                }
+                for (Thumbnail t : entry.getValue()) {
+                    if (!t.valid || t.generation != cell.getContentGeneration()) {
+                        render(cell, t);
+                        mIdleRenderCount++;
+                        if (LauncherLog.DEBUG) {
+                            LauncherLog.d(TAG, "Refreshed thumbnail of " + cell + " when idle");
+                        }
+                        return true;
+                    }
+                }
+            }
+            mRefreshScheduled = false;
+            return false;
+        }
+    };
+}